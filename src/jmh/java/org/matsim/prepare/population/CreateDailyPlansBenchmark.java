@@ -0,0 +1,215 @@
+package org.matsim.prepare.population;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.doubles.DoubleList;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.commons.io.FileUtils;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.core.population.PopulationUtils;
+import org.openjdk.jmh.annotations.*;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the matching of survey persons and the location choice of {@link CreateDailyPlans} and {@link PlanBuilder}.
+ * Benchmarks that modify a plan need to create it first, {@link #createPlan()} measures this part alone.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class CreateDailyPlansBenchmark {
+
+	/**
+	 * Number of persons from the synthetic population, which are processed in turn.
+	 */
+	private static final int PERSONS = 10_000;
+
+	@Param({"20000", "200000"})
+	public int facilities;
+
+	@Param({"30000"})
+	public int survey;
+
+	private Path dir;
+	private CreateDailyPlans command;
+	private FacilityStore store;
+	private PlanBuilder planBuilder;
+	private PopulationFactory factory;
+
+	private final List<Person> persons = new ArrayList<>();
+	private final List<CreateDailyPlans.Key> keys = new ArrayList<>();
+	private final List<List<CSVRecord>> chains = new ArrayList<>();
+
+	/**
+	 * Candidate locations and reference distances of each matched chain.
+	 */
+	private final List<List<List<PlanBuilder.ActLocation>>> locations = new ArrayList<>();
+	private final List<DoubleList> dists = new ArrayList<>();
+
+	private SplittableRandom rnd;
+	private int i;
+	private int j;
+
+	@Setup
+	public void setup() throws IOException {
+
+		dir = Files.createTempDirectory("kyoto-benchmark");
+		SyntheticFixture fixture = SyntheticFixture.create(dir, facilities, survey);
+
+		command = new CreateDailyPlans();
+		new CommandLine(command).parseArgs(
+			"--output", dir.resolve("plans.xml.gz").toString(),
+			"--persons", fixture.persons.toString(),
+			"--activities", fixture.activities.toString(),
+			"--facilities", fixture.facilities.toString(),
+			"--facility-store", dir.resolve("facilities.store").toString(),
+			"--network", fixture.network.toString(),
+			"--commuter", fixture.commuter.toString(),
+			"--shp", fixture.zones.toString()
+		);
+		command.prepare();
+
+		// The store has been created by the command and is mapped a second time
+		store = FacilityStore.open(dir.resolve("facilities.store"));
+		planBuilder = new PlanBuilder(store, row -> CreateDailyPlans.getZone(row.get("location"), row.get("zone")));
+		factory = PopulationUtils.getFactory();
+
+		Map<String, List<CSVRecord>> activities = RunActivitySampling.readActivities(fixture.activities);
+
+		rnd = new SplittableRandom(0);
+
+		for (Person person : fixture.createPersons(factory, PERSONS)) {
+
+			CreateDailyPlans.Key key = command.createKey(person, CreateDailyPlans.Zone.FULL);
+			String id = command.matchPerson(rnd, key);
+			if (id == null) {
+				key = command.createKey(person, CreateDailyPlans.Zone.NONE);
+				id = command.matchPerson(rnd, key);
+			}
+
+			if (id == null)
+				continue;
+
+			persons.add(person);
+			keys.add(key);
+			chains.add(activities.get(id));
+
+			addLocations(activities.get(id), Attributes.getHomeCoord(person));
+		}
+	}
+
+	/**
+	 * Candidates as collected by {@link PlanBuilder#assignLocationsFromZones}.
+	 */
+	private void addLocations(List<CSVRecord> chain, Coord home) {
+
+		List<List<PlanBuilder.ActLocation>> candidates = new ArrayList<>();
+		DoubleList d = new DoubleArrayList();
+
+		for (CSVRecord row : chain) {
+
+			d.add(Double.parseDouble(row.get("leg_dist")) * 1000);
+
+			if (row.get("type").equals("home")) {
+				candidates.add(List.of(new PlanBuilder.ActLocation(-1, home)));
+				continue;
+			}
+
+			IntBuffer members = store.zone(CreateDailyPlans.getZone(row.get("location"), row.get("zone")));
+			int type = store.type(row.get("type"));
+
+			List<PlanBuilder.ActLocation> zone = new ArrayList<>();
+			for (int k = 0; k < members.limit() && type >= 0; k++) {
+				if (store.hasType(members.get(k), type))
+					zone.add(new PlanBuilder.ActLocation(members.get(k), store.coord(members.get(k))));
+			}
+
+			if (zone.isEmpty())
+				return;
+
+			candidates.add(zone);
+		}
+
+		locations.add(candidates);
+		dists.add(d);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(dir.toFile());
+	}
+
+	private int next() {
+		i = (i + 1) % persons.size();
+		return i;
+	}
+
+	private Plan plan(int k) {
+		return RunActivitySampling.createPlan(Attributes.getHomeCoord(persons.get(k)), chains.get(k), rnd, factory);
+	}
+
+	/**
+	 * Draw a survey person from the group of a person.
+	 */
+	@Benchmark
+	public String matchPerson() {
+		return command.matchPerson(rnd, keys.get(next()));
+	}
+
+	/**
+	 * Create the plan from the survey activities, which is part of the other benchmarks.
+	 */
+	@Benchmark
+	public Plan createPlan() {
+		return plan(next());
+	}
+
+	/**
+	 * Choose facilities within the distance bounds of each trip.
+	 */
+	@Benchmark
+	public Plan sampleLocationsByDist() {
+		int k = next();
+		Plan plan = plan(k);
+		command.sampleLocationsByDist(persons.get(k), plan, rnd);
+		return plan;
+	}
+
+	/**
+	 * Choose facilities in the zones reported by the survey.
+	 */
+	@Benchmark
+	public boolean assignLocationsFromZones() {
+		int k = next();
+		return planBuilder.assignLocationsFromZones(chains.get(k), plan(k), Attributes.getHomeCoord(persons.get(k)), false, rnd);
+	}
+
+	/**
+	 * Choose from given candidates such that the distances match.
+	 */
+	@Benchmark
+	public List<PlanBuilder.ActLocation> sampleLocation() {
+		j = (j + 1) % locations.size();
+		return planBuilder.sampleLocation(locations.get(j), dists.get(j), rnd);
+	}
+
+	/**
+	 * Sample a coordinate near a link that is not a motorway.
+	 */
+	@Benchmark
+	public Coord sampleLink() {
+		return command.sampleLink(rnd, rnd.nextDouble(500, 20_000), Attributes.getHomeCoord(persons.get(next())));
+	}
+}
@@ -0,0 +1,99 @@
+package org.matsim.prepare.population;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.commons.io.FileUtils;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.population.PopulationUtils;
+import org.openjdk.jmh.annotations.*;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the generation of persons from census zones in {@link CreateKansaiPopulation}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class CreateKansaiPopulationBenchmark {
+
+	@Param({"20000", "200000"})
+	public int facilities;
+
+	private Path dir;
+	private CreateKansaiPopulation command;
+	private Config config;
+	private List<CSVRecord> zones;
+	private double[] incomes;
+
+	private int i;
+	private int j;
+
+	@Setup
+	public void setup() throws IOException {
+
+		dir = Files.createTempDirectory("kyoto-benchmark");
+		SyntheticFixture fixture = SyntheticFixture.create(dir, facilities, 0);
+
+		command = new CreateKansaiPopulation();
+		new CommandLine(command).parseArgs(
+			"--input", fixture.census.toString(),
+			"--shp", fixture.zones.toString(),
+			"--postal-shp", fixture.zones.toString(),
+			"--income", fixture.income.toString(),
+			"--facilities", fixture.facilities.toString(),
+			"--facilities-attr", "all",
+			"--output", dir.resolve("plans.xml.gz").toString()
+		);
+		command.prepare();
+
+		config = ConfigUtils.createConfig();
+
+		try (CSVParser csv = CSVParser.parse(fixture.census, StandardCharsets.UTF_8,
+			CSVFormat.DEFAULT.builder().setHeader().setSkipHeaderRecord(true).build())) {
+			zones = csv.getRecords();
+		}
+
+		incomes = new SplittableRandom(0).doubles(1 << 12, 0, 50_000_000).toArray();
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(dir.toFile());
+	}
+
+	/**
+	 * Generate the persons of one zone with the default sample size.
+	 * The population is replaced after all zones have been processed, so that its size stays realistic.
+	 */
+	@Benchmark
+	public void processZone() throws ParseException {
+		if (i == 0)
+			command.population = PopulationUtils.createPopulation(config);
+
+		command.processZone(zones.get(i));
+		i = (i + 1) % zones.size();
+	}
+
+	/**
+	 * Income after tax of random gross incomes.
+	 */
+	@Benchmark
+	public double calculateIncomeAfterTax() {
+		j = (j + 1) & (incomes.length - 1);
+		return CreateKansaiPopulation.calculateIncomeAfterTax(incomes[j]);
+	}
+}
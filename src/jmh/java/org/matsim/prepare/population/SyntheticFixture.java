@@ -0,0 +1,88 @@
+package org.matsim.prepare.population;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.core.population.PersonUtils;
+import org.matsim.prepare.synthetic.CreateSyntheticScenario;
+
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+/**
+ * Synthetic inputs for the population synthesis, created with {@link CreateSyntheticScenario} at Kyoto-like sizes.
+ */
+final class SyntheticFixture {
+
+	/**
+	 * Number of postal zones in each direction.
+	 */
+	private static final int GRID = 20;
+
+	final Path zones;
+	final Path facilities;
+	final Path network;
+	final Path persons;
+	final Path activities;
+	final Path commuter;
+	final Path census;
+	final Path income;
+
+	private final SplittableRandom rnd = new SplittableRandom(1);
+
+	private SyntheticFixture(Path dir) {
+		zones = dir.resolve(CreateSyntheticScenario.ZONES);
+		facilities = dir.resolve(CreateSyntheticScenario.FACILITIES);
+		network = dir.resolve(CreateSyntheticScenario.NETWORK);
+		persons = dir.resolve(CreateSyntheticScenario.SURVEY_PERSONS);
+		activities = dir.resolve(CreateSyntheticScenario.SURVEY_ACTIVITIES);
+		commuter = dir.resolve(CreateSyntheticScenario.COMMUTER);
+		census = dir.resolve(CreateSyntheticScenario.CENSUS);
+		income = dir.resolve(CreateSyntheticScenario.INCOME);
+	}
+
+	/**
+	 * Write all input files into a directory.
+	 *
+	 * @param nFacilities number of facilities
+	 * @param nSurvey     number of persons in the survey tables
+	 */
+	static SyntheticFixture create(Path dir, int nFacilities, int nSurvey) {
+
+		int code = new CreateSyntheticScenario().execute("--output", dir.toString(), "--grid", String.valueOf(GRID),
+			"--facilities", String.valueOf(nFacilities), "--survey", String.valueOf(nSurvey));
+
+		if (code != 0)
+			throw new IllegalStateException("Could not create synthetic scenario in " + dir);
+
+		return new SyntheticFixture(dir);
+	}
+
+	/**
+	 * Persons as created by {@link CreateKansaiPopulation}, living in random zones.
+	 */
+	Person[] createPersons(PopulationFactory factory, int n) {
+
+		Person[] result = new Person[n];
+		for (int i = 0; i < n; i++) {
+			int col = rnd.nextInt(GRID);
+			int row = rnd.nextInt(GRID);
+
+			Person person = factory.createPerson(Id.createPersonId("p" + i));
+			PersonUtils.setAge(person, rnd.nextInt(0, 95));
+			PersonUtils.setSex(person, rnd.nextBoolean() ? "m" : "f");
+
+			person.getAttributes().putAttribute("city", CreateSyntheticScenario.cityCode(GRID, col, row));
+			person.getAttributes().putAttribute("postal", CreateSyntheticScenario.postalCode(col, row));
+
+			Coord coord = CreateSyntheticScenario.randomCoord(rnd, col, row);
+			person.getAttributes().putAttribute(Attributes.HOME_X, coord.getX());
+			person.getAttributes().putAttribute(Attributes.HOME_Y, coord.getY());
+
+			result[i] = person;
+		}
+
+		return result;
+	}
+}
@@ -0,0 +1,21 @@
+package org.matsim.dashboard;
+
+import org.matsim.core.config.Config;
+import org.matsim.run.telemetry.PerformanceDashboard;
+import org.matsim.simwrapper.Dashboard;
+import org.matsim.simwrapper.DashboardProvider;
+import org.matsim.simwrapper.SimWrapper;
+
+import java.util.List;
+
+/**
+ * Dashboards specific to the Kyoto scenario.
+ */
+public class KyotoDashboardProvider implements DashboardProvider {
+
+	@Override
+	public List<Dashboard> getDashboards(Config config, SimWrapper simWrapper) {
+		return List.of(new PerformanceDashboard());
+	}
+
+}
@@ -0,0 +1,78 @@
+package org.matsim.prepare;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reads independent inputs of a command concurrently, each on its own virtual thread.
+ * Reading is mostly I/O and decompression, so inputs can overlap even on few cores.
+ * <p>
+ * A loader that depends on another input calls {@link Input#get()} of that input, which only blocks its own virtual thread.
+ * Inputs that have not been retrieved when this object is closed are cancelled.
+ * Loaders must not modify shared state, their results are only published through {@link Input#get()}.
+ */
+public final class ConcurrentInputs implements AutoCloseable {
+
+	private static final Logger log = LogManager.getLogger(ConcurrentInputs.class);
+
+	private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+	/**
+	 * Start loading an input.
+	 *
+	 * @param name used for logging and error messages
+	 */
+	public <T> Input<T> submit(String name, Callable<T> loader) {
+		return new Input<>(name, executor.submit(() -> {
+			long start = System.nanoTime();
+			T result = loader.call();
+			log.info("Loaded {} in {}s", name, Math.round((System.nanoTime() - start) / 1e6) / 1000.0);
+			return result;
+		}));
+	}
+
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * An input that is being loaded.
+	 */
+	public static final class Input<T> {
+
+		private final String name;
+		private final Future<T> future;
+
+		private Input(String name, Future<T> future) {
+			this.name = name;
+			this.future = future;
+		}
+
+		/**
+		 * Wait until the input is loaded.
+		 *
+		 * @throws IOException if the loader failed with an I/O error or the thread was interrupted
+		 */
+		public T get() throws IOException {
+			try {
+				return future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while loading " + name, e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException)
+					throw new IOException("Could not load " + name, e.getCause());
+
+				throw new IllegalStateException("Could not load " + name, e.getCause());
+			}
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package org.matsim.prepare;
+
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.io.PopulationWriter;
+import org.matsim.pt.transitSchedule.api.TransitSchedule;
+import org.matsim.pt.transitSchedule.api.TransitScheduleWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * Writes MATSim output files with {@link ParallelGzipOutputStream}, if their name ends with {@code .gz}. Other files are written as usual.
+ */
+public final class ParallelGzip {
+
+	private ParallelGzip() {
+	}
+
+	/**
+	 * Number of compression threads, which is the number of available cores.
+	 */
+	public static int threads() {
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Open a compressed output stream.
+	 */
+	public static OutputStream open(Path path) throws IOException {
+		return new ParallelGzipOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 20), threads());
+	}
+
+	/**
+	 * Write a population, replacing {@link PopulationUtils#writePopulation(Population, String)}.
+	 */
+	public static void writePopulation(Population population, String filename) {
+		if (!filename.endsWith(".gz")) {
+			PopulationUtils.writePopulation(population, filename);
+			return;
+		}
+
+		try (OutputStream out = open(Path.of(filename))) {
+			new PopulationWriter(population).write(out);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not write population " + filename, e);
+		}
+	}
+
+	/**
+	 * Write a network, replacing {@link NetworkUtils#writeNetwork(Network, String)}.
+	 */
+	public static void writeNetwork(Network network, String filename) {
+		write(filename, f -> NetworkUtils.writeNetwork(network, f));
+	}
+
+	/**
+	 * Write a transit schedule, replacing {@link TransitScheduleWriter#writeFile(String)}.
+	 */
+	public static void writeSchedule(TransitSchedule schedule, String filename) {
+		write(filename, f -> new TransitScheduleWriter(schedule).writeFile(f));
+	}
+
+	/**
+	 * Write a file with any MATSim writer that only accepts file names.
+	 * Compressed files are first written uncompressed next to the output and then compressed in parallel, which is still much faster than compressing on the writing thread.
+	 */
+	public static void write(String filename, Consumer<String> writer) {
+		if (!filename.endsWith(".gz")) {
+			writer.accept(filename);
+			return;
+		}
+
+		Path output = Path.of(filename);
+		Path tmp = output.resolveSibling(output.getFileName() + ".tmp.xml");
+		try {
+			writer.accept(tmp.toString());
+			try (OutputStream out = open(output)) {
+				Files.copy(tmp, out);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not write " + filename, e);
+		} finally {
+			try {
+				Files.deleteIfExists(tmp);
+			} catch (IOException e) {
+				// The output has been written, a leftover temporary file is not an error
+			}
+		}
+	}
+}
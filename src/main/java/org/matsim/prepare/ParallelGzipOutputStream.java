@@ -0,0 +1,202 @@
+package org.matsim.prepare;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip output stream that compresses blocks of data in parallel, similar to pigz.
+ * Each block is written as its own gzip member. Multi-member files are part of the gzip standard and can be read by {@link java.util.zip.GZIPInputStream},
+ * the gzip tools and MATSim readers, only the compression ratio is slightly lower because blocks do not share a dictionary.
+ * <p>
+ * Compressed blocks are written in order. At most two blocks per thread are held in memory.
+ * {@link #flush()} only writes blocks that are already complete, the remaining data is compressed on {@link #close()}.
+ */
+public final class ParallelGzipOutputStream extends OutputStream {
+
+	/**
+	 * Default size of uncompressed blocks. Larger blocks compress slightly better, but need more memory.
+	 */
+	public static final int BLOCK_SIZE = 1 << 20;
+
+	private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+	private final OutputStream out;
+	private final ExecutorService executor;
+	private final Queue<Future<byte[]>> pending = new ArrayDeque<>();
+	private final int maxPending;
+	private final int level;
+
+	private byte[] block;
+	private int size;
+	private boolean closed;
+
+	/**
+	 * Create a stream with default block size and compression level.
+	 *
+	 * @param out     stream the compressed data is written to, will be closed with this stream
+	 * @param threads number of compression threads
+	 */
+	public ParallelGzipOutputStream(OutputStream out, int threads) {
+		this(out, threads, BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * Create a stream.
+	 *
+	 * @param out       stream the compressed data is written to, will be closed with this stream
+	 * @param threads   number of compression threads
+	 * @param blockSize size of uncompressed blocks
+	 * @param level     deflate compression level
+	 */
+	public ParallelGzipOutputStream(OutputStream out, int threads, int blockSize, int level) {
+		if (threads < 1)
+			throw new IllegalArgumentException("At least one thread is required");
+
+		this.out = out;
+		this.executor = Executors.newFixedThreadPool(threads, r -> {
+			Thread t = new Thread(r, "gzip");
+			t.setDaemon(true);
+			return t;
+		});
+		this.maxPending = 2 * threads;
+		this.level = level;
+		this.block = new byte[blockSize];
+	}
+
+	/**
+	 * Compress one block as a complete gzip member.
+	 */
+	private static byte[] compress(byte[] data, int length, int level) {
+
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, length);
+
+		// Nowrap produces raw deflate data, header and trailer are written here
+		Deflater deflater = new Deflater(level, true);
+		ByteArrayOutputStream member = new ByteArrayOutputStream(length / 2 + 64);
+		try {
+			member.write(HEADER, 0, HEADER.length);
+
+			deflater.setInput(data, 0, length);
+			deflater.finish();
+
+			byte[] buf = new byte[64 * 1024];
+			while (!deflater.finished()) {
+				int n = deflater.deflate(buf);
+				member.write(buf, 0, n);
+			}
+		} finally {
+			deflater.end();
+		}
+
+		writeInt(member, (int) crc.getValue());
+		writeInt(member, length);
+
+		return member.toByteArray();
+	}
+
+	/**
+	 * Write little-endian int, as used by the gzip trailer.
+	 */
+	private static void writeInt(ByteArrayOutputStream out, int v) {
+		out.write(v & 0xff);
+		out.write((v >>> 8) & 0xff);
+		out.write((v >>> 16) & 0xff);
+		out.write((v >>> 24) & 0xff);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		ensureOpen();
+		block[size++] = (byte) b;
+		if (size == block.length)
+			submit();
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		while (len > 0) {
+			int n = Math.min(len, block.length - size);
+			System.arraycopy(b, off, block, size, n);
+			size += n;
+			off += n;
+			len -= n;
+
+			if (size == block.length)
+				submit();
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		ensureOpen();
+		while (!pending.isEmpty() && pending.peek().isDone()) {
+			writeNext();
+		}
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+
+		closed = true;
+		try {
+			if (size > 0)
+				submit();
+
+			while (!pending.isEmpty()) {
+				writeNext();
+			}
+		} finally {
+			executor.shutdownNow();
+			out.close();
+		}
+	}
+
+	private void submit() throws IOException {
+
+		if (pending.size() >= maxPending)
+			writeNext();
+
+		byte[] data = block;
+		int length = size;
+		int lvl = level;
+		pending.add(executor.submit(() -> compress(data, length, lvl)));
+
+		// The submitted block is owned by the task now
+		block = new byte[data.length];
+		size = 0;
+	}
+
+	/**
+	 * Wait for the oldest block and write it.
+	 */
+	private void writeNext() throws IOException {
+		Future<byte[]> next = pending.remove();
+		try {
+			out.write(next.get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while compressing", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Could not compress block", e.getCause());
+		}
+	}
+
+	private void ensureOpen() throws IOException {
+		if (closed)
+			throw new IOException("Stream closed");
+	}
+}
@@ -0,0 +1,174 @@
+package org.matsim.prepare;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.io.PopulationReader;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.utils.io.IOUtils;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reads plans files on several threads. The file is decompressed on the calling thread and split into chunks at {@code <person>} elements.
+ * Each chunk is parsed by the regular MATSim reader on a worker, as a document with the header of the file. Persons are added to the result in file order.
+ * <p>
+ * Splitting relies on persons starting on a new line, as written by MATSim. Files in other formats are read with {@link PopulationUtils#readPopulation(String)}.
+ */
+public final class ParallelPopulationReader {
+
+	private static final Logger log = LogManager.getLogger(ParallelPopulationReader.class);
+
+	/**
+	 * Approximate number of characters per chunk.
+	 */
+	private static final int CHUNK_SIZE = 4 << 20;
+
+	/**
+	 * Headers larger than this are not expected in plans files, these are read single-threaded.
+	 */
+	private static final int MAX_HEADER = 1 << 20;
+
+	private ParallelPopulationReader() {
+	}
+
+	/**
+	 * Read a population using all available cores.
+	 */
+	public static Population read(String filename) {
+		return read(filename, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Read a population, replacing {@link PopulationUtils#readPopulation(String)}.
+	 *
+	 * @param threads number of parsing threads
+	 */
+	public static Population read(String filename, int threads) {
+
+		Population population;
+		try (BufferedReader reader = IOUtils.getBufferedReader(IOUtils.resolveFileOrResource(filename))) {
+			population = read(reader, threads);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not read population " + filename, e);
+		}
+
+		if (population == null) {
+			log.info("{} can not be split into chunks, reading it on one thread", filename);
+			return PopulationUtils.readPopulation(filename);
+		}
+
+		return population;
+	}
+
+	/**
+	 * Read all chunks, or return null if the file can not be split.
+	 */
+	private static Population read(BufferedReader reader, int threads) throws IOException {
+
+		StringBuilder header = new StringBuilder();
+		String line = reader.readLine();
+		for (; line != null && !isPersonStart(line) && header.length() < MAX_HEADER; line = reader.readLine()) {
+			header.append(line).append('\n');
+		}
+
+		if (line == null || !isPersonStart(line) || !(header.indexOf("population_v6.dtd") >= 0 || header.indexOf("population_v5.dtd") >= 0))
+			return null;
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		Queue<Future<Population>> pending = new ArrayDeque<>();
+		StringBuilder chunk = new StringBuilder(CHUNK_SIZE + (1 << 16));
+		String head = header.toString();
+
+		Population population = null;
+		try {
+			for (; line != null; line = reader.readLine()) {
+
+				if (chunk.length() >= CHUNK_SIZE && isPersonStart(line)) {
+					// Limit the number of chunks held in memory
+					if (pending.size() >= 2 * threads)
+						population = merge(population, pending.remove());
+
+					String body = chunk.toString();
+					pending.add(executor.submit(() -> parse(head, body)));
+					chunk.setLength(0);
+				}
+
+				// The end of the document is added to every chunk
+				if (!line.trim().equals("</population>"))
+					chunk.append(line).append('\n');
+			}
+
+			if (!chunk.isEmpty()) {
+				String body = chunk.toString();
+				pending.add(executor.submit(() -> parse(head, body)));
+			}
+
+			while (!pending.isEmpty()) {
+				population = merge(population, pending.remove());
+			}
+
+		} finally {
+			executor.shutdownNow();
+		}
+
+		return population;
+	}
+
+	private static boolean isPersonStart(String line) {
+		String l = line.stripLeading();
+		return l.startsWith("<person ") || l.startsWith("<person>");
+	}
+
+	/**
+	 * Parse one chunk as a complete population document.
+	 */
+	private static Population parse(String header, String chunk) {
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		byte[] document = (header + chunk + "</population>\n").getBytes(StandardCharsets.UTF_8);
+		new PopulationReader(scenario).parse(new ByteArrayInputStream(document));
+		return scenario.getPopulation();
+	}
+
+	/**
+	 * Wait for the next chunk and add its persons. The first chunk becomes the result, which also contains the attributes of the population.
+	 */
+	private static Population merge(Population population, Future<Population> next) throws IOException {
+
+		Population chunk;
+		try {
+			chunk = next.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading population", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException r)
+				throw r;
+
+			throw new IllegalStateException("Could not parse population", e.getCause());
+		}
+
+		if (population == null)
+			return chunk;
+
+		for (Person person : chunk.getPersons().values()) {
+			population.addPerson(person);
+		}
+
+		return population;
+	}
+}
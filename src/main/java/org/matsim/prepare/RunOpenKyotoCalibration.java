@@ -14,11 +14,19 @@ import org.matsim.prepare.facilities.ExtractFacilityGeoPkg;
 import org.matsim.prepare.opt.ExtractPlanIndexFromType;
 import org.matsim.prepare.opt.RunCountOptimization;
 import org.matsim.prepare.opt.SelectPlansFromIndex;
+import org.matsim.prepare.network.SimplifyNetwork;
 import org.matsim.prepare.population.*;
+import org.matsim.prepare.skims.CreateZoneSkims;
+import org.matsim.prepare.synthetic.CreateSyntheticScenario;
+import org.matsim.prepare.transit.CompactTransitSchedule;
 import org.matsim.prepare.transit.MergeTransitSchedules;
 import org.matsim.prepare.transit.PrepareTransitNetwork;
 import org.matsim.prepare.transit.PrepareTransitVehicles;
 import org.matsim.run.OpenKyotoScenario;
+import org.matsim.run.check.CheckScenario;
+import org.matsim.run.events.ConvertEvents;
+import org.matsim.run.links.CreateFacilityLinks;
+import org.matsim.run.snapshot.CreateScenarioSnapshot;
 import picocli.CommandLine;
 
 @CommandLine.Command(header = ":: Open Kyoto Calibration ::", version = OpenKyotoScenario.VERSION, mixinStandardHelpOptions = true)
@@ -30,7 +38,10 @@ import picocli.CommandLine;
 	RunActivitySampling.class, MergePlans.class, SplitActivityTypesDuration.class, CleanPopulation.class, CleanAttributes.class,
 	RunCountOptimization.class, SelectPlansFromIndex.class, ExtractPlanIndexFromType.class, AssignReferencePopulation.class,
 	ExtractRelevantFreightTrips.class, CheckCarAvailability.class, FixSubtourModes.class, ComputeTripChoices.class, ComputePlanChoices.class,
-	ApplyNetworkParams.class, SetCarAvailabilityByAge.class, MergeTransitSchedules.class, PrepareTransitNetwork.class, PrepareTransitVehicles.class
+	ApplyNetworkParams.class, SetCarAvailabilityByAge.class, MergeTransitSchedules.class, PrepareTransitNetwork.class, PrepareTransitVehicles.class,
+	CompactTransitSchedule.class, CreateScenarioSnapshot.class, UpscalePlans.class, ConvertEvents.class, SimplifyNetwork.class,
+	CreateSyntheticScenario.class, CreateZoneSkims.class, CheckScenario.class,
+	CreateFacilityLinks.class
 })
 public class RunOpenKyotoCalibration extends MATSimApplication {
 
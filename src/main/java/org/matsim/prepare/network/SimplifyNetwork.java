@@ -0,0 +1,244 @@
+package org.matsim.prepare.network;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.application.MATSimAppCommand;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.counts.Counts;
+import org.matsim.counts.MatsimCountsReader;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.facilities.MatsimFacilitiesReader;
+import org.matsim.prepare.ParallelGzip;
+import org.matsim.pt.transitSchedule.api.*;
+import picocli.CommandLine;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+@CommandLine.Command(
+	name = "simplify-network",
+	description = "Merge consecutive links with the same attributes, that are connected by nodes without other links. Other attributes are kept only if they are equal on the merged links."
+)
+public class SimplifyNetwork implements MATSimAppCommand {
+
+	private static final Logger log = LogManager.getLogger(SimplifyNetwork.class);
+
+	@CommandLine.Parameters(arity = "1", paramLabel = "INPUT", description = "Path to input network")
+	private Path input;
+
+	@CommandLine.Option(names = "--output", description = "Path to output network", required = true)
+	private Path output;
+
+	@CommandLine.Option(names = "--output-mapping", description = "Path to csv with the simplified link of each merged link")
+	private Path mapping;
+
+	@CommandLine.Option(names = "--counts", description = "Counts file, counted links are kept")
+	private Path counts;
+
+	@CommandLine.Option(names = "--schedule", description = "Transit schedule, links used by routes and stops are kept")
+	private Path schedule;
+
+	@CommandLine.Option(names = "--facilities", description = "Facilities file, links of facilities are kept")
+	private Path facilities;
+
+	public static void main(String[] args) {
+		new SimplifyNetwork().execute(args);
+	}
+
+	@Override
+	public Integer call() throws Exception {
+
+		Network network = NetworkUtils.readNetwork(input.toString());
+
+		Set<Id<Link>> fixed = readFixedLinks();
+		log.info("{} links are kept unchanged", fixed.size());
+
+		int before = network.getLinks().size();
+		Map<Id<Link>, List<Id<Link>>> merged = simplify(network, fixed);
+
+		log.info("Reduced number of links from {} to {}", before, network.getLinks().size());
+
+		ParallelGzip.writeNetwork(network, output.toString());
+
+		if (mapping != null) {
+			try (CSVPrinter csv = new CSVPrinter(Files.newBufferedWriter(mapping), CSVFormat.DEFAULT)) {
+				csv.printRecord("link_id", "simplified_link_id");
+				for (Map.Entry<Id<Link>, List<Id<Link>>> e : merged.entrySet()) {
+					for (Id<Link> original : e.getValue()) {
+						csv.printRecord(original, e.getKey());
+					}
+				}
+			}
+		}
+
+		return 0;
+	}
+
+	private Set<Id<Link>> readFixedLinks() {
+
+		Set<Id<Link>> fixed = new HashSet<>();
+
+		if (counts != null) {
+			Counts<Link> c = new Counts<>();
+			new MatsimCountsReader(c).readFile(counts.toString());
+			fixed.addAll(c.getCounts().keySet());
+		}
+
+		if (schedule != null) {
+			Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+			new TransitScheduleReader(scenario).readFile(schedule.toString());
+
+			for (TransitStopFacility stop : scenario.getTransitSchedule().getFacilities().values()) {
+				if (stop.getLinkId() != null)
+					fixed.add(stop.getLinkId());
+			}
+
+			for (TransitLine line : scenario.getTransitSchedule().getTransitLines().values()) {
+				for (TransitRoute route : line.getRoutes().values()) {
+					if (route.getRoute() == null)
+						continue;
+
+					fixed.add(route.getRoute().getStartLinkId());
+					fixed.addAll(route.getRoute().getLinkIds());
+					fixed.add(route.getRoute().getEndLinkId());
+				}
+			}
+		}
+
+		if (facilities != null) {
+			Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+			new MatsimFacilitiesReader(scenario).readFile(facilities.toString());
+			for (ActivityFacility f : scenario.getActivityFacilities().getFacilities().values()) {
+				if (f.getLinkId() != null)
+					fixed.add(f.getLinkId());
+			}
+		}
+
+		return fixed;
+	}
+
+	/**
+	 * Merge links in place.
+	 *
+	 * @return original links of each link that was created by merging, including the link with the same id.
+	 */
+	static Map<Id<Link>, List<Id<Link>>> simplify(Network network, Set<Id<Link>> fixed) {
+
+		Map<Id<Link>, List<Id<Link>>> merged = new LinkedHashMap<>();
+		Map<String, Integer> dropped = new TreeMap<>();
+
+		Deque<Node> candidates = new ArrayDeque<>(network.getNodes().values());
+		while (!candidates.isEmpty()) {
+			Node node = candidates.poll();
+			if (!network.getNodes().containsKey(node.getId()))
+				continue;
+
+			List<Link[]> pairs = pairs(node, fixed);
+			if (pairs == null)
+				continue;
+
+			for (Link[] pair : pairs) {
+				Link link = merge(network, pair[0], pair[1], dropped);
+
+				List<Id<Link>> originals = merged.computeIfAbsent(link.getId(), k -> new ArrayList<>(List.of(k)));
+				List<Id<Link>> second = merged.remove(pair[1].getId());
+				originals.addAll(second != null ? second : List.of(pair[1].getId()));
+
+				// End nodes may become mergeable, if they were blocked by unpaired links before
+				candidates.add(link.getFromNode());
+				candidates.add(link.getToNode());
+			}
+
+			network.removeNode(node.getId());
+		}
+
+		if (!dropped.isEmpty())
+			log.info("Attributes that differed between merged links were removed (key=count): {}", dropped);
+
+		return merged;
+	}
+
+	/**
+	 * Pairs of in and out links that can be merged, if all links of the node can be merged. Otherwise null.
+	 */
+	private static List<Link[]> pairs(Node node, Set<Id<Link>> fixed) {
+
+		List<? extends Link> in = new ArrayList<>(node.getInLinks().values());
+		List<? extends Link> out = new ArrayList<>(node.getOutLinks().values());
+
+		if (in.size() != out.size() || in.isEmpty() || in.size() > 2)
+			return null;
+
+		if (in.stream().anyMatch(l -> fixed.contains(l.getId())) || out.stream().anyMatch(l -> fixed.contains(l.getId())))
+			return null;
+
+		List<Link[]> pairs = new ArrayList<>();
+		for (Link a : in) {
+			// The out link that does not lead back, which must be unique
+			List<? extends Link> next = out.stream().filter(b -> b.getToNode() != a.getFromNode()).toList();
+			if (next.size() != 1 || !isCompatible(a, next.get(0)) || next.get(0).getToNode() == node)
+				return null;
+
+			pairs.add(new Link[]{a, next.get(0)});
+		}
+
+		// Each out link must be used exactly once
+		if (pairs.stream().map(p -> p[1]).distinct().count() != out.size())
+			return null;
+
+		return pairs;
+	}
+
+	/**
+	 * Links can be merged without changing travel times and storage capacity.
+	 */
+	private static boolean isCompatible(Link a, Link b) {
+		return a.getAllowedModes().equals(b.getAllowedModes()) &&
+			a.getFreespeed() == b.getFreespeed() &&
+			a.getNumberOfLanes() == b.getNumberOfLanes() &&
+			Objects.equals(NetworkUtils.getType(a), NetworkUtils.getType(b));
+	}
+
+	/**
+	 * Replace two links by one with the id of the first. Only attributes with equal values on both links are kept,
+	 * the keys of all others are counted in {@code dropped}.
+	 */
+	private static Link merge(Network network, Link a, Link b, Map<String, Integer> dropped) {
+
+		Link link = network.getFactory().createLink(a.getId(), a.getFromNode(), b.getToNode());
+		link.setLength(a.getLength() + b.getLength());
+		link.setCapacity(Math.min(a.getCapacity(), b.getCapacity()));
+		link.setFreespeed(a.getFreespeed());
+		link.setNumberOfLanes(a.getNumberOfLanes());
+		link.setAllowedModes(a.getAllowedModes());
+
+		Map<String, Object> other = b.getAttributes().getAsMap();
+		for (Map.Entry<String, Object> e : a.getAttributes().getAsMap().entrySet()) {
+			if (Objects.equals(e.getValue(), other.get(e.getKey())))
+				link.getAttributes().putAttribute(e.getKey(), e.getValue());
+			else
+				dropped.merge(e.getKey(), 1, Integer::sum);
+		}
+
+		for (String key : other.keySet()) {
+			if (a.getAttributes().getAttribute(key) == null)
+				dropped.merge(key, 1, Integer::sum);
+		}
+
+		network.removeLink(a.getId());
+		network.removeLink(b.getId());
+		network.addLink(link);
+
+		return link;
+	}
+}
@@ -2,8 +2,11 @@ package org.matsim.prepare.population;
 
 import it.unimi.dsi.fastutil.Pair;
 import it.unimi.dsi.fastutil.doubles.DoubleList;
+import it.unimi.dsi.fastutil.ints.IntList;
 import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
 import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import me.tongfei.progressbar.ProgressBar;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
@@ -12,8 +15,6 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.geotools.api.feature.simple.SimpleFeature;
 import org.locationtech.jts.geom.Geometry;
-import org.locationtech.jts.geom.Point;
-import org.locationtech.jts.index.strtree.STRtree;
 import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
@@ -23,24 +24,21 @@ import org.matsim.application.analysis.population.TripAnalysis;
 import org.matsim.application.options.ShpOptions;
 import org.matsim.core.network.NetworkUtils;
 import org.matsim.core.population.PersonUtils;
-import org.matsim.core.population.PopulationUtils;
 import org.matsim.core.population.algorithms.ParallelPersonAlgorithmUtils;
 import org.matsim.core.population.algorithms.PersonAlgorithm;
 import org.matsim.core.router.TripStructureUtils;
-import org.matsim.core.utils.geometry.CoordUtils;
-import org.matsim.core.utils.geometry.geotools.MGC;
-import org.matsim.facilities.ActivityFacility;
-import org.matsim.prepare.facilities.AttributedActivityFacility;
-import org.matsim.run.OpenKyotoScenario;
+import org.matsim.prepare.ConcurrentInputs;
+import org.matsim.prepare.ParallelGzip;
+import org.matsim.prepare.ParallelPopulationReader;
 import picocli.CommandLine;
 
+import java.io.IOException;
 import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.Function;
-import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
@@ -68,17 +66,23 @@ public class CreateDailyPlans implements MATSimAppCommand, PersonAlgorithm {
 	private Path activityPath;
 	@CommandLine.Option(names = "--facilities", description = "Path to MATSim facilities", required = true)
 	private Path facilityPath;
+	@CommandLine.Option(names = "--facility-store", description = "Path to the memory-mapped facility store. It is created if it does not exist or does not match the facilities and zones. " +
+		"If not given, a temporary store is used.")
+	private Path storePath;
 	@CommandLine.Option(names = "--network", description = "Path to network file", required = true)
 	private Path networkPath;
 	@CommandLine.Option(names = "--commuter", description = "Path to commuter csv file", required = true)
 	private Path commuterPath;
 	@CommandLine.Option(names = "--seed", description = "Seed used to sample locations", defaultValue = "1")
 	private long seed;
+	@CommandLine.Option(names = "--seeds", description = "Create one population for each of these seeds, reusing all other inputs. " +
+		"Output files are suffixed with the seed, --seed is ignored.", split = ",")
+	private List<Long> seeds;
 	@CommandLine.Mixin
 	private ShpOptions shp;
 
 	private Population population;
-	private FacilityIndex facilities;
+	private FacilityStore facilities;
 	private Network network;
 	private Map<String, List<CSVRecord>> activities;
 	private Map<String, Geometry> zones;
@@ -90,7 +94,7 @@ public class CreateDailyPlans implements MATSimAppCommand, PersonAlgorithm {
 		new CreateDailyPlans().execute(args);
 	}
 
-	private static String getZone(String location, String zone) {
+	static String getZone(String location, String zone) {
 		if (zone.isBlank() || zone.equals(location))
 			return location;
 		else
@@ -114,101 +118,137 @@ public class CreateDailyPlans implements MATSimAppCommand, PersonAlgorithm {
 			return 2;
 		}
 
-		zones = readZones(shp);
-		activities = RunActivitySampling.readActivities(activityPath);
-
-		facilities = new FacilityIndex(facilityPath.toString(), createFacilityFilter(), OpenKyotoScenario.CRS);
-		planBuilder = new PlanBuilder(createZoneSelector());
+		try (ConcurrentInputs inputs = new ConcurrentInputs()) {
+			// The population is the largest input and is read while the others are prepared
+			ConcurrentInputs.Input<Population> pop = inputs.submit("population", () -> ParallelPopulationReader.read(input.toString()));
+			prepare(inputs);
+			population = pop.get();
+		}
 
-		// Remove activities with missing leg duration
-		activities.values().removeIf(
-			rows -> rows.stream().anyMatch(act -> act.get("leg_duration").isBlank() || act.get("duration").isBlank())
-		);
+		if (seeds == null || seeds.isEmpty()) {
+			createPlans(seed, output);
+			return 0;
+		}
 
-		log.info("Got {} persons after cleaning", activities.size());
+		for (int i = 0; i < seeds.size(); i++) {
+			// Plans are modified in place, so every seed starts again from the input population
+			if (i > 0)
+				population = ParallelPopulationReader.read(input.toString());
 
-		try (CSVParser csv = CSVParser.parse(personsPath, StandardCharsets.UTF_8,
-			CSVFormat.DEFAULT.builder().setHeader().setSkipHeaderRecord(true).build())) {
-			readPersons(csv);
+			createPlans(seeds.get(i), outputForSeed(output, seeds.get(i)));
 		}
 
-		commuter = new Object2DoubleOpenHashMap<>();
-		try (CSVParser csv = CSVParser.parse(commuterPath, StandardCharsets.UTF_8,
-			CSVFormat.DEFAULT.builder().setHeader().setSkipHeaderRecord(true).build())) {
-			for (CSVRecord r : csv) {
-				commuter.put(Pair.of(r.get("home"), r.get("work")), Double.parseDouble(r.get("n")));
-			}
-		}
+		return 0;
+	}
 
-		network = NetworkUtils.readNetwork(networkPath.toString());
-		population = PopulationUtils.readPopulation(input.toString());
+	/**
+	 * Output path of one seed, with the seed inserted before the file extension.
+	 */
+	static Path outputForSeed(Path output, long seed) {
+		String name = output.getFileName().toString();
+		int idx = name.indexOf(".xml");
+		if (idx < 0)
+			idx = name.length();
+
+		return output.resolveSibling(name.substring(0, idx) + "-seed" + seed + name.substring(idx));
+	}
+
+	/**
+	 * Create plans for all persons of the current population and write them.
+	 */
+	private void createPlans(long runSeed, Path runOutput) {
+
+		seed = runSeed;
+		counter.set(0);
 
-		pb = new ProgressBar("Creating daily plans", population.getPersons().size());
+		pb = new ProgressBar("Creating daily plans (seed %d)".formatted(runSeed), population.getPersons().size());
 
 		ParallelPersonAlgorithmUtils.run(population, 8, this);
 
-		PopulationUtils.writePopulation(population, output.toString());
+		pb.close();
 
-		log.info("Matched {} out of {} persons. Remaining were sampled.", counter.get(), population.getPersons().size());
+		ParallelGzip.writePopulation(population, runOutput.toString());
 
-		return 0;
+		log.info("Matched {} out of {} persons. Remaining were sampled.", counter.get(), population.getPersons().size());
 	}
 
 	/**
-	 * Assigns zones to facilities.
+	 * Read all inputs, except the population.
 	 */
-	private Predicate<ActivityFacility> createFacilityFilter() {
+	// Package-private for the JMH benchmarks
+	void prepare() throws IOException {
+		try (ConcurrentInputs inputs = new ConcurrentInputs()) {
+			prepare(inputs);
+		}
+	}
 
-		STRtree index = new STRtree();
-		for (Map.Entry<String, Geometry> e : zones.entrySet()) {
-			if (e.getKey().contains("_"))
-				continue;
+	private void prepare(ConcurrentInputs inputs) throws IOException {
 
-			index.insert(e.getValue().getEnvelopeInternal(), e);
+		ConcurrentInputs.Input<Map<String, Geometry>> zonesInput = inputs.submit("zones", () -> readZones(shp));
+		ConcurrentInputs.Input<Map<String, List<CSVRecord>>> activitiesInput = inputs.submit("activities", this::readActivities);
+		// Zones are needed to assign facilities to them
+		ConcurrentInputs.Input<FacilityStore> facilitiesInput = inputs.submit("facilities", () -> loadFacilities(zonesInput.get()));
+		ConcurrentInputs.Input<Object2DoubleMap<Pair<String, String>>> commuterInput = inputs.submit("commuter", this::readCommuter);
+		ConcurrentInputs.Input<Network> networkInput = inputs.submit("network", () -> NetworkUtils.readNetwork(networkPath.toString()));
+
+		// Persons without activities are skipped
+		activities = activitiesInput.get();
+		try (CSVParser csv = CSVParser.parse(personsPath, StandardCharsets.UTF_8,
+			CSVFormat.DEFAULT.builder().setHeader().setSkipHeaderRecord(true).build())) {
+			readPersons(csv);
 		}
-		index.build();
-
-		return facility -> {
-			Point point = MGC.coord2Point(facility.getCoord());
-			List<Map.Entry<String, Geometry>> matches = index.query(point.getEnvelopeInternal());
-			for (Map.Entry<String, Geometry> match : matches) {
-				if (match.getValue().contains(point)) {
-					facility.getAttributes().putAttribute("location", match.getKey());
-				}
-			}
 
-			return true;
-		};
+		zones = zonesInput.get();
+		facilities = facilitiesInput.get();
+		planBuilder = new PlanBuilder(facilities, row -> getZone(row.get("location"), row.get("zone")));
+		commuter = commuterInput.get();
+		network = networkInput.get();
 	}
 
 	/**
-	 * Build map of zones to facilities.
+	 * Read activities of the survey, without persons that have activities with missing durations.
 	 */
-	private Function<CSVRecord, Set<ActivityFacility>> createZoneSelector() {
+	private Map<String, List<CSVRecord>> readActivities() throws IOException {
 
-		STRtree index = new STRtree();
-		for (Map.Entry<String, Geometry> e : zones.entrySet()) {
-			index.insert(e.getValue().getEnvelopeInternal(), e);
-		}
-		index.build();
-
-		// Contains all activities for a zone
-		Map<String, Set<ActivityFacility>> zoneFacilities = new HashMap<>();
-		for (ActivityFacility facility : facilities.all.getFacilities().values()) {
-			Point point = MGC.coord2Point(facility.getCoord());
-			List<Map.Entry<String, Geometry>> matches = index.query(point.getEnvelopeInternal());
-			for (Map.Entry<String, Geometry> match : matches) {
-				if (match.getValue().contains(point)) {
-					zoneFacilities.computeIfAbsent(match.getKey(), k -> new HashSet<>()).add(facility);
-					break;
-				}
+		Map<String, List<CSVRecord>> result = RunActivitySampling.readActivities(activityPath);
+
+		// Remove activities with missing leg duration
+		result.values().removeIf(
+			rows -> rows.stream().anyMatch(act -> act.get("leg_duration").isBlank() || act.get("duration").isBlank())
+		);
+
+		log.info("Got {} persons after cleaning", result.size());
+
+		return result;
+	}
+
+	private Object2DoubleMap<Pair<String, String>> readCommuter() throws IOException {
+
+		Object2DoubleMap<Pair<String, String>> result = new Object2DoubleOpenHashMap<>();
+		try (CSVParser csv = CSVParser.parse(commuterPath, StandardCharsets.UTF_8,
+			CSVFormat.DEFAULT.builder().setHeader().setSkipHeaderRecord(true).build())) {
+			for (CSVRecord r : csv) {
+				result.put(Pair.of(r.get("home"), r.get("work")), Double.parseDouble(r.get("n")));
 			}
 		}
 
-		return row -> {
-			String zone = getZone(row.get("location"), row.get("zone"));
-			return zoneFacilities.getOrDefault(zone, Collections.emptySet());
-		};
+		return result;
+	}
+
+	/**
+	 * Map the facility store, which is created first if needed.
+	 */
+	private FacilityStore loadFacilities(Map<String, Geometry> zones) throws IOException {
+
+		Path path = storePath;
+		if (path == null) {
+			Path dir = Files.createTempDirectory("facilities");
+			dir.toFile().deleteOnExit();
+			path = dir.resolve("facilities.store");
+			path.toFile().deleteOnExit();
+		}
+
+		return FacilityStore.load(path, facilityPath, zones);
 	}
 
 	@Override
@@ -285,7 +325,8 @@ public class CreateDailyPlans implements MATSimAppCommand, PersonAlgorithm {
 	/**
 	 * Select suitable locations with matching distances.
 	 */
-	private void sampleLocationsByDist(Person person, Plan plan, SplittableRandom rnd) {
+	// Package-private for the JMH benchmarks
+	void sampleLocationsByDist(Person person, Plan plan, SplittableRandom rnd) {
 
 		Coord homeCoord = Attributes.getHomeCoord(person);
 		String homeZone = Objects.toString(person.getAttributes().getAttribute("city"));
@@ -293,7 +334,8 @@ public class CreateDailyPlans implements MATSimAppCommand, PersonAlgorithm {
 		List<Activity> acts = TripStructureUtils.getActivities(plan, TripStructureUtils.StageActivityHandling.ExcludeStageActivities);
 
 		// Activities that only occur on one place per person
-		Map<String, ActivityFacility> fixedLocations = new HashMap<>();
+		Object2IntMap<String> fixedLocations = new Object2IntOpenHashMap<>();
+		fixedLocations.defaultReturnValue(-1);
 
 		// keep track of the current coordinate
 		Coord lastCoord = homeCoord;
@@ -305,45 +347,38 @@ public class CreateDailyPlans implements MATSimAppCommand, PersonAlgorithm {
 				String type = act.getType();
 
 				act.setLinkId(null);
-				ActivityFacility location = null;
+				int location = fixedLocations.getInt(type);
 
 				// target leg distance in meter
 				double dist = (double) act.getAttributes().getAttribute("orig_dist") * 1000;
 
-				if (fixedLocations.containsKey(type)) {
-					location = fixedLocations.get(type);
-				}
-
-				if (location == null) {
-					// Needed for lambda
-					final Coord refCoord = lastCoord;
+				if (location < 0) {
 
 					// Unknown activity will use any work location
-					STRtree index = facilities.index.containsKey(type) ? facilities.index.get(type) : facilities.index.get("work");
+					int t = facilities.type(type) >= 0 ? facilities.type(type) : facilities.type("work");
 
 					// Distance should be within the bounds
-					for (Double b : DoubleList.of(1, 1.2, 1.5)) {
-						List<AttributedActivityFacility> query = index.query(MGC.coord2Point(lastCoord).buffer(dist * (b + 0.5) + 250).getEnvelopeInternal());
-						List<AttributedActivityFacility> res = query.stream().filter(f -> checkDistanceBound(dist, refCoord, f.getCoord(), b)).toList();
+					for (double b : DoubleList.of(1, 1.2, 1.5)) {
+						IntList res = facilities.query(t, lastCoord, lowerDistanceBound(dist, b), upperDistanceBound(dist, b));
 
 						if (!res.isEmpty()) {
 							if (type.equals("work")) {
 
 								// Sample a location using the commuting as weight
 								location = FacilityIndex.sampleWithGrouping(res,
-									f -> Objects.requireNonNullElse(f.getLocation(), "na"),
+									f -> Objects.requireNonNullElse(facilities.city(f), "na"),
 									// Use a minimum weight of 1 so that all locations have a chance to be chosen
 									e -> Math.max(1, commuter.getDouble(Pair.of(homeZone, e.getKey()))),
 									rnd);
 							} else
-								location = res.get(rnd.nextInt(res.size()));
+								location = res.getInt(rnd.nextInt(res.size()));
 
 							break;
 						}
 					}
 				}
 
-				if (location == null) {
+				if (location < 0) {
 					// sample only coordinate if nothing else is possible
 					Coord c = sampleLink(rnd, dist, lastCoord);
 					act.setCoord(c);
@@ -354,13 +389,13 @@ public class CreateDailyPlans implements MATSimAppCommand, PersonAlgorithm {
 				if (type.equals("work") || type.startsWith("edu"))
 					fixedLocations.put(type, location);
 
-				act.setFacilityId(location.getId());
+				act.setFacilityId(facilities.id(location));
 			}
 
 			if (act.getCoord() != null)
 				lastCoord = act.getCoord();
 			else if (act.getFacilityId() != null)
-				lastCoord = facilities.all.getFacilities().get(act.getFacilityId()).getCoord();
+				lastCoord = facilities.coord(facilities.indexOf(act.getFacilityId()));
 
 		}
 
@@ -369,7 +404,8 @@ public class CreateDailyPlans implements MATSimAppCommand, PersonAlgorithm {
 	/**
 	 * Sample a coordinate for which the associated link is not one of the ignored types.
 	 */
-	private Coord sampleLink(SplittableRandom rnd, double dist, Coord origin) {
+	// Package-private for the JMH benchmarks
+	Coord sampleLink(SplittableRandom rnd, double dist, Coord origin) {
 
 		Coord coord = null;
 		for (int i = 0; i < 500; i++) {
@@ -383,14 +419,14 @@ public class CreateDailyPlans implements MATSimAppCommand, PersonAlgorithm {
 	}
 
 	/**
-	 * General logic to filter coordinate within target distance.
+	 * General logic to filter coordinates within target distance, the bounds are relaxed with increasing factor.
 	 */
-	private boolean checkDistanceBound(double target, Coord refCoord, Coord other, double factor) {
-		double lower = target * 0.8 * (2 - factor) - 250;
-		double upper = target * 1.15 * factor + 250;
+	private static double lowerDistanceBound(double target, double factor) {
+		return target * 0.8 * (2 - factor) - 250;
+	}
 
-		double dist = CoordUtils.calcEuclideanDistance(refCoord, other);
-		return dist >= lower && dist <= upper;
+	private static double upperDistanceBound(double target, double factor) {
+		return target * 1.15 * factor + 250;
 	}
 
 	/**
@@ -466,7 +502,8 @@ public class CreateDailyPlans implements MATSimAppCommand, PersonAlgorithm {
 	 *
 	 * @return daily activities
 	 */
-	private String matchPerson(SplittableRandom rnd, Key key) {
+	// Package-private for the JMH benchmarks
+	String matchPerson(SplittableRandom rnd, Key key) {
 		List<String> subgroup = groups.get(key);
 		if (subgroup == null) {
 			return null;
@@ -504,7 +541,8 @@ public class CreateDailyPlans implements MATSimAppCommand, PersonAlgorithm {
 		return IntStream.rangeClosed(min, max).mapToObj(i -> new Key(gender, i, homeZone));
 	}
 
-	private Key createKey(Person person, Zone zone) {
+	// Package-private for the JMH benchmarks
+	Key createKey(Person person, Zone zone) {
 
 		Integer age = PersonUtils.getAge(person);
 		String gender = PersonUtils.getSex(person);
@@ -520,7 +558,8 @@ public class CreateDailyPlans implements MATSimAppCommand, PersonAlgorithm {
 		return new Key(gender, age, homeZone);
 	}
 
-	private enum Zone {
+	// Package-private for the JMH benchmarks
+	enum Zone {
 		FULL, CITY, NONE
 	}
 
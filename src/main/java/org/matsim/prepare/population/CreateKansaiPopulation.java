@@ -26,6 +26,8 @@ import org.matsim.core.population.PersonUtils;
 import org.matsim.core.population.PopulationUtils;
 import org.matsim.core.scenario.ProjectionUtils;
 import org.matsim.core.utils.geometry.CoordinateTransformation;
+import org.matsim.prepare.ConcurrentInputs;
+import org.matsim.prepare.ParallelGzip;
 import org.matsim.run.OpenKyotoScenario;
 import picocli.CommandLine;
 
@@ -70,7 +72,8 @@ public class CreateKansaiPopulation implements MATSimAppCommand {
 
 	private Map<String, MultiPolygon> zones;
 	private SplittableRandom rnd;
-	private Population population;
+	// Package-private for the JMH benchmarks
+	Population population;
 	private ShpOptions.Index postalIndex;
 
 	/**
@@ -122,22 +125,7 @@ public class CreateKansaiPopulation implements MATSimAppCommand {
 			return 2;
 		}
 
-		List<SimpleFeature> fts = shp.readFeatures();
-
-		rnd = new SplittableRandom(0);
-		zones = new HashMap<>();
-		population = PopulationUtils.createPopulation(ConfigUtils.createConfig());
-		ct = shp.createInverseTransformation(OpenKyotoScenario.CRS);
-
-		// Collect all LORs
-		for (SimpleFeature ft : fts) {
-			zones.put((String) ft.getAttribute("KEY_CODE"), (MultiPolygon) ft.getDefaultGeometry());
-		}
-
-		log.info("Found {} zones", zones.size());
-
-		postalIndex = new ShpOptions(postalShp, null, null).createIndex(OpenKyotoScenario.CRS, "_");
-		income = readIncomeDistribution(incomePath);
+		prepare();
 
 		CSVFormat.Builder format = CSVFormat.DEFAULT.builder().setDelimiter(',').setHeader().setSkipHeaderRecord(true);
 
@@ -158,11 +146,43 @@ public class CreateKansaiPopulation implements MATSimAppCommand {
 		PopulationUtils.sortPersons(population);
 
 		ProjectionUtils.putCRS(population, OpenKyotoScenario.CRS);
-		PopulationUtils.writePopulation(population, output.toString());
+		ParallelGzip.writePopulation(population, output.toString());
 
 		return 0;
 	}
 
+	/**
+	 * Read zones, postal codes and income distributions.
+	 */
+	// Package-private for the JMH benchmarks
+	void prepare() throws IOException {
+
+		List<SimpleFeature> fts;
+		try (ConcurrentInputs inputs = new ConcurrentInputs()) {
+			ConcurrentInputs.Input<List<SimpleFeature>> features = inputs.submit("zones", shp::readFeatures);
+			ConcurrentInputs.Input<ShpOptions.Index> postal = inputs.submit("postal codes",
+				() -> new ShpOptions(postalShp, null, null).createIndex(OpenKyotoScenario.CRS, "_"));
+			ConcurrentInputs.Input<Int2ObjectMap<EnumeratedAttributeDistribution<Double>>> incomes = inputs.submit("income",
+				() -> readIncomeDistribution(incomePath));
+
+			fts = features.get();
+			postalIndex = postal.get();
+			income = incomes.get();
+		}
+
+		rnd = new SplittableRandom(0);
+		zones = new HashMap<>();
+		population = PopulationUtils.createPopulation(ConfigUtils.createConfig());
+		ct = shp.createInverseTransformation(OpenKyotoScenario.CRS);
+
+		// Collect all LORs
+		for (SimpleFeature ft : fts) {
+			zones.put((String) ft.getAttribute("KEY_CODE"), (MultiPolygon) ft.getDefaultGeometry());
+		}
+
+		log.info("Found {} zones", zones.size());
+	}
+
 	/**
 	 * Read income distribution from csv file.
 	 */
@@ -238,7 +258,8 @@ public class CreateKansaiPopulation implements MATSimAppCommand {
 		return new EnumeratedAttributeDistribution<>(p);
 	}
 
-	private void processZone(CSVRecord row) throws ParseException {
+	// Package-private for the JMH benchmarks
+	void processZone(CSVRecord row) throws ParseException {
 
 		String zone = row.get("citytown code").strip();
 
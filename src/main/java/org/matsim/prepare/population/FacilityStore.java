@@ -0,0 +1,651 @@
+package org.matsim.prepare.population;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.locationtech.jts.io.WKBWriter;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.utils.geometry.geotools.MGC;
+import org.matsim.facilities.ActivityFacilities;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.facilities.MatsimFacilitiesReader;
+import org.matsim.run.InputHash;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Read-only facilities for the population synthesis, stored as flat arrays in a memory-mapped file.
+ * Each facility has an id, coordinate, its activity types as bitset, as well as the zone and city it is located in.
+ * Additionally, the file contains a grid index for each activity type and the facilities of each zone.
+ * <p>
+ * Zones and the order of query results are the same as with the {@link STRtree} based facility index used before.
+ * The facilities of each zone are ordered by id, while the former index held them in hash sets without a defined order.
+ * Plans sampled from zones therefore differ once from the ones of the former index, but the same seed now always produces the same plans.
+ * <p>
+ * The file is created once from the MATSim facilities and the survey zones. It is never modified afterward,
+ * so that several commands and processes can map it at the same time without copying the data onto their heap.
+ * All accessors only use absolute reads and are thread-safe.
+ */
+public final class FacilityStore {
+
+	private static final Logger log = LogManager.getLogger(FacilityStore.class);
+
+	private static final int MAGIC = 0x4B594F46;
+	private static final int VERSION = 3;
+
+	/**
+	 * Cell size of the spatial index in meter.
+	 */
+	private static final double CELL_SIZE = 1000;
+
+	private static final IntBuffer EMPTY = IntBuffer.allocate(0);
+
+	private final String hash;
+	private final int n;
+	private final List<String> types;
+	private final Object2IntMap<String> typeIndex = new Object2IntOpenHashMap<>();
+	private final List<String> zones;
+	private final Object2IntMap<String> zoneIndex = new Object2IntOpenHashMap<>();
+
+	private final double minX;
+	private final double minY;
+	private final int cols;
+	private final int rows;
+
+	private final DoubleBuffer x;
+	private final DoubleBuffer y;
+	private final LongBuffer typeBits;
+	private final IntBuffer zone;
+	private final IntBuffer city;
+	private final IntBuffer[] cellStart;
+	private final IntBuffer[] cellMembers;
+	private final IntBuffer[] order;
+	private final IntBuffer zoneStart;
+	private final IntBuffer zoneMembers;
+	private final IntBuffer idOffsets;
+	private final ByteBuffer ids;
+
+	private FacilityStore(Header header, ByteBuffer data) {
+
+		this.hash = header.hash();
+		this.n = header.n();
+		this.types = header.types();
+		this.zones = header.zones();
+		this.minX = header.minX();
+		this.minY = header.minY();
+		this.cols = header.cols();
+		this.rows = header.rows();
+
+		typeIndex.defaultReturnValue(-1);
+		for (int i = 0; i < types.size(); i++) {
+			typeIndex.put(types.get(i), i);
+		}
+
+		zoneIndex.defaultReturnValue(-1);
+		for (int i = 0; i < zones.size(); i++) {
+			zoneIndex.put(zones.get(i), i);
+		}
+
+		Sections s = new Sections(data);
+
+		x = s.doubles(n);
+		y = s.doubles(n);
+		typeBits = s.longs(n);
+		zone = s.ints(n);
+		city = s.ints(n);
+
+		int cells = cols * rows;
+		cellStart = new IntBuffer[types.size()];
+		cellMembers = new IntBuffer[types.size()];
+		order = new IntBuffer[types.size()];
+		for (int t = 0; t < types.size(); t++) {
+			cellStart[t] = s.ints(cells + 1);
+			cellMembers[t] = s.ints(cellStart[t].get(cells));
+			order[t] = s.ints(cellStart[t].get(cells));
+		}
+
+		zoneStart = s.ints(zones.size() + 1);
+		zoneMembers = s.ints(zoneStart.get(zones.size()));
+
+		idOffsets = s.ints(n + 1);
+		ids = s.bytes(idOffsets.get(n));
+	}
+
+	/**
+	 * Map an existing store file.
+	 */
+	public static FacilityStore open(Path path) throws IOException {
+
+		Header header;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				throw new IOException(path + " is not a facility store of the current version.");
+
+			byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			header = Header.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+		}
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long offset = header.dataOffset();
+			// The mapping stays valid after the channel is closed
+			MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, offset, channel.size() - offset);
+			return new FacilityStore(header, data);
+		}
+	}
+
+	/**
+	 * Map the store at the given path, if it has been created from the same facilities and zones.
+	 * Otherwise, the facilities are read and the store is (re-)created first.
+	 *
+	 * @param facilityPath MATSim facilities, which must use the same CRS as the zones
+	 * @param zones        zones by name, city zones must not contain an underscore, postal zones are prefixed by their city and an underscore
+	 */
+	public static FacilityStore load(Path path, Path facilityPath, Map<String, Geometry> zones) throws IOException {
+
+		String hash = hash(facilityPath, zones);
+
+		if (Files.exists(path)) {
+			try {
+				FacilityStore store = open(path);
+				if (store.hash.equals(hash))
+					return store;
+
+				log.info("Facility store {} was created from different inputs and will be replaced.", path);
+			} catch (IOException e) {
+				log.warn("Could not open facility store {}, it will be replaced.", path, e);
+			}
+		}
+
+		log.info("Creating facility store {} from {}", path, facilityPath);
+
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		new MatsimFacilitiesReader(scenario).readFile(facilityPath.toString());
+
+		write(path, scenario.getActivityFacilities(), zones, hash);
+
+		return open(path);
+	}
+
+	/**
+	 * Write the store file. It is written to a temporary file first and then moved, so that other processes never see a partial file.
+	 */
+	static void write(Path path, ActivityFacilities facilities, Map<String, Geometry> zones, String hash) throws IOException {
+
+		// Facilities are sorted by id, which allows to search them by id
+		List<ActivityFacility> all = new ArrayList<>(facilities.getFacilities().values());
+		all.sort(Comparator.comparing(f -> f.getId().toString()));
+
+		int n = all.size();
+
+		List<String> types = all.stream().flatMap(f -> f.getActivityOptions().keySet().stream()).distinct().sorted().toList();
+		if (types.size() > Long.SIZE)
+			throw new IllegalArgumentException("At most %d activity types are supported, got %d".formatted(Long.SIZE, types.size()));
+
+		List<String> zoneNames = zones.keySet().stream().sorted().toList();
+		Object2IntMap<String> zoneIdx = new Object2IntOpenHashMap<>();
+		zoneIdx.defaultReturnValue(-1);
+		for (int i = 0; i < zoneNames.size(); i++) {
+			zoneIdx.put(zoneNames.get(i), i);
+		}
+
+		// A facility belongs to the first zone returned by the index over all zones, which is either its postal zone or its city.
+		// Its city, which is used for commuting, is the last matching city.
+		STRtree zoneTree = new STRtree();
+		STRtree cityTree = new STRtree();
+		for (Map.Entry<String, Geometry> e : zones.entrySet()) {
+			zoneTree.insert(e.getValue().getEnvelopeInternal(), e);
+			if (!e.getKey().contains("_"))
+				cityTree.insert(e.getValue().getEnvelopeInternal(), e);
+		}
+		zoneTree.build();
+		cityTree.build();
+
+		double[] xs = new double[n];
+		double[] ys = new double[n];
+		long[] bits = new long[n];
+		int[] zone = new int[n];
+		int[] city = new int[n];
+
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+
+		for (int i = 0; i < n; i++) {
+			ActivityFacility f = all.get(i);
+			Coord coord = f.getCoord();
+
+			xs[i] = coord.getX();
+			ys[i] = coord.getY();
+			minX = Math.min(minX, xs[i]);
+			minY = Math.min(minY, ys[i]);
+			maxX = Math.max(maxX, xs[i]);
+			maxY = Math.max(maxY, ys[i]);
+
+			for (String type : f.getActivityOptions().keySet()) {
+				bits[i] |= 1L << Collections.binarySearch(types, type);
+			}
+
+			zone[i] = -1;
+			city[i] = -1;
+
+			Point point = MGC.coord2Point(coord);
+			List<Map.Entry<String, Geometry>> matches = zoneTree.query(point.getEnvelopeInternal());
+			for (Map.Entry<String, Geometry> match : matches) {
+				if (match.getValue().contains(point)) {
+					zone[i] = zoneIdx.getInt(match.getKey());
+					break;
+				}
+			}
+
+			List<Map.Entry<String, Geometry>> cities = cityTree.query(point.getEnvelopeInternal());
+			for (Map.Entry<String, Geometry> match : cities) {
+				if (match.getValue().contains(point))
+					city[i] = zoneIdx.getInt(match.getKey());
+			}
+		}
+
+		if (n == 0) {
+			minX = 0;
+			minY = 0;
+			maxX = 0;
+			maxY = 0;
+		}
+
+		int cols = (int) ((maxX - minX) / CELL_SIZE) + 1;
+		int rows = (int) ((maxY - minY) / CELL_SIZE) + 1;
+
+		Header header = new Header(hash, n, types, zoneNames, minX, minY, cols, rows);
+
+		Path tmp = path.resolveSibling(path.getFileName() + "." + ProcessHandle.current().pid() + ".tmp");
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			header.write(new DataOutputStream(bytes));
+
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(bytes.size());
+			bytes.writeTo(out);
+
+			// Data is aligned to 8 bytes
+			while (out.size() < header.dataOffset())
+				out.writeByte(0);
+
+			for (double v : xs)
+				out.writeDouble(v);
+			for (double v : ys)
+				out.writeDouble(v);
+			for (long v : bits)
+				out.writeLong(v);
+			for (int v : zone)
+				out.writeInt(v);
+			for (int v : city)
+				out.writeInt(v);
+
+			int[] cell = new int[n];
+			for (int i = 0; i < n; i++) {
+				int c = (int) ((xs[i] - minX) / CELL_SIZE);
+				int r = (int) ((ys[i] - minY) / CELL_SIZE);
+				cell[i] = r * cols + c;
+			}
+
+			Envelope bounds = new Envelope(minX, maxX, minY, maxY);
+			for (int t = 0; t < types.size(); t++) {
+				long mask = 1L << t;
+				int[] rank = rank(xs, ys, bounds, i -> (bits[i] & mask) != 0);
+				writeGroups(out, cell, cols * rows, i -> (bits[i] & mask) != 0, i -> rank[i]);
+
+				int[] byRank = new int[rank.length];
+				Arrays.fill(byRank, -1);
+				for (int i = 0; i < n; i++) {
+					if (rank[i] >= 0)
+						byRank[rank[i]] = i;
+				}
+				for (int i : byRank) {
+					if (i >= 0)
+						out.writeInt(i);
+				}
+			}
+
+			// Facilities of each zone in the order of the store, i.e. by id
+			writeGroups(out, zone, zoneNames.size(), i -> zone[i] >= 0, i -> i);
+
+			byte[][] idBytes = new byte[n][];
+			int offset = 0;
+			for (int i = 0; i < n; i++) {
+				idBytes[i] = all.get(i).getId().toString().getBytes(StandardCharsets.UTF_8);
+				out.writeInt(offset);
+				offset += idBytes[i].length;
+			}
+			out.writeInt(offset);
+
+			for (byte[] id : idBytes)
+				out.write(id);
+		}
+
+		Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Position of each facility in the leaf order of an {@link STRtree} built like the former facility index, or -1 if it is not contained.
+	 * Query results of the tree are always in this order.
+	 */
+	private static int[] rank(double[] xs, double[] ys, Envelope bounds, IntPredicate filter) {
+
+		// Facilities were inserted ordered by id, which is the order of the store
+		STRtree tree = new STRtree();
+		for (int i = 0; i < xs.length; i++) {
+			if (filter.test(i))
+				tree.insert(new Envelope(new Coordinate(xs[i], ys[i])), i);
+		}
+		tree.build();
+
+		int[] rank = new int[xs.length];
+		Arrays.fill(rank, -1);
+
+		List<Integer> leaves = tree.query(bounds);
+		for (int k = 0; k < leaves.size(); k++) {
+			rank[leaves.get(k)] = k;
+		}
+
+		return rank;
+	}
+
+	/**
+	 * Write the values of the elements sorted by their group using counting sort, preceded by the start index of each group.
+	 */
+	private static void writeGroups(DataOutput out, int[] group, int groups, IntPredicate filter, IntUnaryOperator value) throws IOException {
+
+		int[] start = new int[groups + 1];
+		for (int i = 0; i < group.length; i++) {
+			if (filter.test(i))
+				start[group[i] + 1]++;
+		}
+
+		for (int g = 0; g < groups; g++) {
+			start[g + 1] += start[g];
+		}
+
+		int[] members = new int[start[groups]];
+		int[] pos = Arrays.copyOf(start, groups);
+		for (int i = 0; i < group.length; i++) {
+			if (filter.test(i))
+				members[pos[group[i]]++] = value.applyAsInt(i);
+		}
+
+		for (int v : start)
+			out.writeInt(v);
+		for (int v : members)
+			out.writeInt(v);
+	}
+
+	/**
+	 * Hash of the facility file and the zones.
+	 */
+	private static String hash(Path facilityPath, Map<String, Geometry> zones) throws IOException {
+
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+
+		digest.update(InputHash.of(facilityPath.toUri().toURL()).getBytes(StandardCharsets.UTF_8));
+
+		WKBWriter writer = new WKBWriter();
+		for (String key : new TreeSet<>(zones.keySet())) {
+			digest.update(key.getBytes(StandardCharsets.UTF_8));
+			digest.update(writer.write(zones.get(key)));
+		}
+
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	/**
+	 * Number of facilities.
+	 */
+	public int size() {
+		return n;
+	}
+
+	/**
+	 * Index of an activity type, or -1 if no facility has this type.
+	 */
+	public int type(String type) {
+		return typeIndex.getInt(type);
+	}
+
+	/**
+	 * Whether facility {@code i} has the activity type with index {@code type}.
+	 */
+	public boolean hasType(int i, int type) {
+		return (typeBits.get(i) & (1L << type)) != 0;
+	}
+
+	/**
+	 * Coordinate of facility {@code i}.
+	 */
+	public Coord coord(int i) {
+		return new Coord(x.get(i), y.get(i));
+	}
+
+	/**
+	 * Id of facility {@code i}.
+	 */
+	public Id<ActivityFacility> id(int i) {
+		return Id.create(idString(i), ActivityFacility.class);
+	}
+
+	private String idString(int i) {
+		int start = idOffsets.get(i);
+		byte[] bytes = new byte[idOffsets.get(i + 1) - start];
+		ids.get(start, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Index of the facility with the given id, or -1 if it is not contained.
+	 */
+	public int indexOf(Id<ActivityFacility> id) {
+
+		String key = id.toString();
+
+		int low = 0;
+		int high = n - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = idString(mid).compareTo(key);
+			if (cmp < 0)
+				low = mid + 1;
+			else if (cmp > 0)
+				high = mid - 1;
+			else
+				return mid;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * City zone of facility {@code i}, or null if it is outside all zones.
+	 */
+	public String city(int i) {
+		int c = city.get(i);
+		return c < 0 ? null : zones.get(c);
+	}
+
+	/**
+	 * Facilities assigned to a postal zone or city. Returns an empty buffer for unknown zones.
+	 */
+	public IntBuffer zone(String key) {
+		int z = zoneIndex.getInt(key);
+		if (z < 0)
+			return EMPTY;
+
+		int start = zoneStart.get(z);
+		return zoneMembers.slice(start, zoneStart.get(z + 1) - start);
+	}
+
+	/**
+	 * Facilities of an activity type whose distance to a coordinate is within the given bounds.
+	 * They are in the same order as in a query of the former {@link STRtree} index.
+	 *
+	 * @param type index of the activity type, see {@link #type(String)}. The result is empty for -1.
+	 */
+	public IntList query(int type, Coord coord, double minDist, double maxDist) {
+
+		IntArrayList result = new IntArrayList();
+		if (type < 0)
+			return result;
+
+		double cx = coord.getX();
+		double cy = coord.getY();
+
+		int c0 = Math.max(0, (int) Math.floor((cx - maxDist - minX) / CELL_SIZE));
+		int c1 = Math.min(cols - 1, (int) Math.floor((cx + maxDist - minX) / CELL_SIZE));
+		int r0 = Math.max(0, (int) Math.floor((cy - maxDist - minY) / CELL_SIZE));
+		int r1 = Math.min(rows - 1, (int) Math.floor((cy + maxDist - minY) / CELL_SIZE));
+
+		IntBuffer start = cellStart[type];
+		IntBuffer members = cellMembers[type];
+
+		for (int r = r0; r <= r1; r++) {
+			for (int c = c0; c <= c1; c++) {
+				int cell = r * cols + c;
+				for (int k = start.get(cell); k < start.get(cell + 1); k++) {
+					int rank = members.get(k);
+					int i = order[type].get(rank);
+					double dx = x.get(i) - cx;
+					double dy = y.get(i) - cy;
+					// Same computation as CoordUtils.calcEuclideanDistance, so that facilities at the bounds are treated equally
+					double dist = Math.sqrt(dx * dx + dy * dy);
+					if (dist >= minDist && dist <= maxDist)
+						result.add(rank);
+				}
+			}
+		}
+
+		IntArrays.quickSort(result.elements(), 0, result.size());
+		for (int k = 0; k < result.size(); k++) {
+			result.set(k, order[type].get(result.getInt(k)));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Fixed size information at the start of the file.
+	 */
+	private record Header(String hash, int n, List<String> types, List<String> zones, double minX, double minY, int cols, int rows) {
+
+		static Header read(DataInputStream in) throws IOException {
+			String hash = in.readUTF();
+			int n = in.readInt();
+			List<String> types = readStrings(in);
+			List<String> zones = readStrings(in);
+			return new Header(hash, n, types, zones, in.readDouble(), in.readDouble(), in.readInt(), in.readInt());
+		}
+
+		private static List<String> readStrings(DataInputStream in) throws IOException {
+			int size = in.readInt();
+			List<String> result = new ArrayList<>(size);
+			for (int i = 0; i < size; i++) {
+				result.add(in.readUTF());
+			}
+			return result;
+		}
+
+		void write(DataOutputStream out) throws IOException {
+			out.writeUTF(hash);
+			out.writeInt(n);
+			out.writeInt(types.size());
+			for (String type : types)
+				out.writeUTF(type);
+			out.writeInt(zones.size());
+			for (String zone : zones)
+				out.writeUTF(zone);
+			out.writeDouble(minX);
+			out.writeDouble(minY);
+			out.writeInt(cols);
+			out.writeInt(rows);
+		}
+
+		/**
+		 * Offset of the data sections, which is the header size rounded up to 8 bytes.
+		 */
+		long dataOffset() throws IOException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			write(new DataOutputStream(bytes));
+			long size = 3L * Integer.BYTES + bytes.size();
+			return (size + 7) & ~7L;
+		}
+	}
+
+	/**
+	 * Consecutive views of the mapped data.
+	 */
+	private static final class Sections {
+
+		private final ByteBuffer data;
+		private int pos;
+
+		Sections(ByteBuffer data) {
+			this.data = data;
+		}
+
+		private ByteBuffer next(int bytes) {
+			ByteBuffer slice = data.slice(pos, bytes);
+			pos += bytes;
+			return slice;
+		}
+
+		DoubleBuffer doubles(int size) {
+			return next(size * Double.BYTES).asDoubleBuffer();
+		}
+
+		LongBuffer longs(int size) {
+			return next(size * Long.BYTES).asLongBuffer();
+		}
+
+		IntBuffer ints(int size) {
+			return next(size * Integer.BYTES).asIntBuffer();
+		}
+
+		ByteBuffer bytes(int size) {
+			return next(size);
+		}
+	}
+}
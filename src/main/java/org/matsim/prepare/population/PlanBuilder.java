@@ -8,11 +8,10 @@ import org.matsim.api.core.v01.population.Activity;
 import org.matsim.api.core.v01.population.Plan;
 import org.matsim.core.router.TripStructureUtils;
 import org.matsim.core.utils.geometry.CoordUtils;
-import org.matsim.facilities.ActivityFacility;
 
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
 import java.util.SplittableRandom;
 import java.util.function.Function;
 
@@ -21,9 +20,16 @@ import java.util.function.Function;
  */
 public class PlanBuilder {
 
-	private final Function<CSVRecord, Set<ActivityFacility>> zoneSelector;
+	private final FacilityStore facilities;
+	private final Function<CSVRecord, String> zoneSelector;
 
-	public PlanBuilder(Function<CSVRecord, Set<ActivityFacility>> zoneSelector) {
+	/**
+	 * Locations are chosen from the facilities of the zone given by the selector.
+	 *
+	 * @param zoneSelector zone of an activity row, as used by {@link FacilityStore#zone(String)}
+	 */
+	public PlanBuilder(FacilityStore facilities, Function<CSVRecord, String> zoneSelector) {
+		this.facilities = facilities;
 		this.zoneSelector = zoneSelector;
 	}
 
@@ -41,7 +47,7 @@ public class PlanBuilder {
 		if (activities.size() != existing.size())
 			return false;
 
-		ActLocation home = new ActLocation(null, homeCoord);
+		ActLocation home = new ActLocation(-1, homeCoord);
 
 		List<List<ActLocation>> possibleLocations = new ArrayList<>();
 
@@ -62,15 +68,23 @@ public class PlanBuilder {
 				continue;
 			}
 
-			Set<ActivityFacility> facilities = zoneSelector.apply(ref);
-			List<ActivityFacility> subSet = facilities.stream().filter(f -> f.getActivityOptions().containsKey(type)).toList();
+			IntBuffer zone = facilities.zone(zoneSelector.apply(ref));
+			int t = facilities.type(type);
 
-			List<ActLocation> candidates;
-			if (subSet.isEmpty() || ignoreTypes) {
-				// If there is no location with the correct type, choose from all possible coordinates
-				candidates = facilities.stream().map(f -> new ActLocation(null, f.getCoord())).toList();
-			} else {
-				candidates = subSet.stream().map(f -> new ActLocation(f, f.getCoord())).toList();
+			List<ActLocation> candidates = new ArrayList<>();
+			if (!ignoreTypes && t >= 0) {
+				for (int k = 0; k < zone.limit(); k++) {
+					int f = zone.get(k);
+					if (facilities.hasType(f, t))
+						candidates.add(new ActLocation(f, facilities.coord(f)));
+				}
+			}
+
+			// If there is no location with the correct type, choose from all possible coordinates
+			if (candidates.isEmpty()) {
+				for (int k = 0; k < zone.limit(); k++) {
+					candidates.add(new ActLocation(-1, facilities.coord(zone.get(k))));
+				}
 			}
 
 			if (candidates.isEmpty()) {
@@ -91,8 +105,8 @@ public class PlanBuilder {
 			Activity activity = existing.get(i);
 
 			activity.setLinkId(null);
-			if (loc.facility() != null) {
-				activity.setFacilityId(loc.facility().getId());
+			if (loc.facility() >= 0) {
+				activity.setFacilityId(facilities.id(loc.facility()));
 			} else {
 				activity.setCoord(loc.coord());
 			}
@@ -105,7 +119,8 @@ public class PlanBuilder {
 	/**
 	 * Chooses from a list of possible locations such that difference to the references distances is minimized.
 	 */
-	private List<ActLocation> sampleLocation(List<List<ActLocation>> locations, DoubleList dists, SplittableRandom rnd) {
+	// Package-private for the JMH benchmarks
+	List<ActLocation> sampleLocation(List<List<ActLocation>> locations, DoubleList dists, SplittableRandom rnd) {
 
 		double err = Double.POSITIVE_INFINITY;
 		List<ActLocation> best = null;
@@ -139,7 +154,13 @@ public class PlanBuilder {
 		return best;
 	}
 
-	private record ActLocation(ActivityFacility facility, Coord coord) {
+	/**
+	 * Location of an activity.
+	 *
+	 * @param facility index in the {@link FacilityStore}, or -1 if only the coordinate is used
+	 */
+	// Package-private for the JMH benchmarks
+	record ActLocation(int facility, Coord coord) {
 	}
 
 }
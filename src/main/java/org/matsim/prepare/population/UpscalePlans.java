@@ -0,0 +1,241 @@
+package org.matsim.prepare.population;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.*;
+import org.matsim.application.MATSimAppCommand;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.network.algorithms.TransportModeNetworkFilter;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.router.TripRouter;
+import org.matsim.core.router.TripStructureUtils;
+import org.matsim.core.utils.collections.QuadTree;
+import org.matsim.prepare.ParallelGzip;
+import org.matsim.prepare.ParallelPopulationReader;
+import picocli.CommandLine;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+@CommandLine.Command(
+	name = "upscale-plans",
+	description = "Transfer relaxed plans of a small sample to the full population, using the nearest sampled person with the same daily plan as representative."
+)
+public class UpscalePlans implements MATSimAppCommand {
+
+	private static final Logger log = LogManager.getLogger(UpscalePlans.class);
+
+	@CommandLine.Option(names = "--sample", description = "Relaxed output plans of the small sample", required = true)
+	private String samplePath;
+
+	@CommandLine.Option(names = "--population", description = "Input plans of the full population, which must contain the sampled persons", required = true)
+	private String populationPath;
+
+	@CommandLine.Option(names = "--network", description = "Network of the scenario. If given, routes are transferred between trips that start and end on the same links, " +
+		"which are determined like MATSim does for activities without link. All other trips are routed at the start of the run.")
+	private String networkPath;
+
+	@CommandLine.Option(names = "--output", description = "Path to output population", required = true)
+	private String output;
+
+	public static void main(String[] args) {
+		new UpscalePlans().execute(args);
+	}
+
+	/**
+	 * Activity types and trip modes of a plan.
+	 */
+	private static String chain(Plan plan) {
+		List<String> elements = new ArrayList<>();
+		for (TripStructureUtils.Trip trip : TripStructureUtils.getTrips(plan)) {
+			elements.add(trip.getOriginActivity().getType());
+			elements.add(TripStructureUtils.identifyMainMode(trip.getTripElements()));
+		}
+
+		List<Activity> acts = TripStructureUtils.getActivities(plan, TripStructureUtils.StageActivityHandling.ExcludeStageActivities);
+		if (!acts.isEmpty())
+			elements.add(acts.get(acts.size() - 1).getType());
+
+		return String.join("-", elements);
+	}
+
+	private static Coord home(Plan plan) {
+		return plan.getPlanElements().isEmpty() || !(plan.getPlanElements().get(0) instanceof Activity act) ? null : act.getCoord();
+	}
+
+	/**
+	 * Link of an activity, or the nearest car link if it has none.
+	 */
+	private static Id<Link> linkId(Activity act, Network network) {
+		if (act.getLinkId() != null)
+			return act.getLinkId();
+
+		if (network == null || act.getCoord() == null)
+			return null;
+
+		return NetworkUtils.getNearestLinkExactly(network, act.getCoord()).getId();
+	}
+
+	@Override
+	public Integer call() throws Exception {
+
+		Population sample = ParallelPopulationReader.read(samplePath);
+		Population population = ParallelPopulationReader.read(populationPath);
+
+		Network network = null;
+		if (networkPath != null) {
+			network = NetworkUtils.createNetwork();
+			new TransportModeNetworkFilter(NetworkUtils.readNetwork(networkPath)).filter(network, Set.of(TransportMode.car));
+		}
+
+		Map<String, QuadTree<Person>> representatives = createIndex(sample);
+
+		int sampled = 0;
+		int upscaled = 0;
+		int unmatched = 0;
+		int routes = 0;
+		int trips = 0;
+
+		for (Person person : List.copyOf(population.getPersons().values())) {
+
+			Person relaxed = sample.getPersons().get(person.getId());
+			if (relaxed != null) {
+				population.removePerson(person.getId());
+				population.addPerson(relaxed);
+				sampled++;
+				continue;
+			}
+
+			Plan plan = person.getSelectedPlan();
+			Coord home = home(plan);
+			QuadTree<Person> index = representatives.get(chain(plan));
+
+			if (home == null || index == null) {
+				unmatched++;
+				continue;
+			}
+
+			Person representative = index.getClosest(home.getX(), home.getY());
+			routes += transfer(representative.getSelectedPlan(), plan, network);
+			trips += TripStructureUtils.getTrips(plan).size();
+			upscaled++;
+		}
+
+		Set<Id<Person>> missing = sample.getPersons().keySet().stream()
+			.filter(id -> !population.getPersons().containsKey(id))
+			.collect(Collectors.toSet());
+
+		if (!missing.isEmpty())
+			log.warn("{} persons of the sample are not part of the full population, e.g. {}", missing.size(), missing.iterator().next());
+
+		log.info("Kept {} relaxed persons, upscaled {} persons, {} persons without representative keep their initial plan", sampled, upscaled, unmatched);
+		log.info("Transferred routes of {} out of {} trips of upscaled persons, the others will be routed", routes, trips);
+
+		ParallelGzip.writePopulation(population, output);
+
+		return 0;
+	}
+
+	/**
+	 * Index sampled persons by daily plan and home location.
+	 */
+	private static Map<String, QuadTree<Person>> createIndex(Population sample) {
+
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+
+		for (Person person : sample.getPersons().values()) {
+			Coord home = home(person.getSelectedPlan());
+			if (home == null)
+				continue;
+
+			minX = Math.min(minX, home.getX());
+			minY = Math.min(minY, home.getY());
+			maxX = Math.max(maxX, home.getX());
+			maxY = Math.max(maxY, home.getY());
+		}
+
+		Map<String, QuadTree<Person>> index = new HashMap<>();
+		for (Person person : sample.getPersons().values()) {
+			Plan plan = person.getSelectedPlan();
+			Coord home = home(plan);
+			if (home == null)
+				continue;
+
+			double x0 = minX;
+			double y0 = minY;
+			double x1 = maxX;
+			double y1 = maxY;
+			index.computeIfAbsent(chain(plan), k -> new QuadTree<>(x0, y0, x1, y1)).put(home.getX(), home.getY(), person);
+		}
+
+		return index;
+	}
+
+	/**
+	 * Copy activity times and, for trips between the same links, the routes of the representative.
+	 * Both plans must have the same chain of activities and modes.
+	 *
+	 * @return number of trips whose route was transferred
+	 */
+	private static int transfer(Plan representative, Plan plan, Network network) {
+
+		List<Activity> from = TripStructureUtils.getActivities(representative, TripStructureUtils.StageActivityHandling.ExcludeStageActivities);
+		List<Activity> to = TripStructureUtils.getActivities(plan, TripStructureUtils.StageActivityHandling.ExcludeStageActivities);
+
+		for (int i = 0; i < to.size(); i++) {
+			Activity src = from.get(i);
+			Activity dst = to.get(i);
+
+			src.getEndTime().ifDefinedOrElse(dst::setEndTime, dst::setEndTimeUndefined);
+			src.getMaximumDuration().ifDefinedOrElse(dst::setMaximumDuration, dst::setMaximumDurationUndefined);
+		}
+
+		List<TripStructureUtils.Trip> fromTrips = TripStructureUtils.getTrips(representative);
+		List<TripStructureUtils.Trip> toTrips = TripStructureUtils.getTrips(plan);
+
+		int n = 0;
+		for (int i = 0; i < toTrips.size(); i++) {
+			TripStructureUtils.Trip src = fromTrips.get(i);
+			TripStructureUtils.Trip dst = toTrips.get(i);
+
+			// Relaxed plans have links assigned to all activities
+			Id<Link> fromLink = src.getOriginActivity().getLinkId();
+			Id<Link> toLink = src.getDestinationActivity().getLinkId();
+			if (fromLink == null || toLink == null)
+				continue;
+
+			if (!fromLink.equals(linkId(dst.getOriginActivity(), network)) || !toLink.equals(linkId(dst.getDestinationActivity(), network)))
+				continue;
+
+			// Links are set so that they are consistent with the route
+			dst.getOriginActivity().setLinkId(fromLink);
+			dst.getDestinationActivity().setLinkId(toLink);
+
+			List<PlanElement> trip = new ArrayList<>();
+			for (PlanElement el : src.getTripElements()) {
+				if (el instanceof Leg leg) {
+					Leg copy = PopulationUtils.createLeg(leg);
+					// The vehicle of the representative is not used, the one of the person is assigned at the start of the run
+					if (copy.getRoute() instanceof NetworkRoute route)
+						route.setVehicleId(null);
+					trip.add(copy);
+				} else if (el instanceof Activity act)
+					trip.add(PopulationUtils.createActivity(act));
+			}
+
+			TripRouter.insertTrip(plan, dst.getOriginActivity(), trip, dst.getDestinationActivity());
+			n++;
+		}
+
+		return n;
+	}
+}
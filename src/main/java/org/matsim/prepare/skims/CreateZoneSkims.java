@@ -0,0 +1,330 @@
+package org.matsim.prepare.skims;
+
+import ch.sbb.matsim.routing.pt.raptor.*;
+import me.tongfei.progressbar.ProgressBar;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Point;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.application.MATSimAppCommand;
+import org.matsim.application.options.ShpOptions;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.RoutingConfigGroup;
+import org.matsim.core.config.groups.TravelTimeCalculatorConfigGroup;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.network.algorithms.TransportModeNetworkFilter;
+import org.matsim.core.router.costcalculators.OnlyTimeDependentTravelDisutility;
+import org.matsim.core.router.speedy.LeastCostPathTree;
+import org.matsim.core.router.speedy.SpeedyGraph;
+import org.matsim.core.router.speedy.SpeedyGraphBuilder;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.trafficmonitoring.FreeSpeedTravelTime;
+import org.matsim.core.trafficmonitoring.TravelTimeCalculator;
+import org.matsim.core.utils.collections.QuadTree;
+import org.matsim.core.utils.geometry.CoordUtils;
+import org.matsim.core.utils.geometry.geotools.MGC;
+import org.matsim.core.utils.misc.OptionalTime;
+import org.matsim.core.utils.misc.Time;
+import org.matsim.prepare.ConcurrentInputs;
+import org.matsim.pt.transitSchedule.TransitScheduleReader;
+import org.matsim.pt.transitSchedule.api.TransitLine;
+import org.matsim.pt.transitSchedule.api.TransitRoute;
+import org.matsim.pt.transitSchedule.api.TransitRouteStop;
+import org.matsim.pt.transitSchedule.api.TransitSchedule;
+import org.matsim.pt.transitSchedule.api.TransitStopFacility;
+import picocli.CommandLine;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+@CommandLine.Command(
+	name = "zone-skims",
+	description = "Compute car and pt travel time matrices between postal zones, stored as memory-mapped file."
+)
+public class CreateZoneSkims implements MATSimAppCommand {
+
+	private static final Logger log = LogManager.getLogger(CreateZoneSkims.class);
+
+	@CommandLine.Option(names = "--network", description = "Path to network file", required = true)
+	private Path networkPath;
+
+	@CommandLine.Option(names = "--schedule", description = "Path to transit schedule, pt matrices are only computed if given")
+	private Path schedulePath;
+
+	@CommandLine.Option(names = "--events", description = "Events of a run, used for congested car travel times instead of free speed")
+	private Path eventsPath;
+
+	@CommandLine.Option(names = "--config", description = "Config with walk and transit router parameters, defaults are used if not given")
+	private Path configPath;
+
+	@CommandLine.Option(names = "--times", description = "Departure times", split = ",", defaultValue = "08:00:00")
+	private List<String> times;
+
+	@CommandLine.Option(names = "--threads", description = "Number of threads", defaultValue = "4")
+	private int threads;
+
+	@CommandLine.Option(names = "--output", description = "Path to output skim file", required = true)
+	private Path output;
+
+	@CommandLine.Mixin
+	private ShpOptions shp;
+
+	public static void main(String[] args) {
+		new CreateZoneSkims().execute(args);
+	}
+
+	/**
+	 * Name of the matrix of a quantity, e.g. {@code car_time}, for a departure time.
+	 */
+	public static String matrixName(String quantity, double time) {
+		int seconds = (int) time;
+		return "%s_%02d%02d".formatted(quantity, seconds / 3600, (seconds % 3600) / 60);
+	}
+
+	@Override
+	public Integer call() throws Exception {
+
+		if (!shp.isDefined()) {
+			log.error("Shape file with zones is required.");
+			return 2;
+		}
+
+		Config config = configPath != null ? ConfigUtils.loadConfig(configPath.toString()) : ConfigUtils.createConfig();
+		double[] departures = times.stream().mapToDouble(Time::parseTime).toArray();
+
+		Map<String, Coord> zones;
+		Network network;
+		TransitSchedule schedule = null;
+
+		try (ConcurrentInputs inputs = new ConcurrentInputs()) {
+			ConcurrentInputs.Input<Map<String, Coord>> zonesInput = inputs.submit("zones", this::readZones);
+			ConcurrentInputs.Input<Network> networkInput = inputs.submit("network", () -> NetworkUtils.readNetwork(networkPath.toString()));
+			ConcurrentInputs.Input<TransitSchedule> scheduleInput = schedulePath == null ? null : inputs.submit("schedule", () -> {
+				Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+				new TransitScheduleReader(scenario).readFile(schedulePath.toString());
+				return scenario.getTransitSchedule();
+			});
+
+			zones = zonesInput.get();
+			network = networkInput.get();
+			if (scheduleInput != null)
+				schedule = scheduleInput.get();
+		}
+
+		List<String> names = new ArrayList<>();
+		for (double t : departures) {
+			names.add(matrixName("car_time", t));
+			names.add(matrixName("car_distance", t));
+			if (schedule != null) {
+				names.add(matrixName("pt_time", t));
+				names.add(matrixName("pt_transfers", t));
+			}
+		}
+
+		List<String> keys = new ArrayList<>(zones.keySet());
+		Path tmp = output.resolveSibling(output.getFileName() + ".tmp");
+
+		ZoneSkims skims = ZoneSkims.create(tmp, keys, names);
+
+		computeCar(skims, network, keys.stream().map(zones::get).toList(), departures);
+
+		if (schedule != null)
+			computePt(skims, config, network, schedule, keys.stream().map(zones::get).toList(), departures);
+
+		skims.force();
+		Files.move(tmp, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		log.info("Written {} matrices for {} zones to {}", names.size(), keys.size(), output);
+
+		return 0;
+	}
+
+	/**
+	 * Read postal zones with the same keys as used by {@link org.matsim.prepare.population.CreateDailyPlans}, sorted by key.
+	 * Each zone is represented by a point within its geometry.
+	 */
+	private Map<String, Coord> readZones() {
+
+		Map<String, Coord> result = new TreeMap<>();
+		for (SimpleFeature feature : shp.readFeatures()) {
+			String city = (String) feature.getAttribute("jichi_code");
+			String zone = (String) feature.getAttribute("zip_pre") + feature.getAttribute("zip_mid");
+
+			Point point = ((Geometry) feature.getDefaultGeometry()).getInteriorPoint();
+			result.put(city + "_" + zone, MGC.point2Coord(point));
+		}
+
+		log.info("Read {} zones", result.size());
+		return result;
+	}
+
+	/**
+	 * Car travel times and distances of the least-cost (i.e. fastest) paths between the nearest nodes of the zones.
+	 */
+	private void computeCar(ZoneSkims skims, Network network, List<Coord> zones, double[] departures) throws Exception {
+
+		Network carNetwork = NetworkUtils.createNetwork();
+		new TransportModeNetworkFilter(network).filter(carNetwork, Set.of(TransportMode.car));
+		NetworkUtils.runNetworkCleaner(carNetwork);
+
+		TravelTime tt = new FreeSpeedTravelTime();
+		if (eventsPath != null) {
+			TravelTimeCalculator.Builder builder = new TravelTimeCalculator.Builder(carNetwork);
+			builder.configure(new TravelTimeCalculatorConfigGroup());
+			TravelTimeCalculator calculator = builder.build();
+
+			EventsManager events = EventsUtils.createEventsManager();
+			events.addHandler(calculator);
+			EventsUtils.readEvents(events, eventsPath.toString());
+
+			tt = calculator.getLinkTravelTimes();
+		}
+
+		SpeedyGraph graph = SpeedyGraphBuilder.build(carNetwork);
+		Node[] nodes = zones.stream().map(c -> NetworkUtils.getNearestNode(carNetwork, c)).toArray(Node[]::new);
+
+		ZoneSkims.Matrix[] time = Arrays.stream(departures).mapToObj(t -> skims.matrix(matrixName("car_time", t))).toArray(ZoneSkims.Matrix[]::new);
+		ZoneSkims.Matrix[] dist = Arrays.stream(departures).mapToObj(t -> skims.matrix(matrixName("car_distance", t))).toArray(ZoneSkims.Matrix[]::new);
+
+		TravelTime travelTime = tt;
+		parallel("Car skims", nodes.length, () -> {
+			// Trees are not thread-safe, each thread uses its own
+			LeastCostPathTree tree = new LeastCostPathTree(graph, travelTime, new OnlyTimeDependentTravelDisutility(travelTime));
+			return i -> {
+				for (int k = 0; k < departures.length; k++) {
+					tree.calculate(nodes[i], departures[k], null, null);
+					for (int j = 0; j < nodes.length; j++) {
+						int idx = nodes[j].getId().index();
+						OptionalTime arrival = tree.getTime(idx);
+						time[k].set(i, j, arrival.isDefined() ? (float) (arrival.seconds() - departures[k]) : Float.POSITIVE_INFINITY);
+						dist[k].set(i, j, arrival.isDefined() ? (float) tree.getDistance(idx) : Float.POSITIVE_INFINITY);
+					}
+				}
+			};
+		});
+	}
+
+	/**
+	 * Pt travel times and number of transfers between the stops nearest to the zones.
+	 * Times include walking to and from these stops and the waiting time at the first stop.
+	 */
+	private void computePt(ZoneSkims skims, Config config, Network network, TransitSchedule schedule, List<Coord> zones, double[] departures) throws Exception {
+
+		// Only stops that are served by any route
+		Set<TransitStopFacility> served = new LinkedHashSet<>();
+		for (TransitLine line : schedule.getTransitLines().values()) {
+			for (TransitRoute route : line.getRoutes().values()) {
+				for (TransitRouteStop stop : route.getStops()) {
+					served.add(stop.getStopFacility());
+				}
+			}
+		}
+
+		if (served.isEmpty())
+			throw new IllegalArgumentException("No stops are served by the transit schedule.");
+
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		for (TransitStopFacility stop : served) {
+			minX = Math.min(minX, stop.getCoord().getX());
+			minY = Math.min(minY, stop.getCoord().getY());
+			maxX = Math.max(maxX, stop.getCoord().getX());
+			maxY = Math.max(maxY, stop.getCoord().getY());
+		}
+
+		QuadTree<TransitStopFacility> index = new QuadTree<>(minX, minY, maxX, maxY);
+		served.forEach(s -> index.put(s.getCoord().getX(), s.getCoord().getY(), s));
+
+		RoutingConfigGroup.TeleportedModeParams walk = config.routing().getTeleportedModeParams().get(TransportMode.walk);
+
+		TransitStopFacility[] stops = new TransitStopFacility[zones.size()];
+		double[] access = new double[zones.size()];
+		for (int i = 0; i < zones.size(); i++) {
+			Coord c = zones.get(i);
+			stops[i] = index.getClosest(c.getX(), c.getY());
+			access[i] = CoordUtils.calcEuclideanDistance(c, stops[i].getCoord()) * walk.getBeelineDistanceFactor() / walk.getTeleportedModeSpeed();
+		}
+
+		SwissRailRaptorData data = SwissRailRaptorData.create(schedule, null, RaptorUtils.createStaticConfig(config), network, new OccupancyData());
+		RaptorParameters parameters = RaptorUtils.createParameters(config);
+
+		ZoneSkims.Matrix[] time = Arrays.stream(departures).mapToObj(t -> skims.matrix(matrixName("pt_time", t))).toArray(ZoneSkims.Matrix[]::new);
+		ZoneSkims.Matrix[] transfers = Arrays.stream(departures).mapToObj(t -> skims.matrix(matrixName("pt_transfers", t))).toArray(ZoneSkims.Matrix[]::new);
+
+		parallel("Pt skims", zones.size(), () -> {
+			SwissRailRaptor raptor = new SwissRailRaptor.Builder(data, config).build();
+			return i -> {
+				for (int k = 0; k < departures.length; k++) {
+					double start = departures[k] + access[i];
+					Map<Id<TransitStopFacility>, SwissRailRaptorCore.TravelInfo> tree = raptor.calcTree(stops[i], start, parameters, null);
+
+					for (int j = 0; j < stops.length; j++) {
+						if (stops[j] == stops[i]) {
+							time[k].set(i, j, (float) (access[i] + access[j]));
+							transfers[k].set(i, j, 0);
+							continue;
+						}
+
+						SwissRailRaptorCore.TravelInfo info = tree.get(stops[j].getId());
+						if (info == null) {
+							time[k].set(i, j, Float.POSITIVE_INFINITY);
+							transfers[k].set(i, j, Float.POSITIVE_INFINITY);
+						} else {
+							time[k].set(i, j, (float) (access[i] + info.waitingTime + info.ptTravelTime + access[j]));
+							transfers[k].set(i, j, info.transferCount);
+						}
+					}
+				}
+			};
+		});
+	}
+
+	/**
+	 * Process rows {@code 0..n-1} with the given number of threads. Each thread creates its own worker, which may keep non thread-safe state.
+	 */
+	private void parallel(String name, int n, Supplier<IntConsumer> worker) throws Exception {
+
+		AtomicInteger next = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+		try (ProgressBar pb = new ProgressBar(name, n)) {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				futures.add(executor.submit(() -> {
+					IntConsumer row = worker.get();
+					for (int i = next.getAndIncrement(); i < n; i = next.getAndIncrement()) {
+						row.accept(i);
+						pb.step();
+					}
+				}));
+			}
+
+			for (Future<?> f : futures) {
+				f.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,199 @@
+package org.matsim.prepare.skims;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.io.*;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Zone-to-zone matrices of float values, e.g. travel times, stored in a memory-mapped file.
+ * Zones are addressed by their index, which can be looked up once with {@link #index(String)}, so that each lookup of a value is a single read.
+ * <p>
+ * The file starts with a header containing the zone names and matrix names, followed by one row-major float matrix per name.
+ * Matrices are mapped separately, so each of them may have up to 2 GB. Opened files are read-only and can be shared across threads and processes.
+ */
+public final class ZoneSkims {
+
+	private static final int MAGIC = 0x4B594F5A;
+	private static final int VERSION = 1;
+
+	private final List<String> zones;
+	private final Object2IntMap<String> zoneIndex = new Object2IntOpenHashMap<>();
+	private final Map<String, Matrix> matrices = new LinkedHashMap<>();
+
+	private ZoneSkims(Path path, List<String> zones, List<String> names, boolean writable) throws IOException {
+
+		this.zones = Collections.unmodifiableList(zones);
+
+		zoneIndex.defaultReturnValue(-1);
+		for (int i = 0; i < zones.size(); i++) {
+			zoneIndex.put(zones.get(i), i);
+		}
+
+		long offset = dataOffset(zones, names);
+		long size = (long) zones.size() * zones.size() * Float.BYTES;
+
+		if (size > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Too many zones for one matrix: " + zones.size());
+
+		FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+		StandardOpenOption[] options = writable ?
+			new StandardOpenOption[]{StandardOpenOption.READ, StandardOpenOption.WRITE} : new StandardOpenOption[]{StandardOpenOption.READ};
+
+		// Mappings stay valid after the channel is closed
+		try (FileChannel channel = FileChannel.open(path, options)) {
+			for (String name : names) {
+				MappedByteBuffer buffer = channel.map(mode, offset, size);
+				matrices.put(name, new Matrix(buffer, zones.size()));
+				offset += size;
+			}
+		}
+	}
+
+	/**
+	 * Create a new file with all values set to zero. The matrices can be written concurrently, as long as different threads write different cells.
+	 */
+	public static ZoneSkims create(Path path, List<String> zones, List<String> matrices) throws IOException {
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+			writeHeader(out, zones, matrices);
+		}
+
+		long size = dataOffset(zones, matrices) + (long) matrices.size() * zones.size() * zones.size() * Float.BYTES;
+		try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+			file.setLength(size);
+		}
+
+		return new ZoneSkims(path, new ArrayList<>(zones), new ArrayList<>(matrices), true);
+	}
+
+	/**
+	 * Map an existing file read-only.
+	 */
+	public static ZoneSkims open(Path path) throws IOException {
+
+		List<String> zones = new ArrayList<>();
+		List<String> names = new ArrayList<>();
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				throw new IOException(path + " is not a skim file of the current version.");
+
+			int n = in.readInt();
+			for (int i = 0; i < n; i++) {
+				zones.add(in.readUTF());
+			}
+
+			int m = in.readInt();
+			for (int i = 0; i < m; i++) {
+				names.add(in.readUTF());
+			}
+		}
+
+		return new ZoneSkims(path, zones, names, false);
+	}
+
+	private static void writeHeader(DataOutputStream out, List<String> zones, List<String> matrices) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(zones.size());
+		for (String zone : zones)
+			out.writeUTF(zone);
+		out.writeInt(matrices.size());
+		for (String name : matrices)
+			out.writeUTF(name);
+	}
+
+	/**
+	 * Start of the matrices, which is the header size rounded up to 8 bytes.
+	 */
+	private static long dataOffset(List<String> zones, List<String> matrices) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		writeHeader(new DataOutputStream(bytes), zones, matrices);
+		return (bytes.size() + 7L) & ~7L;
+	}
+
+	/**
+	 * Zone names, the position in this list is the zone index.
+	 */
+	public List<String> getZones() {
+		return zones;
+	}
+
+	/**
+	 * Index of a zone, or -1 if it is not contained.
+	 */
+	public int index(String zone) {
+		return zoneIndex.getInt(zone);
+	}
+
+	/**
+	 * Names of all matrices.
+	 */
+	public List<String> getMatrices() {
+		return List.copyOf(matrices.keySet());
+	}
+
+	/**
+	 * Get a matrix by name.
+	 *
+	 * @throws IllegalArgumentException if there is no such matrix
+	 */
+	public Matrix matrix(String name) {
+		Matrix m = matrices.get(name);
+		if (m == null)
+			throw new IllegalArgumentException("No matrix %s, available are %s".formatted(name, matrices.keySet()));
+
+		return m;
+	}
+
+	/**
+	 * Write all changes of a created file to disk.
+	 */
+	public void force() {
+		for (Matrix m : matrices.values()) {
+			m.buffer.force();
+		}
+	}
+
+	/**
+	 * Values between all pairs of zones.
+	 */
+	public static final class Matrix {
+
+		private final MappedByteBuffer buffer;
+		private final FloatBuffer values;
+		private final int n;
+
+		private Matrix(MappedByteBuffer buffer, int n) {
+			this.buffer = buffer;
+			this.values = buffer.asFloatBuffer();
+			this.n = n;
+		}
+
+		/**
+		 * Value from one zone to another, given by their index.
+		 */
+		public float get(int from, int to) {
+			return values.get(from * n + to);
+		}
+
+		/**
+		 * Set a value, only possible for created files.
+		 */
+		public void set(int from, int to, float value) {
+			values.put(from * n + to, value);
+		}
+	}
+}
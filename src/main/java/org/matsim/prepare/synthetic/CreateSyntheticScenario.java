@@ -0,0 +1,508 @@
+package org.matsim.prepare.synthetic;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.locationtech.jts.geom.Coordinate;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.application.MATSimAppCommand;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.population.routes.RouteUtils;
+import org.matsim.core.scenario.ProjectionUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.utils.geometry.CoordUtils;
+import org.matsim.core.utils.geometry.geotools.MGC;
+import org.matsim.core.utils.gis.GeoFileWriter;
+import org.matsim.core.utils.gis.PolygonFeatureFactory;
+import org.matsim.facilities.ActivityFacilities;
+import org.matsim.facilities.ActivityFacilitiesFactory;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.facilities.FacilitiesWriter;
+import org.matsim.pt.transitSchedule.api.*;
+import org.matsim.run.OpenKyotoScenario;
+import org.matsim.vehicles.MatsimVehicleWriter;
+import org.matsim.vehicles.Vehicle;
+import org.matsim.vehicles.VehicleType;
+import org.matsim.vehicles.VehicleUtils;
+import org.matsim.vehicles.Vehicles;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Creates a self-consistent scenario on a regular grid, which can be used instead of the confidential inputs to test the
+ * preparation and the simulation at different scales. All values are drawn from simple distributions with a fixed seed.
+ */
+@CommandLine.Command(
+	name = "synthetic-scenario",
+	description = "Create a synthetic scenario with network, transit schedule, facilities, zones, census and survey tables."
+)
+public final class CreateSyntheticScenario implements MATSimAppCommand {
+
+	public static final String ZONES = "zones.shp";
+	public static final String NETWORK = "network.xml.gz";
+	public static final String NETWORK_WITH_PT = "network-with-pt.xml.gz";
+	public static final String SCHEDULE = "transitSchedule.xml.gz";
+	public static final String TRANSIT_VEHICLES = "transitVehicles.xml.gz";
+	public static final String FACILITIES = "facilities.xml.gz";
+	public static final String SURVEY_PERSONS = "table-persons.csv";
+	public static final String SURVEY_ACTIVITIES = "table-activities.csv";
+	public static final String COMMUTER = "work-commuter.csv";
+	public static final String CENSUS = "census.csv";
+	public static final String INCOME = "income.csv";
+
+	private static final Logger log = LogManager.getLogger(CreateSyntheticScenario.class);
+
+	private static final double ZONE_SIZE = 2000;
+	private static final double LINK_LENGTH = 250;
+
+	/**
+	 * Every n-th road is a primary road, which is also served by a bus line.
+	 */
+	private static final int PRIMARY = 8;
+	private static final int MOTORWAY = 40;
+	private static final int CITIES = 11;
+
+	private static final double X0 = 560_000;
+	private static final double Y0 = 3_860_000;
+
+	private static final List<String> TYPES = List.of("work", "work_business", "edu", "shopping", "leisure", "personal_business", "other");
+	private static final List<String> MODES = List.of(TransportMode.walk, TransportMode.bike, TransportMode.pt, TransportMode.car, TransportMode.ride);
+
+	private static final String[] AGE_GROUPS = {"0~4", "5~9", "10~14", "15~19", "20~24", "25~29", "30~34", "35~39", "40~44",
+		"45~49", "50~54", "55~59", "60~64", "65~69", "70~74", "75~79", "80~84", "85~89", "90~94", "95~99", "100~"};
+
+	@CommandLine.Option(names = "--output", description = "Output directory", required = true)
+	private Path output;
+
+	@CommandLine.Option(names = "--grid", description = "Number of 2x2 km postal zones in each direction", defaultValue = "20")
+	private int grid;
+
+	@CommandLine.Option(names = "--facilities", description = "Number of facilities", defaultValue = "100000")
+	private int facilities;
+
+	@CommandLine.Option(names = "--survey", description = "Number of persons in the survey tables", defaultValue = "30000")
+	private int survey;
+
+	@CommandLine.Option(names = "--inhabitants", description = "Average number of inhabitants of a zone in the census", defaultValue = "3500")
+	private int inhabitants;
+
+	@CommandLine.Option(names = "--seed", description = "Random seed", defaultValue = "1")
+	private long seed;
+
+	private SplittableRandom rnd;
+
+	public static void main(String[] args) {
+		new CreateSyntheticScenario().execute(args);
+	}
+
+	/**
+	 * City code of a zone, the zones are grouped into cities row by row.
+	 */
+	public static int cityCode(int grid, int col, int row) {
+		return 26101 + (row * grid + col) * CITIES / (grid * grid);
+	}
+
+	/**
+	 * Postal code of a zone, the concatenation of {@code zip_pre} and {@code zip_mid}.
+	 */
+	public static String postalCode(int col, int row) {
+		return String.format("%03d%02d", 600 + row, col);
+	}
+
+	/**
+	 * Random coordinate within a zone.
+	 */
+	public static Coord randomCoord(SplittableRandom rnd, int col, int row) {
+		return new Coord(X0 + (col + rnd.nextDouble()) * ZONE_SIZE, Y0 + (row + rnd.nextDouble()) * ZONE_SIZE);
+	}
+
+	@Override
+	public Integer call() throws Exception {
+
+		rnd = new SplittableRandom(seed);
+		Files.createDirectories(output);
+
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+
+		writeZones();
+		createNetwork(scenario.getNetwork());
+
+		// The preparation uses the network without pt, like the real scenario
+		ProjectionUtils.putCRS(scenario.getNetwork(), OpenKyotoScenario.CRS);
+		NetworkUtils.writeNetwork(scenario.getNetwork(), output.resolve(NETWORK).toString());
+
+		createTransit(scenario);
+
+		NetworkUtils.writeNetwork(scenario.getNetwork(), output.resolve(NETWORK_WITH_PT).toString());
+		new TransitScheduleWriter(scenario.getTransitSchedule()).writeFile(output.resolve(SCHEDULE).toString());
+		new MatsimVehicleWriter(scenario.getTransitVehicles()).writeFile(output.resolve(TRANSIT_VEHICLES).toString());
+
+		writeFacilities(scenario);
+		writeSurvey();
+		writeCommuter();
+		writeCensus();
+		writeIncome();
+
+		log.info("Created scenario with {} zones, {} links, {} transit lines and {} facilities in {}", grid * grid,
+			scenario.getNetwork().getLinks().size(), scenario.getTransitSchedule().getTransitLines().size(), facilities, output);
+
+		return 0;
+	}
+
+	/**
+	 * One shape file is used for census zones and postal codes, it contains the attributes of both.
+	 */
+	private void writeZones() {
+
+		PolygonFeatureFactory factory = new PolygonFeatureFactory.Builder()
+			.setCrs(MGC.getCRS(OpenKyotoScenario.CRS))
+			.setName("zone")
+			.addAttribute("KEY_CODE", String.class)
+			.addAttribute("jichi_code", String.class)
+			.addAttribute("zip_pre", String.class)
+			.addAttribute("zip_mid", String.class)
+			.create();
+
+		List<SimpleFeature> features = new ArrayList<>();
+		for (int row = 0; row < grid; row++) {
+			for (int col = 0; col < grid; col++) {
+				double x = X0 + col * ZONE_SIZE;
+				double y = Y0 + row * ZONE_SIZE;
+
+				Coordinate[] ring = {
+					new Coordinate(x, y), new Coordinate(x + ZONE_SIZE, y), new Coordinate(x + ZONE_SIZE, y + ZONE_SIZE),
+					new Coordinate(x, y + ZONE_SIZE), new Coordinate(x, y)
+				};
+
+				int city = cityCode(grid, col, row);
+				String postal = postalCode(col, row);
+				Object[] attr = {city + postal, String.valueOf(city), postal.substring(0, 3), postal.substring(3)};
+				features.add(factory.createPolygon(ring, attr, postal));
+			}
+		}
+
+		GeoFileWriter.writeGeometries(features, output.resolve(ZONES).toString());
+	}
+
+	/**
+	 * Grid network with residential roads, primary roads and motorways, which are not used as activity locations.
+	 */
+	private void createNetwork(Network network) {
+
+		int n = nodesPerSide();
+
+		Node[][] nodes = new Node[n][n];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				nodes[i][j] = NetworkUtils.createAndAddNode(network, Id.createNodeId(i + "_" + j), new Coord(X0 + i * LINK_LENGTH, Y0 + j * LINK_LENGTH));
+			}
+		}
+
+		Set<String> modes = Set.of(TransportMode.car, TransportMode.ride, TransportMode.truck, "freight");
+
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				if (i + 1 < n) {
+					addRoad(network, nodes[i][j], nodes[i + 1][j], roadType(j), modes);
+				}
+				if (j + 1 < n) {
+					addRoad(network, nodes[i][j], nodes[i][j + 1], roadType(i), modes);
+				}
+			}
+		}
+	}
+
+	private int nodesPerSide() {
+		return (int) (grid * ZONE_SIZE / LINK_LENGTH) + 1;
+	}
+
+	private static String roadType(int index) {
+		if (index % MOTORWAY == 0)
+			return "motorway";
+
+		return index % PRIMARY == 0 ? "primary" : "residential";
+	}
+
+	private static void addRoad(Network network, Node a, Node b, String type, Set<String> modes) {
+
+		double speed = switch (type) {
+			case "motorway" -> 80 / 3.6;
+			case "primary" -> 50 / 3.6;
+			default -> 30 / 3.6;
+		};
+
+		double capacity = type.equals("residential") ? 600 : 1800;
+		int lanes = type.equals("residential") ? 1 : 2;
+
+		for (Node[] dir : new Node[][]{{a, b}, {b, a}}) {
+			Link link = NetworkUtils.createAndAddLink(network, Id.createLinkId(dir[0].getId() + "-" + dir[1].getId()), dir[0], dir[1],
+				LINK_LENGTH, speed, capacity * lanes, lanes);
+			NetworkUtils.setType(link, type);
+			link.setAllowedModes(modes);
+		}
+	}
+
+	/**
+	 * Bus lines in both directions along the primary roads, running on their own pt links as created by a pseudo network.
+	 */
+	private void createTransit(Scenario scenario) {
+
+		TransitSchedule schedule = scenario.getTransitSchedule();
+		TransitScheduleFactory f = schedule.getFactory();
+		Vehicles vehicles = scenario.getTransitVehicles();
+
+		VehicleType bus = VehicleUtils.createVehicleType(Id.create("bus", VehicleType.class));
+		bus.getCapacity().setSeats(40);
+		bus.getCapacity().setStandingRoom(60);
+		bus.setLength(12);
+		bus.setPcuEquivalents(2.5);
+		bus.setMaximumVelocity(50 / 3.6);
+		vehicles.addVehicleType(bus);
+
+		int n = nodesPerSide();
+		for (int k = 0; k < n; k += PRIMARY) {
+
+			// Stops every second road node
+			List<Coord> horizontal = new ArrayList<>();
+			List<Coord> vertical = new ArrayList<>();
+			for (int i = 0; i < n; i += 2) {
+				horizontal.add(new Coord(X0 + i * LINK_LENGTH, Y0 + k * LINK_LENGTH));
+				vertical.add(new Coord(X0 + k * LINK_LENGTH, Y0 + i * LINK_LENGTH));
+			}
+
+			TransitLine h = f.createTransitLine(Id.create("bus_h" + k, TransitLine.class));
+			TransitLine v = f.createTransitLine(Id.create("bus_v" + k, TransitLine.class));
+
+			addRoute(scenario, h, "east", horizontal, bus);
+			addRoute(scenario, h, "west", horizontal.reversed(), bus);
+			addRoute(scenario, v, "north", vertical, bus);
+			addRoute(scenario, v, "south", vertical.reversed(), bus);
+
+			schedule.addTransitLine(h);
+			schedule.addTransitLine(v);
+		}
+	}
+
+	private static void addRoute(Scenario scenario, TransitLine line, String direction, List<Coord> coords, VehicleType type) {
+
+		Network network = scenario.getNetwork();
+		TransitSchedule schedule = scenario.getTransitSchedule();
+		TransitScheduleFactory f = schedule.getFactory();
+
+		String prefix = line.getId() + "_" + direction;
+		double speed = 20 / 3.6;
+
+		List<Id<Link>> links = new ArrayList<>();
+		List<TransitRouteStop> stops = new ArrayList<>();
+
+		Node last = null;
+		double time = 0;
+
+		for (int i = 0; i < coords.size(); i++) {
+
+			Node node = NetworkUtils.createAndAddNode(network, Id.createNodeId("pt_" + prefix + "_" + i), coords.get(i));
+
+			// The first stop is served by a loop link
+			Node from = last == null ? node : last;
+			double length = last == null ? 1 : CoordUtils.calcEuclideanDistance(last.getCoord(), node.getCoord());
+
+			Link link = NetworkUtils.createAndAddLink(network, Id.createLinkId("pt_" + prefix + "_" + i), from, node, length, speed, 10_000, 1);
+			link.setAllowedModes(Set.of(TransportMode.pt));
+			links.add(link.getId());
+
+			time += length / speed;
+
+			TransitStopFacility stop = f.createTransitStopFacility(Id.create(prefix + "_" + i, TransitStopFacility.class), node.getCoord(), false);
+			stop.setLinkId(link.getId());
+			schedule.addStopFacility(stop);
+
+			stops.add(f.createTransitRouteStop(stop, time, time + 20));
+			time += 20;
+			last = node;
+		}
+
+		TransitRoute route = f.createTransitRoute(Id.create(prefix, TransitRoute.class), RouteUtils.createNetworkRoute(links), stops, "bus");
+
+		// Every 10 minutes from 5:00 to 24:00
+		int i = 0;
+		for (double t = 5 * 3600; t < 24 * 3600; t += 600) {
+			Departure departure = f.createDeparture(Id.create(prefix + "_" + i++, Departure.class), t);
+
+			Vehicle vehicle = VehicleUtils.createVehicle(Id.createVehicleId("bus_" + departure.getId()), type);
+			scenario.getTransitVehicles().addVehicle(vehicle);
+			departure.setVehicleId(vehicle.getId());
+
+			route.addDeparture(departure);
+		}
+
+		line.addRoute(route);
+	}
+
+	/**
+	 * Facilities with one or two activity types, attached to the nearest road that is not a motorway.
+	 */
+	private void writeFacilities(Scenario scenario) {
+
+		Network roads = NetworkUtils.createNetwork();
+		scenario.getNetwork().getNodes().values().stream()
+			.filter(node -> !node.getId().toString().startsWith("pt_"))
+			.forEach(node -> roads.addNode(roads.getFactory().createNode(node.getId(), node.getCoord())));
+
+		for (Link link : scenario.getNetwork().getLinks().values()) {
+			if (link.getAllowedModes().contains(TransportMode.car) && !"motorway".equals(NetworkUtils.getType(link)))
+				roads.addLink(roads.getFactory().createLink(link.getId(), roads.getNodes().get(link.getFromNode().getId()), roads.getNodes().get(link.getToNode().getId())));
+		}
+
+		ActivityFacilities all = scenario.getActivityFacilities();
+		ActivityFacilitiesFactory f = all.getFactory();
+
+		for (int i = 0; i < facilities; i++) {
+
+			Coord coord = randomCoord(rnd, rnd.nextInt(grid), rnd.nextInt(grid));
+			ActivityFacility facility = f.createActivityFacility(Id.create("f" + i, ActivityFacility.class), coord,
+				NetworkUtils.getNearestLink(roads, coord).getId());
+
+			if (rnd.nextDouble() < 0.4)
+				facility.addActivityOption(f.createActivityOption("home"));
+			else {
+				String first = TYPES.get(rnd.nextInt(TYPES.size()));
+				String second = TYPES.get(rnd.nextInt(TYPES.size()));
+
+				facility.addActivityOption(f.createActivityOption(first));
+				if (!second.equals(first))
+					facility.addActivityOption(f.createActivityOption(second));
+			}
+
+			all.addActivityFacility(facility);
+		}
+
+		new FacilitiesWriter(all).write(output.resolve(FACILITIES).toString());
+	}
+
+	/**
+	 * Survey persons with daily activity chains, starting and ending at home. Activities lie within a few zones of the home zone.
+	 */
+	private void writeSurvey() throws IOException {
+
+		try (CSVPrinter p = new CSVPrinter(Files.newBufferedWriter(output.resolve(SURVEY_PERSONS)), CSVFormat.DEFAULT);
+			 CSVPrinter a = new CSVPrinter(Files.newBufferedWriter(output.resolve(SURVEY_ACTIVITIES)), CSVFormat.DEFAULT)) {
+
+			p.printRecord("p_id", "gender", "age", "location", "zone", "mobile_on_day");
+			a.printRecord("p_id", "n", "type", "start_time", "duration", "leg_dist", "leg_duration", "leg_mode", "location", "zone");
+
+			for (int i = 0; i < survey; i++) {
+
+				String id = String.valueOf(i);
+				int homeCol = rnd.nextInt(grid);
+				int homeRow = rnd.nextInt(grid);
+
+				// Some survey persons only report their city
+				String zone = rnd.nextDouble() < 0.1 ? "" : postalCode(homeCol, homeRow) + "00";
+				p.printRecord(id, rnd.nextBoolean() ? "m" : "f", rnd.nextInt(0, 95), cityCode(grid, homeCol, homeRow), zone, true);
+
+				Coord home = randomCoord(rnd, homeCol, homeRow);
+				Coord last = home;
+				int time = rnd.nextInt(360, 540);
+				int acts = rnd.nextInt(2, 7);
+
+				for (int k = 0; k < acts; k++) {
+
+					boolean isHome = k == 0 || k == acts - 1;
+					int col = isHome ? homeCol : Math.clamp(homeCol + rnd.nextInt(-3, 4), 0, grid - 1);
+					int row = isHome ? homeRow : Math.clamp(homeRow + rnd.nextInt(-3, 4), 0, grid - 1);
+					Coord coord = isHome ? home : randomCoord(rnd, col, row);
+
+					double dist = k == 0 ? 0 : CoordUtils.calcEuclideanDistance(last, coord) / 1000;
+					int legDuration = k == 0 ? 0 : (int) Math.max(1, dist * 4);
+					int duration = isHome && k > 0 ? 600 : rnd.nextInt(30, 480);
+
+					time += legDuration;
+					a.printRecord(id, k, isHome ? "home" : TYPES.get(rnd.nextInt(TYPES.size())), time, duration, dist, legDuration,
+						k == 0 ? "" : MODES.get(rnd.nextInt(MODES.size())), cityCode(grid, col, row), postalCode(col, row) + "00");
+
+					time += duration;
+					last = coord;
+				}
+			}
+		}
+	}
+
+	private void writeCommuter() throws IOException {
+		try (CSVPrinter csv = new CSVPrinter(Files.newBufferedWriter(output.resolve(COMMUTER)), CSVFormat.DEFAULT)) {
+			csv.printRecord("home", "work", "n");
+			for (int i = 0; i < CITIES; i++) {
+				for (int j = 0; j < CITIES; j++) {
+					csv.printRecord(26101 + i, 26101 + j, rnd.nextInt(1, 1000));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Census table with inhabitants per age group for each zone.
+	 */
+	private void writeCensus() throws IOException {
+		try (CSVPrinter csv = new CSVPrinter(Files.newBufferedWriter(output.resolve(CENSUS)), CSVFormat.DEFAULT)) {
+
+			List<String> header = new ArrayList<>(List.of("citytown code", "city code", "total_gender", "foreigners", "female", "male", "total_age"));
+			header.addAll(List.of(AGE_GROUPS));
+			csv.printRecord(header);
+
+			int perGroup = Math.max(2, inhabitants / AGE_GROUPS.length);
+
+			for (int row = 0; row < grid; row++) {
+				for (int col = 0; col < grid; col++) {
+
+					int[] ages = new int[AGE_GROUPS.length];
+					int total = 0;
+					for (int i = 0; i < ages.length; i++) {
+						ages[i] = rnd.nextInt(perGroup / 2, perGroup * 3 / 2 + 1);
+						total += ages[i];
+					}
+
+					int female = total / 2 + rnd.nextInt(-total / 20, total / 20 + 1);
+
+					List<Object> values = new ArrayList<>(List.of(cityCode(grid, col, row) + postalCode(col, row), cityCode(grid, col, row),
+						total, rnd.nextInt(0, total / 50 + 1), female, total - female, total));
+					for (int age : ages) {
+						values.add(age);
+					}
+
+					csv.printRecord(values);
+				}
+			}
+		}
+	}
+
+	private void writeIncome() throws IOException {
+		try (CSVPrinter csv = new CSVPrinter(Files.newBufferedWriter(output.resolve(INCOME)), CSVFormat.DEFAULT)) {
+
+			List<String> header = new ArrayList<>(List.of("city town code", "city town name"));
+			for (int i = 0; i < 10; i++) {
+				header.add("group_" + i);
+			}
+			csv.printRecord(header);
+
+			for (int i = 0; i < CITIES; i++) {
+				List<Object> values = new ArrayList<>(List.of(26101 + i, "city " + i));
+				for (int k = 0; k < 10; k++) {
+					values.add(rnd.nextInt(100, 10_000));
+				}
+				csv.printRecord(values);
+			}
+		}
+	}
+}
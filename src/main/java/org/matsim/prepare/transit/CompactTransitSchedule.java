@@ -0,0 +1,196 @@
+package org.matsim.prepare.transit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.application.MATSimAppCommand;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.QSimConfigGroup;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.utils.misc.Time;
+import org.matsim.prepare.ParallelGzip;
+import org.matsim.pt.transitSchedule.api.*;
+import org.matsim.utils.objectattributes.attributable.AttributesUtils;
+import picocli.CommandLine;
+
+import java.nio.file.Path;
+import java.util.*;
+
+@CommandLine.Command(
+	name = "compact-transit-schedule",
+	description = "Fold identical transit routes of a line and remove departures outside the simulation time window."
+)
+public class CompactTransitSchedule implements MATSimAppCommand {
+
+	private static final Logger log = LogManager.getLogger(CompactTransitSchedule.class);
+
+	@CommandLine.Option(names = "--schedule", description = "Input transit schedule file", required = true)
+	private String scheduleFile;
+
+	@CommandLine.Option(names = "--output", description = "Output transit schedule file", required = true)
+	private String outputScheduleFile;
+
+	@CommandLine.Option(names = "--config", description = "Scenario config, departures outside of qsim.startTime and qsim.endTime are removed")
+	private Path configPath;
+
+	@CommandLine.Option(names = "--start-time", description = "Start of the simulation, departures before are removed. Only used without --config.", defaultValue = "00:00:00")
+	private String startTime;
+
+	@CommandLine.Option(names = "--end-time", description = "End of the simulation, departures after are removed. Only used without --config.", defaultValue = "36:00:00")
+	private String endTime;
+
+	public static void main(String[] args) {
+		new CompactTransitSchedule().execute(args);
+	}
+
+	/**
+	 * Merge routes of a line that serve the same stops with the same offsets. Departures of duplicates are moved to the first route.
+	 * Attributes of duplicates are added to the first route, if it does not have an attribute with the same name.
+	 *
+	 * @return number of removed routes
+	 */
+	static int foldIdenticalRoutes(TransitScheduleFactory f, TransitLine line) {
+
+		Map<RouteKey, TransitRoute> unique = new LinkedHashMap<>();
+		List<TransitRoute> toRemove = new ArrayList<>();
+
+		// Iterate in id order, so that the result does not depend on the order in the file
+		List<TransitRoute> routes = line.getRoutes().values().stream()
+			.sorted(Comparator.comparing(TransitRoute::getId))
+			.toList();
+
+		for (TransitRoute route : routes) {
+
+			TransitRoute target = unique.putIfAbsent(RouteKey.of(route), route);
+			if (target == null)
+				continue;
+
+			for (Departure dep : route.getDepartures().values()) {
+
+				Id<Departure> id = dep.getId();
+				// Departure ids are only unique within a route
+				if (target.getDepartures().containsKey(id))
+					id = Id.create(route.getId() + "_" + id, Departure.class);
+
+				Departure copy = f.createDeparture(id, dep.getDepartureTime());
+				copy.setVehicleId(dep.getVehicleId());
+				AttributesUtils.copyAttributesFromTo(dep, copy);
+				target.addDeparture(copy);
+			}
+
+			for (Map.Entry<String, Object> e : route.getAttributes().getAsMap().entrySet()) {
+				if (target.getAttributes().getAttribute(e.getKey()) == null)
+					target.getAttributes().putAttribute(e.getKey(), e.getValue());
+			}
+
+			toRemove.add(route);
+		}
+
+		toRemove.forEach(line::removeRoute);
+		return toRemove.size();
+	}
+
+	/**
+	 * Remove departures which can not be served within the simulation.
+	 *
+	 * @return number of removed departures
+	 */
+	static int removeDeparturesOutside(TransitLine line, double start, double end) {
+
+		int n = 0;
+		for (TransitRoute route : line.getRoutes().values()) {
+
+			List<Departure> toRemove = route.getDepartures().values().stream()
+				.filter(d -> d.getDepartureTime() < start || d.getDepartureTime() > end)
+				.toList();
+
+			toRemove.forEach(route::removeDeparture);
+			n += toRemove.size();
+		}
+
+		return n;
+	}
+
+	@Override
+	public Integer call() throws Exception {
+
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		new TransitScheduleReader(scenario).readFile(scheduleFile);
+
+		TransitSchedule schedule = scenario.getTransitSchedule();
+
+		double start = Time.parseTime(startTime);
+		double end = Time.parseTime(endTime);
+
+		if (configPath != null) {
+			QSimConfigGroup qsim = ConfigUtils.loadConfig(configPath.toString()).qsim();
+			// Without an end time, the simulation runs until all agents are done
+			start = qsim.getStartTime().orElse(0);
+			end = qsim.getEndTime().orElse(Double.POSITIVE_INFINITY);
+		}
+
+		int routes = 0;
+		int folded = 0;
+		int departures = 0;
+
+		for (TransitLine line : schedule.getTransitLines().values()) {
+			routes += line.getRoutes().size();
+			departures += removeDeparturesOutside(line, start, end);
+			folded += foldIdenticalRoutes(schedule.getFactory(), line);
+		}
+
+		// Routes without any departure left are not needed anymore
+		int empty = 0;
+		for (TransitLine line : schedule.getTransitLines().values()) {
+			List<TransitRoute> toRemove = line.getRoutes().values().stream().filter(r -> r.getDepartures().isEmpty()).toList();
+			toRemove.forEach(line::removeRoute);
+			empty += toRemove.size();
+		}
+
+		List<TransitLine> emptyLines = schedule.getTransitLines().values().stream().filter(l -> l.getRoutes().isEmpty()).toList();
+		emptyLines.forEach(schedule::removeTransitLine);
+
+		log.info("Folded {} out of {} routes, removed {} departures outside {} - {}, {} empty routes and {} empty lines.",
+			folded, routes, departures, Time.writeTime(start), Double.isInfinite(end) ? "end" : Time.writeTime(end), empty, emptyLines.size());
+
+		ParallelGzip.writeSchedule(schedule, outputScheduleFile);
+
+		return 0;
+	}
+
+	/**
+	 * Everything that defines the path and timing of a route, except its id and departures.
+	 */
+	private record RouteKey(String mode, List<StopKey> stops, List<Id<Link>> links) {
+
+		static RouteKey of(TransitRoute route) {
+
+			List<StopKey> stops = route.getStops().stream().map(StopKey::of).toList();
+
+			List<Id<Link>> links = null;
+			NetworkRoute r = route.getRoute();
+			if (r != null) {
+				links = new ArrayList<>();
+				links.add(r.getStartLinkId());
+				links.addAll(r.getLinkIds());
+				links.add(r.getEndLinkId());
+			}
+
+			return new RouteKey(route.getTransportMode(), stops, links);
+		}
+	}
+
+	private record StopKey(Id<TransitStopFacility> stop, double arrival, double departure, boolean await) {
+
+		static StopKey of(TransitRouteStop s) {
+			return new StopKey(s.getStopFacility().getId(),
+				s.getArrivalOffset().orElse(Double.NaN),
+				s.getDepartureOffset().orElse(Double.NaN),
+				s.isAwaitDepartureTime());
+		}
+	}
+
+}
@@ -7,8 +7,8 @@ import org.matsim.application.MATSimAppCommand;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.prepare.ParallelGzip;
 import org.matsim.pt.transitSchedule.api.TransitScheduleReader;
-import org.matsim.pt.transitSchedule.api.TransitScheduleWriter;
 import org.matsim.vehicles.MatsimVehicleReader;
 import org.matsim.vehicles.MatsimVehicleWriter;
 import org.matsim.vehicles.Vehicles;
@@ -59,7 +59,7 @@ public class MergeTransitSchedules implements MATSimAppCommand {
 			new TransitScheduleReader(scenario).readFile(schedulePath);
 		}
 
-		new TransitScheduleWriter(scenario.getTransitSchedule()).writeFile(outputSchedule.toString());
+		ParallelGzip.writeSchedule(scenario.getTransitSchedule(), outputSchedule.toString());
 
 
 		if (vehicles != null) {
@@ -10,15 +10,15 @@ import org.matsim.application.MATSimAppCommand;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.network.NetworkUtils;
 import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.utils.collections.QuadTree;
+import org.matsim.prepare.ConcurrentInputs;
+import org.matsim.prepare.ParallelGzip;
 import org.matsim.pt.transitSchedule.api.*;
 import org.matsim.pt.utils.CreatePseudoNetworkWithLoopLinks;
 import org.matsim.pt.utils.TransitScheduleValidator;
 import picocli.CommandLine;
 
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 
 @CommandLine.Command(
 	name = "transit-network",
@@ -40,6 +40,9 @@ public class PrepareTransitNetwork implements MATSimAppCommand {
 	@CommandLine.Option(names = "--output-schedule", description = "Output transit schedule file", required = true)
 	private String outputScheduleFile;
 
+	@CommandLine.Option(names = "--merge-stops-radius", description = "Merge stops of the same modes within this radius in meter. 0 disables merging.", defaultValue = "0")
+	private double mergeStopsRadius;
+
 	public static void main(String[] args) {
 		new PrepareTransitNetwork().execute(args);
 	}
@@ -114,6 +117,103 @@ public class PrepareTransitNetwork implements MATSimAppCommand {
 
 	}
 
+	/**
+	 * Merge stop facilities that are served by the same modes and lie within the given radius. The stops of the routes are rewritten to the merged stop.
+	 *
+	 * @return number of removed stop facilities
+	 */
+	static int mergeStopFacilities(TransitSchedule schedule, double radius) {
+
+		// Modes serving each stop
+		Map<Id<TransitStopFacility>, Set<String>> modes = new HashMap<>();
+		for (TransitLine line : schedule.getTransitLines().values()) {
+			for (TransitRoute route : line.getRoutes().values()) {
+				for (TransitRouteStop stop : route.getStops()) {
+					modes.computeIfAbsent(stop.getStopFacility().getId(), k -> new HashSet<>()).add(route.getTransportMode());
+				}
+			}
+		}
+
+		List<TransitStopFacility> stops = schedule.getFacilities().values().stream()
+			.filter(s -> modes.containsKey(s.getId()))
+			.sorted(Comparator.comparing(TransitStopFacility::getId))
+			.toList();
+
+		if (stops.isEmpty())
+			return 0;
+
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		for (TransitStopFacility stop : stops) {
+			minX = Math.min(minX, stop.getCoord().getX());
+			minY = Math.min(minY, stop.getCoord().getY());
+			maxX = Math.max(maxX, stop.getCoord().getX());
+			maxY = Math.max(maxY, stop.getCoord().getY());
+		}
+
+		QuadTree<TransitStopFacility> index = new QuadTree<>(minX, minY, maxX, maxY);
+		stops.forEach(s -> index.put(s.getCoord().getX(), s.getCoord().getY(), s));
+
+		// Each stop is mapped to the first stop (in id order) within the radius, this keeps clusters within the radius
+		Map<Id<TransitStopFacility>, TransitStopFacility> mapping = new HashMap<>();
+		for (TransitStopFacility stop : stops) {
+			if (mapping.containsKey(stop.getId()))
+				continue;
+
+			Set<String> stopModes = modes.get(stop.getId());
+			for (TransitStopFacility other : index.getDisk(stop.getCoord().getX(), stop.getCoord().getY(), radius)) {
+				if (other != stop && !mapping.containsKey(other.getId()) && stopModes.equals(modes.get(other.getId())))
+					mapping.put(other.getId(), stop);
+			}
+		}
+
+		for (TransitLine line : schedule.getTransitLines().values()) {
+			List<TransitRoute> routes = new ArrayList<>(line.getRoutes().values());
+			for (TransitRoute route : routes) {
+
+				boolean duplicates = false;
+				TransitStopFacility last = null;
+				for (TransitRouteStop stop : route.getStops()) {
+					TransitStopFacility merged = mapping.get(stop.getStopFacility().getId());
+					if (merged != null)
+						stop.setStopFacility(merged);
+
+					duplicates |= stop.getStopFacility() == last;
+					last = stop.getStopFacility();
+				}
+
+				// Neighbouring stops of a route might have been merged into one
+				if (duplicates)
+					removeConsecutiveStops(schedule.getFactory(), line, route);
+			}
+		}
+
+		mapping.keySet().forEach(id -> schedule.removeStopFacility(schedule.getFacilities().get(id)));
+
+		return mapping.size();
+	}
+
+	/**
+	 * Replace a route by a copy where consecutive visits of the same stop are reduced to the first one.
+	 */
+	private static void removeConsecutiveStops(TransitScheduleFactory f, TransitLine line, TransitRoute route) {
+
+		List<TransitRouteStop> stops = new ArrayList<>();
+		for (TransitRouteStop stop : route.getStops()) {
+			if (stops.isEmpty() || stops.getLast().getStopFacility() != stop.getStopFacility())
+				stops.add(stop);
+		}
+
+		TransitRoute copy = f.createTransitRoute(route.getId(), route.getRoute(), stops, route.getTransportMode());
+		copy.setDescription(route.getDescription());
+		route.getDepartures().values().forEach(copy::addDeparture);
+
+		line.removeRoute(route);
+		line.addRoute(copy);
+	}
+
 	private static void increaseLinkFreespeedIfLower(Link link, double newFreespeed) {
 		if (link.getFreespeed() < newFreespeed) {
 			link.setFreespeed(newFreespeed);
@@ -124,10 +224,19 @@ public class PrepareTransitNetwork implements MATSimAppCommand {
 	public Integer call() throws Exception {
 
 		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		Network network;
 
-		new TransitScheduleReader(scenario).readFile(scheduleFile);
+		try (ConcurrentInputs inputs = new ConcurrentInputs()) {
+			ConcurrentInputs.Input<Network> networkInput = inputs.submit("network", () -> NetworkUtils.readNetwork(networkFile));
+			new TransitScheduleReader(scenario).readFile(scheduleFile);
+			network = networkInput.get();
+		}
 
-		Network network = NetworkUtils.readNetwork(networkFile);
+		if (mergeStopsRadius > 0) {
+			int n = scenario.getTransitSchedule().getFacilities().size();
+			int removed = mergeStopFacilities(scenario.getTransitSchedule(), mergeStopsRadius);
+			log.info("Merged {} out of {} stop facilities within {}m", removed, n, mergeStopsRadius);
+		}
 
 		new CreatePseudoNetworkWithLoopLinks(scenario.getTransitSchedule(), network,
 			"pt", 0.1, 100000.0).createNetwork();
@@ -149,8 +258,8 @@ public class PrepareTransitNetwork implements MATSimAppCommand {
 		}
 
 		// Write both network and schedule
-		NetworkUtils.writeNetwork(network, outputNetworkFile);
-		new TransitScheduleWriter(scenario.getTransitSchedule()).writeFile(outputScheduleFile);
+		ParallelGzip.writeNetwork(network, outputNetworkFile);
+		ParallelGzip.writeSchedule(scenario.getTransitSchedule(), outputScheduleFile);
 
 		return 0;
 	}
@@ -5,12 +5,12 @@ import org.matsim.api.core.v01.Scenario;
 import org.matsim.application.MATSimAppCommand;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.prepare.ParallelGzip;
 import org.matsim.pt.transitSchedule.api.Departure;
 import org.matsim.pt.transitSchedule.api.TransitLine;
 import org.matsim.pt.transitSchedule.api.TransitRoute;
 import org.matsim.pt.transitSchedule.api.TransitSchedule;
 import org.matsim.pt.transitSchedule.api.TransitScheduleReader;
-import org.matsim.pt.transitSchedule.api.TransitScheduleWriter;
 import org.matsim.vehicles.MatsimVehicleReader;
 import org.matsim.vehicles.MatsimVehicleWriter;
 import org.matsim.vehicles.Vehicle;
@@ -95,7 +95,7 @@ public final class PrepareTransitVehicles implements MATSimAppCommand {
 
 		// Write the vehicles and schedule
 		new MatsimVehicleWriter(vehicles).writeFile(outputVehiclesFile);
-		new TransitScheduleWriter(schedule).writeFile(outputScheduleFile);
+		ParallelGzip.writeSchedule(schedule, outputScheduleFile);
 
 		return 0;
 	}
@@ -69,4 +69,28 @@ public enum Activities {
 		}
 	}
 
+	/**
+	 * Derive params for a split activity type from its base type. Returns null if the type is not of this form.
+	 * These params are not part of the config, they are provided by {@link SplitActivityScoringParameters}.
+	 */
+	static ScoringConfigGroup.ActivityParams getSplitParams(String type) {
+
+		int idx = type.lastIndexOf('_');
+		if (idx <= 0 || idx == type.length() - 1)
+			return null;
+
+		String suffix = type.substring(idx + 1);
+		if (!suffix.chars().allMatch(Character::isDigit))
+			return null;
+
+		Activities value;
+		try {
+			value = Activities.valueOf(type.substring(0, idx));
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+
+		return value.apply(new ScoringConfigGroup.ActivityParams(type).setTypicalDuration(Long.parseLong(suffix)));
+	}
+
 }
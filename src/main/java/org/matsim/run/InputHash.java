@@ -0,0 +1,147 @@
+package org.matsim.run;
+
+import org.matsim.core.config.ConfigGroup;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Objects;
+
+/**
+ * Content hashes of input files, used as key for caches derived from these files.
+ */
+public final class InputHash {
+
+	private InputHash() {
+	}
+
+	/**
+	 * Hash of an input file given relative to the config context. Returns null if the file is not set.
+	 */
+	public static String of(URL context, String filename) {
+		if (filename == null)
+			return null;
+
+		return of(ConfigGroup.getInputFileURL(context, filename));
+	}
+
+	/**
+	 * SHA-256 hash of the raw (still compressed) content of a file.
+	 */
+	public static String of(URL url) {
+
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+
+		byte[] buffer = new byte[1 << 16];
+		try (InputStream in = url.openStream()) {
+			int n;
+			while ((n = in.read(buffer)) > 0) {
+				digest.update(buffer, 0, n);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not hash " + url, e);
+		}
+
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	/**
+	 * Size, modification time and hash of an input file given relative to the config context. Returns an empty stamp if the file is not set.
+	 */
+	public static Stamp stamp(URL context, String filename) {
+		if (filename == null)
+			return Stamp.NONE;
+
+		URL url = ConfigGroup.getInputFileURL(context, filename);
+		Path path = localPath(url);
+		try {
+			if (path != null)
+				return new Stamp(Files.size(path), Files.getLastModifiedTime(path).toMillis(), of(url));
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not read attributes of " + path, e);
+		}
+
+		return new Stamp(-1, -1, of(url));
+	}
+
+	/**
+	 * Check whether an input file still matches a stamp. Local files with the same size and modification time are assumed to be unchanged,
+	 * the content is only hashed if these differ, e.g. after a copy.
+	 */
+	public static boolean matches(URL context, String filename, Stamp expected) {
+		if (filename == null)
+			return expected.hash().isEmpty();
+
+		URL url = ConfigGroup.getInputFileURL(context, filename);
+		Path path = localPath(url);
+		try {
+			if (path != null && expected.size() >= 0 && Files.size(path) == expected.size()
+				&& Files.getLastModifiedTime(path).toMillis() == expected.modified())
+				return true;
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not read attributes of " + path, e);
+		}
+
+		return of(url).equals(expected.hash());
+	}
+
+	/**
+	 * Path of local files, or null for remote and packaged inputs.
+	 */
+	private static Path localPath(URL url) {
+		if (!"file".equals(url.getProtocol()))
+			return null;
+
+		try {
+			return Path.of(url.toURI());
+		} catch (URISyntaxException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Identifies the content of an input file. Size and modification time are -1 for files that are not local.
+	 */
+	public record Stamp(long size, long modified, String hash) {
+
+		/**
+		 * Stamp of an input that is not set.
+		 */
+		public static final Stamp NONE = new Stamp(-1, -1, "");
+
+		public Stamp {
+			Objects.requireNonNull(hash);
+		}
+
+		/**
+		 * Read a stamp written with {@link #write(DataOutput)}.
+		 */
+		public static Stamp read(DataInput in) throws IOException {
+			return new Stamp(in.readLong(), in.readLong(), in.readUTF());
+		}
+
+		/**
+		 * Write the stamp into a binary header.
+		 */
+		public void write(DataOutput out) throws IOException {
+			out.writeLong(size);
+			out.writeLong(modified);
+			out.writeUTF(hash);
+		}
+	}
+
+}
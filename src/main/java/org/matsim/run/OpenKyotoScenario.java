@@ -2,6 +2,7 @@ package org.matsim.run;
 
 import com.google.inject.Key;
 import com.google.inject.name.Names;
+import jakarta.inject.Singleton;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.matsim.api.core.v01.Scenario;
@@ -10,16 +11,37 @@ import org.matsim.application.MATSimApplication;
 import org.matsim.application.options.SampleOptions;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.ControllerConfigGroup;
 import org.matsim.core.config.groups.ReplanningConfigGroup;
 import org.matsim.core.controler.AbstractModule;
 import org.matsim.core.controler.Controler;
 import org.matsim.core.replanning.strategies.DefaultPlanStrategiesModule;
 import org.matsim.core.router.costcalculators.TravelDisutilityFactory;
 import org.matsim.core.router.util.TravelTime;
+import org.matsim.core.scoring.functions.ScoringParametersForPerson;
+import org.matsim.run.analysis.OnlineTripAnalysisModule;
+import org.matsim.run.check.ScenarioCheck;
+import org.matsim.run.checkpoint.Checkpoint;
+import org.matsim.run.checkpoint.CheckpointModule;
+import org.matsim.run.events.BinaryEventsModule;
+import org.matsim.run.links.FacilityLinks;
+import org.matsim.run.replanning.IncrementalReRouteModule;
+import org.matsim.run.routing.CompactRoutesModule;
+import org.matsim.run.routing.LandmarkCacheModule;
+import org.matsim.run.routing.RaptorDataCacheModule;
+import org.matsim.run.routing.SharedRoutingNetworksModule;
+import org.matsim.run.snapshot.ScenarioSnapshot;
+import org.matsim.run.telemetry.PerformanceTelemetryModule;
+import org.matsim.run.traveltime.CompactTravelTimeModule;
 import org.matsim.simwrapper.SimWrapperConfigGroup;
 import org.matsim.simwrapper.SimWrapperModule;
 import picocli.CommandLine;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
 import java.util.List;
 
 @CommandLine.Command(header = ":: Open Kyoto Scenario ::", version = OpenKyotoScenario.VERSION, mixinStandardHelpOptions = true)
@@ -33,6 +55,49 @@ public class OpenKyotoScenario extends MATSimApplication {
 	@CommandLine.Mixin
 	private final SampleOptions sample = new SampleOptions(10, 25, 3, 1);
 
+	@CommandLine.Option(names = "--snapshot", description = "Binary scenario snapshot created with the snapshot command. It is used instead of network, facilities and plans if it matches these input files.")
+	private Path snapshot;
+
+	@CommandLine.Option(names = "--raptor-cache", description = "Store the pt router data next to the transit schedule and load it from there in later runs with the same inputs.", defaultValue = "false")
+	private boolean raptorCache;
+
+	@CommandLine.Option(names = "--landmark-cache", description = "Store the landmarks of the network router next to the network and load them from there in later runs with the same network and costs.", defaultValue = "false")
+	private boolean landmarkCache;
+
+	@CommandLine.Option(names = "--compact-travel-times", description = "Use float array backed travel times for car and truck instead of MATSim's travel time calculator, which need less memory. " +
+		"Required by --checkpoint-interval, --resume and --incremental-reroute.", defaultValue = "false")
+	private boolean compactTravelTimes;
+
+	@CommandLine.Option(names = "--checkpoint-interval", description = "Write a checkpoint every n iterations, which can be used to resume the run.", defaultValue = "0")
+	private int checkpointInterval;
+
+	@CommandLine.Option(names = "--resume", description = "Continue from a checkpoint. Without a value, the last checkpoint in the output directory is used.", arity = "0..1", fallbackValue = "")
+	private String resume;
+
+	@CommandLine.Option(names = "--incremental-reroute", description = "Use IncrementalReRoute instead of ReRoute, which only routes trips whose travel time changed more than the given fraction since they were routed.",
+		arity = "0..1", fallbackValue = "0.1")
+	private Double incrementalReRoute;
+
+	@CommandLine.Option(names = "--incremental-reroute-share", description = "Share of trips that IncrementalReRoute routes regardless of their travel time, so that faster routes are found.", defaultValue = "0.1")
+	private double incrementalReRouteShare;
+
+	@CommandLine.Option(names = "--binary-events", description = "Write events additionally in a compact binary format, which can be converted with the convert-events command.", defaultValue = "false")
+	private boolean binaryEvents;
+
+	@CommandLine.Option(names = "--no-xml-events", description = "Only write binary events, which requires --binary-events. Dashboards that read xml events need them converted with convert-events.", defaultValue = "false")
+	private boolean noXmlEvents;
+
+	@CommandLine.Option(names = "--compact-routes", description = "Store network routes of non-selected plans in a compact form to reduce memory usage.", defaultValue = "false")
+	private boolean compactRoutes;
+
+	@CommandLine.Option(names = "--facility-links", description = "Mapping of facilities and activity coordinates to links created with the facility-links command. It is only used if it matches the network and facilities.")
+	private Path facilityLinks;
+
+	@CommandLine.Option(names = "--check-scenario", description = "Check all plans against network, facilities, transit schedule and modes before the run, and abort if there are issues.", defaultValue = "false")
+	private boolean checkScenario;
+
+	private Checkpoint checkpoint;
+
 	public OpenKyotoScenario() {
 		super(String.format("input/v%s/kyoto-v%s-10pct.config.xml", VERSION, VERSION));
 	}
@@ -61,7 +126,34 @@ public class OpenKyotoScenario extends MATSimApplication {
 			config.plans().setInputFile(sample.adjustName(config.plans().getInputFile()));
 		}
 
-		Activities.addScoringParams(config, true);
+		if (resume != null) {
+			Path path = resume.isBlank() ? Checkpoint.path(config) : Path.of(resume);
+			try {
+				checkpoint = Checkpoint.read(path);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Could not read checkpoint " + path, e);
+			}
+			checkpoint.apply(config);
+		}
+
+		// Checkpoints contain the travel times and incremental rerouting reads them, which is only possible with the compact store.
+		// The travel time model is not switched implicitly, because that would change the results.
+		if ((checkpointInterval > 0 || checkpoint != null || incrementalReRoute != null) && !compactTravelTimes)
+			throw new IllegalArgumentException("--checkpoint-interval, --resume and --incremental-reroute require --compact-travel-times.");
+
+		// The compact store replaces MATSim's calculator, which would otherwise keep its own travel times for all network modes
+		if (compactTravelTimes)
+			config.travelTimeCalculator().setCalculateLinkTravelTimes(false);
+
+		if (noXmlEvents) {
+			if (!binaryEvents)
+				throw new IllegalArgumentException("--no-xml-events requires --binary-events, otherwise no events would be written.");
+
+			config.controller().setEventsFileFormats(EnumSet.noneOf(ControllerConfigGroup.EventsFileFormat.class));
+		}
+
+		// Params for split activity types are derived when needed by SplitActivityScoringParameters
+		Activities.addScoringParams(config, false);
 
 		// Required for all calibration strategies
 		for (String subpopulation : List.of("person")) {
@@ -74,7 +166,7 @@ public class OpenKyotoScenario extends MATSimApplication {
 
 			config.replanning().addStrategySettings(
 				new ReplanningConfigGroup.StrategySettings()
-					.setStrategyName(DefaultPlanStrategiesModule.DefaultStrategy.ReRoute)
+					.setStrategyName(incrementalReRoute != null ? IncrementalReRouteModule.INCREMENTAL_RE_ROUTE : DefaultPlanStrategiesModule.DefaultStrategy.ReRoute)
 					.setWeight(0.15)
 					.setSubpopulation(subpopulation)
 			);
@@ -98,16 +190,108 @@ public class OpenKyotoScenario extends MATSimApplication {
 		return config;
 	}
 
+	@Override
+	protected Scenario createScenario(Config config) {
+
+		if (checkpoint == null)
+			return loadScenario(config, true);
+
+		// The checkpoint replaces all persons, so the input plans are not read
+		Scenario scenario = loadScenario(config, false);
+		try {
+			checkpoint.loadPopulation(scenario.getPopulation());
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not read checkpoint", e);
+		}
+
+		return scenario;
+	}
+
+	private Scenario loadScenario(Config config, boolean population) {
+
+		if (snapshot != null) {
+			if (!Files.exists(snapshot)) {
+				log.warn("Snapshot {} does not exist, loading scenario from input files.", snapshot);
+			} else {
+				try {
+					Scenario scenario = ScenarioSnapshot.load(config, snapshot, population);
+					if (scenario != null)
+						return scenario;
+				} catch (IOException e) {
+					throw new UncheckedIOException("Could not read snapshot " + snapshot, e);
+				}
+			}
+		}
+
+		if (population)
+			return super.createScenario(config);
+
+		// The config is restored afterward, so that the output config still refers to the input plans
+		String plans = config.plans().getInputFile();
+		try {
+			config.plans().setInputFile(null);
+			return super.createScenario(config);
+		} finally {
+			config.plans().setInputFile(plans);
+		}
+	}
+
 	@Override
 	protected void prepareScenario(Scenario scenario) {
+
+		if (facilityLinks != null) {
+			try {
+				FacilityLinks.apply(scenario, facilityLinks, Math.max(1, scenario.getConfig().global().getNumberOfThreads()));
+			} catch (IOException e) {
+				throw new UncheckedIOException("Could not read facility links " + facilityLinks, e);
+			}
+		}
+
+		if (checkScenario) {
+			ScenarioCheck.Report report = ScenarioCheck.check(scenario, Math.max(1, scenario.getConfig().global().getNumberOfThreads()));
+			if (!report.isEmpty())
+				throw new IllegalStateException(report.summary());
+
+			log.info(report.summary());
+		}
 	}
 
 	@Override
 	protected void prepareControler(Controler controler) {
 
 		controler.addOverridingModule(new SimWrapperModule());
+		controler.addOverridingModule(new PerformanceTelemetryModule());
+		controler.addOverridingModule(new OnlineTripAnalysisModule());
 
 		controler.addOverridingModule(new TravelTimeBinding());
+		controler.addOverridingModule(new AbstractModule() {
+			@Override
+			public void install() {
+				bind(ScoringParametersForPerson.class).to(SplitActivityScoringParameters.class).in(Singleton.class);
+			}
+		});
+		controler.addOverridingModule(new SharedRoutingNetworksModule());
+
+		if (raptorCache)
+			controler.addOverridingModule(new RaptorDataCacheModule());
+
+		if (landmarkCache)
+			controler.addOverridingModule(new LandmarkCacheModule());
+
+		if (compactTravelTimes)
+			controler.addOverridingModule(new CompactTravelTimeModule());
+
+		if (binaryEvents)
+			controler.addOverridingModule(new BinaryEventsModule());
+
+		if (compactRoutes)
+			controler.addOverridingModule(new CompactRoutesModule());
+
+		if (incrementalReRoute != null)
+			controler.addOverridingModule(new IncrementalReRouteModule(incrementalReRoute, incrementalReRouteShare));
+
+		if (checkpointInterval > 0 || checkpoint != null)
+			controler.addOverridingModule(new CheckpointModule(checkpointInterval, checkpoint));
 	}
 
 	/**
@@ -0,0 +1,104 @@
+package org.matsim.run;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.application.MATSimAppCommand;
+import org.matsim.application.MATSimApplication;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigGroup;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.prepare.population.UpscalePlans;
+import picocli.CommandLine;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the first iterations of the {@link OpenKyotoScenario} on a small sample, transfers the relaxed plans
+ * to the 10pct population with {@link UpscalePlans} and continues the calibration there.
+ */
+@CommandLine.Command(
+	name = "fast-forward",
+	description = "Relax plans on a small sample first and continue on the 10pct population."
+)
+public final class RunFastForwardCalibration implements MATSimAppCommand {
+
+	private static final Logger log = LogManager.getLogger(RunFastForwardCalibration.class);
+
+	private static final String RUN_ID = "kyoto-fast-forward";
+
+	@CommandLine.Option(names = "--config", description = "Path to the 10pct scenario config, the small sample uses the plans of the same name with the sample size replaced.",
+		defaultValue = "input/v" + OpenKyotoScenario.VERSION + "/kyoto-v" + OpenKyotoScenario.VERSION + "-10pct.config.xml")
+	private String configPath;
+
+	@CommandLine.Option(names = "--sample", description = "Sample size in percent used for the first iterations, either 1 or 3.", defaultValue = "1")
+	private int sample;
+
+	@CommandLine.Option(names = "--sample-iterations", description = "Number of iterations on the small sample.", defaultValue = "100")
+	private int sampleIterations;
+
+	@CommandLine.Option(names = "--iterations", description = "Number of iterations on the 10pct population.", defaultValue = "50")
+	private int iterations;
+
+	@CommandLine.Option(names = "--output", description = "Output directory, the small sample run is written into a subdirectory.", required = true)
+	private Path output;
+
+	@CommandLine.Parameters(description = "Additional arguments passed to both runs.")
+	private List<String> args = new ArrayList<>();
+
+	public static void main(String[] args) {
+		new RunFastForwardCalibration().execute(args);
+	}
+
+	@Override
+	public Integer call() throws Exception {
+
+		if (sample != 1 && sample != 3) {
+			log.error("Sample size must be 1 or 3, got {}", sample);
+			return 2;
+		}
+
+		Path sampleOutput = output.resolve(sample + "pct");
+
+		// Flow and storage capacities are set according to the sample size by the scenario
+		int code = run(List.of("--config=" + configPath,
+			"--" + sample + "pct",
+			"--iterations=" + sampleIterations,
+			"--output=" + sampleOutput,
+			"--config:controller.runId=" + RUN_ID));
+
+		if (code != 0)
+			return code;
+
+		Config config = ConfigUtils.loadConfig(configPath);
+		String population = ConfigGroup.getInputFileURL(config.getContext(), config.plans().getInputFile()).toString();
+		String network = ConfigGroup.getInputFileURL(config.getContext(), config.network().getInputFile()).toString();
+		Path plans = output.resolve(RUN_ID + ".upscaled-plans.xml.gz").toAbsolutePath();
+
+		code = new UpscalePlans().execute(
+			"--sample", sampleOutput.resolve(RUN_ID + ".output_plans.xml.gz").toString(),
+			"--population", population,
+			"--network", network,
+			"--output", plans.toString()
+		);
+
+		if (code != 0)
+			return code;
+
+		log.info("Continuing on the 10pct population with upscaled plans {}", plans);
+
+		return run(List.of("--config=" + configPath,
+			"--iterations=" + iterations,
+			"--output=" + output,
+			"--config:controller.runId=" + RUN_ID,
+			"--config:plans.inputPlansFile=" + plans));
+	}
+
+	private int run(List<String> options) {
+		List<String> all = new ArrayList<>(options);
+		all.addAll(args);
+		all.add("run");
+		return MATSimApplication.execute(OpenKyotoScenario.class, all.toArray(String[]::new));
+	}
+}
@@ -0,0 +1,275 @@
+package org.matsim.run;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.application.MATSimAppCommand;
+import org.matsim.application.MATSimApplication;
+import org.matsim.application.prepare.population.FixSubtourModes;
+import org.matsim.application.prepare.population.SetCarAvailabilityByAge;
+import org.matsim.application.prepare.population.SplitActivityTypesDuration;
+import org.matsim.prepare.population.CreateDailyPlans;
+import org.matsim.prepare.population.CreateKansaiPopulation;
+import org.matsim.prepare.synthetic.CreateSyntheticScenario;
+import picocli.CommandLine;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntSupplier;
+
+/**
+ * Runs the preparation chain and a few iterations of the {@link OpenKyotoScenario} on synthetic scenarios of different sizes,
+ * with different numbers of threads. Wall time and heap usage of each stage are written to {@code scaling.csv}.
+ * <p>
+ * The preparation stages run in this jvm, one after another, and the heap is collected before each of them.
+ * Each simulation run is started in a new jvm with the same options, so that all thread counts start without compiled code.
+ * The heap usage is the sum of the peaks of all heap memory pools. The pools do not peak at the same time,
+ * so this is only an upper bound of the actual peak usage.
+ */
+@CommandLine.Command(
+	name = "scaling-benchmark",
+	description = "Measure run time and memory of preparation and simulation on synthetic scenarios of different sizes."
+)
+public final class RunScalingBenchmark implements MATSimAppCommand {
+
+	private static final Logger log = LogManager.getLogger(RunScalingBenchmark.class);
+
+	@CommandLine.Option(names = "--output", description = "Output directory", required = true)
+	private Path output;
+
+	@CommandLine.Option(names = "--grid", description = "Sizes of the synthetic scenario, as number of 2x2 km zones in each direction.", split = ",", defaultValue = "10,20")
+	private List<Integer> grids;
+
+	@CommandLine.Option(names = "--threads", description = "Number of threads used by the simulation.", split = ",", defaultValue = "1,2,4,8")
+	private List<Integer> threads;
+
+	@CommandLine.Option(names = "--iterations", description = "Number of iterations of each run.", defaultValue = "3")
+	private int iterations;
+
+	@CommandLine.Option(names = "--sample", description = "Sample size of the population.", defaultValue = "0.1")
+	private double sample;
+
+	@CommandLine.Option(names = "--facilities-per-zone", description = "Number of facilities per zone.", defaultValue = "250")
+	private int facilitiesPerZone;
+
+	@CommandLine.Option(names = "--survey", description = "Number of persons in the survey tables.", defaultValue = "30000")
+	private int survey;
+
+	public static void main(String[] args) {
+		new RunScalingBenchmark().execute(args);
+	}
+
+	@Override
+	public Integer call() throws Exception {
+
+		Files.createDirectories(output);
+
+		try (CSVPrinter csv = new CSVPrinter(Files.newBufferedWriter(output.resolve("scaling.csv")), CSVFormat.DEFAULT)) {
+
+			csv.printRecord("grid", "zones", "stage", "threads", "wall_s", "heap_pool_peaks_mb", "efficiency");
+
+			for (int grid : grids) {
+
+				Path dir = output.resolve("grid-" + grid);
+				Path input = dir.resolve("input");
+
+				for (Stage stage : prepare(grid, input)) {
+					Result r = measure(stage.name(), stage.command());
+					csv.printRecord(grid, grid * grid, stage.name(), "", r.seconds(), r.peakMb(), "");
+					csv.flush();
+				}
+
+				// Scaling efficiency is relative to the run with the fewest threads
+				double base = Double.NaN;
+				int baseThreads = 0;
+
+				for (int t : threads) {
+					Result r = fork(dir, runArgs(input, dir.resolve("output-" + t + "-threads"), t));
+
+					if (Double.isNaN(base)) {
+						base = r.seconds();
+						baseThreads = t;
+					}
+
+					double efficiency = (base * baseThreads) / (r.seconds() * t);
+					csv.printRecord(grid, grid * grid, "run", t, r.seconds(), r.peakMb(), Math.round(efficiency * 1000) / 1000.0);
+					csv.flush();
+
+					log.info("Grid {} with {} threads took {}s, efficiency {}", grid, t, r.seconds(), efficiency);
+				}
+			}
+		}
+
+		return 0;
+	}
+
+	/**
+	 * The steps of the Makefile, that are needed to create the input plans from the synthetic data.
+	 */
+	private List<Stage> prepare(int grid, Path input) {
+
+		String plans = input.resolve("plans.xml.gz").toString();
+		String staticPlans = input.resolve("static.plans.xml.gz").toString();
+
+		List<Stage> stages = new ArrayList<>();
+
+		stages.add(new Stage("synthetic-scenario", () -> new CreateSyntheticScenario().execute(
+			"--output", input.toString(),
+			"--grid", String.valueOf(grid),
+			"--facilities", String.valueOf(grid * grid * facilitiesPerZone),
+			"--survey", String.valueOf(survey)
+		)));
+
+		stages.add(new Stage("kansai-population", () -> new CreateKansaiPopulation().execute(
+			"--input", input.resolve(CreateSyntheticScenario.CENSUS).toString(),
+			"--shp", input.resolve(CreateSyntheticScenario.ZONES).toString(),
+			"--postal-shp", input.resolve(CreateSyntheticScenario.ZONES).toString(),
+			"--income", input.resolve(CreateSyntheticScenario.INCOME).toString(),
+			"--facilities", input.resolve(CreateSyntheticScenario.FACILITIES).toString(), "--facilities-attr", "all",
+			"--sample", String.valueOf(sample),
+			"--output", staticPlans
+		)));
+
+		stages.add(new Stage("create-daily-plans", () -> new CreateDailyPlans().execute(
+			"--input", staticPlans,
+			"--output", plans,
+			"--persons", input.resolve(CreateSyntheticScenario.SURVEY_PERSONS).toString(),
+			"--activities", input.resolve(CreateSyntheticScenario.SURVEY_ACTIVITIES).toString(),
+			"--commuter", input.resolve(CreateSyntheticScenario.COMMUTER).toString(),
+			"--shp", input.resolve(CreateSyntheticScenario.ZONES).toString(),
+			"--facilities", input.resolve(CreateSyntheticScenario.FACILITIES).toString(),
+			"--facility-store", input.resolve("facilities.store").toString(),
+			"--network", input.resolve(CreateSyntheticScenario.NETWORK).toString()
+		)));
+
+		stages.add(new Stage("split-activity-types-duration", () -> new SplitActivityTypesDuration().execute(
+			"--input", plans, "--output", plans
+		)));
+
+		stages.add(new Stage("set-car-avail", () -> new SetCarAvailabilityByAge().execute(
+			"--input", plans, "--output", plans
+		)));
+
+		stages.add(new Stage("fix-subtour-modes", () -> new FixSubtourModes().execute(
+			"--input", plans, "--output", plans, "--coord-dist", "100"
+		)));
+
+		return stages;
+	}
+
+	/**
+	 * Arguments to run the scenario on the synthetic inputs. Paths are absolute, because they would otherwise be relative to the config.
+	 */
+	private List<String> runArgs(Path input, Path runOutput, int t) {
+
+		return List.of(
+			"--config:controller.lastIteration=" + iterations,
+			"--config:controller.outputDirectory=" + runOutput,
+			"--config:controller.runId=synthetic",
+			"--config:controller.overwriteFiles=deleteDirectoryIfExists",
+			"--config:global.numberOfThreads=" + t,
+			"--config:qsim.numberOfThreads=" + t,
+			"--config:qsim.flowCapacityFactor=" + sample,
+			"--config:qsim.storageCapacityFactor=" + sample,
+			"--config:network.inputNetworkFile=" + input.resolve(CreateSyntheticScenario.NETWORK_WITH_PT).toAbsolutePath(),
+			"--config:plans.inputPlansFile=" + input.resolve("plans.xml.gz").toAbsolutePath(),
+			"--config:facilities.inputFacilitiesFile=" + input.resolve(CreateSyntheticScenario.FACILITIES).toAbsolutePath(),
+			"--config:transit.transitScheduleFile=" + input.resolve(CreateSyntheticScenario.SCHEDULE).toAbsolutePath(),
+			"--config:transit.vehiclesFile=" + input.resolve(CreateSyntheticScenario.TRANSIT_VEHICLES).toAbsolutePath(),
+			"--config:simwrapper.defaultDashboards=disabled",
+			"run"
+		);
+	}
+
+	/**
+	 * Run the scenario in a new jvm with the class path and options of this one, and measure its wall time.
+	 */
+	private static Result fork(Path dir, List<String> args) throws IOException, InterruptedException {
+
+		Path peak = Files.createTempFile(dir, "heap", ".txt");
+
+		List<String> cmd = new ArrayList<>();
+		cmd.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+		cmd.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+		cmd.add("-cp");
+		cmd.add(System.getProperty("java.class.path"));
+		cmd.add(ForkedRun.class.getName());
+		cmd.add(peak.toString());
+		cmd.addAll(args);
+
+		long start = System.nanoTime();
+		int code = new ProcessBuilder(cmd).inheritIO().start().waitFor();
+		long end = System.nanoTime();
+
+		if (code != 0)
+			throw new IllegalStateException("Run failed with exit code %d".formatted(code));
+
+		long peakBytes = Long.parseLong(Files.readString(peak).strip());
+		Files.delete(peak);
+
+		return new Result(Math.round((end - start) / 1e6) / 1000.0, peakBytes / 1024 / 1024);
+	}
+
+	private static Result measure(String name, IntSupplier stage) {
+
+		System.gc();
+
+		List<MemoryPoolMXBean> pools = heapPools();
+
+		pools.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+		long start = System.nanoTime();
+		int code = stage.getAsInt();
+		long end = System.nanoTime();
+
+		if (code != 0)
+			throw new IllegalStateException("Stage %s failed with exit code %d".formatted(name, code));
+
+		return new Result(Math.round((end - start) / 1e6) / 1000.0, poolPeaks(pools) / 1024 / 1024);
+	}
+
+	private static List<MemoryPoolMXBean> heapPools() {
+		return ManagementFactory.getMemoryPoolMXBeans().stream()
+			.filter(p -> p.getType() == MemoryType.HEAP)
+			.toList();
+	}
+
+	/**
+	 * Sum of the peak usage of each pool in bytes.
+	 */
+	private static long poolPeaks(List<MemoryPoolMXBean> pools) {
+		return pools.stream().mapToLong(p -> p.getPeakUsage().getUsed()).sum();
+	}
+
+	private record Stage(String name, IntSupplier command) {
+	}
+
+	private record Result(double seconds, long peakMb) {
+	}
+
+	/**
+	 * Entry point of the forked jvm. The first argument is the file the heap pool peaks are written to, the others are passed to the scenario.
+	 */
+	static final class ForkedRun {
+
+		private ForkedRun() {
+		}
+
+		public static void main(String[] args) throws IOException {
+
+			int code = MATSimApplication.execute(OpenKyotoScenario.class, Arrays.copyOfRange(args, 1, args.length));
+			if (code == 0)
+				Files.writeString(Path.of(args[0]), String.valueOf(poolPeaks(heapPools())));
+
+			System.exit(code);
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package org.matsim.run;
+
+import jakarta.inject.Inject;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.core.config.groups.ScoringConfigGroup;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.router.TripStructureUtils;
+import org.matsim.core.scoring.functions.ActivityUtilityParameters;
+import org.matsim.core.scoring.functions.ScoringParameters;
+import org.matsim.core.scoring.functions.ScoringParametersForPerson;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Provides scoring parameters, where the params of split activity types (i.e. {@code <type>_<duration>}) are derived on demand
+ * from {@link Activities}, instead of being added to the config.
+ * Derived params are cached per type, the scoring parameters per subpopulation and combination of split types of a person.
+ */
+public final class SplitActivityScoringParameters implements ScoringParametersForPerson {
+
+	private final Scenario scenario;
+	private final ScoringConfigGroup scoring;
+
+	private final Map<String, Optional<ScoringConfigGroup.ActivityParams>> activityParams = new ConcurrentHashMap<>();
+	private final Map<List<String>, ScoringParameters> params = new ConcurrentHashMap<>();
+
+	@Inject
+	public SplitActivityScoringParameters(Scenario scenario) {
+		this.scenario = scenario;
+		this.scoring = scenario.getConfig().scoring();
+	}
+
+	@Override
+	public ScoringParameters getScoringParameters(Person person) {
+
+		String subpopulation = PopulationUtils.getSubpopulation(person);
+
+		TreeSet<String> types = new TreeSet<>();
+		for (Plan plan : person.getPlans()) {
+			for (Activity act : TripStructureUtils.getActivities(plan, TripStructureUtils.StageActivityHandling.ExcludeStageActivities)) {
+				String type = act.getType();
+				if (!types.contains(type) && scoring.getScoringParameters(subpopulation).getActivityParams(type) == null && getActivityParams(type).isPresent())
+					types.add(type);
+			}
+		}
+
+		List<String> key = new ArrayList<>(types.size() + 1);
+		key.add(Objects.toString(subpopulation));
+		key.addAll(types);
+
+		return params.computeIfAbsent(key, k -> {
+			ScoringParameters.Builder builder = new ScoringParameters.Builder(scenario, person);
+			for (String type : types) {
+				builder.setActivityParameters(type, new ActivityUtilityParameters.Builder(getActivityParams(type).orElseThrow()));
+			}
+
+			return builder.build();
+		});
+	}
+
+	private Optional<ScoringConfigGroup.ActivityParams> getActivityParams(String type) {
+		return activityParams.computeIfAbsent(type, t -> Optional.ofNullable(Activities.getSplitParams(t)));
+	}
+
+}
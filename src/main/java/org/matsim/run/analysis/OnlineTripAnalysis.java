@@ -0,0 +1,302 @@
+package org.matsim.run.analysis;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import jakarta.inject.Inject;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.*;
+import org.matsim.api.core.v01.events.handler.*;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.application.analysis.population.TripAnalysis;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.controler.events.AfterMobsimEvent;
+import org.matsim.core.controler.listener.AfterMobsimListener;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.router.TripStructureUtils;
+import org.matsim.vehicles.Vehicle;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Computes mode shares, distance distributions and the agreement with the modes of reference persons directly from the events of the mobsim.
+ * Only persons of the {@code person} subpopulation are considered. Results of each iteration are appended to small csv files in the output directory.
+ */
+final class OnlineTripAnalysis implements ActivityEndEventHandler, ActivityStartEventHandler, PersonDepartureEventHandler,
+	TeleportationArrivalEventHandler, PersonEntersVehicleEventHandler, PersonLeavesVehicleEventHandler, LinkEnterEventHandler, AfterMobsimListener {
+
+	static final String MODE_SHARE_FILE = "online_mode_share.csv";
+	static final String DISTANCE_FILE = "online_distance_distribution.csv";
+	static final String REF_MODES_FILE = "online_ref_modes.csv";
+
+	/**
+	 * Same distance groups as the default of {@link TripAnalysis}.
+	 */
+	private static final double[] DIST_GROUPS = {0, 1000, 2000, 5000, 10000, 20000};
+
+	private static final String NO_TRIP = "";
+
+	/**
+	 * Trip states, all other values are mode indices.
+	 */
+	private static final int NOT_TRAVELING = -1;
+	private static final int STARTED = -2;
+
+	private final Population population;
+	private final Network network;
+	private final OutputDirectoryHierarchy output;
+
+	/**
+	 * Index of a mode in the arrays below.
+	 */
+	private final Object2IntMap<String> modes = new Object2IntOpenHashMap<>();
+	private final List<String> modeNames = new ArrayList<>();
+
+	/**
+	 * Persons that are analyzed, indexed by person index.
+	 */
+	private boolean[] analyzed;
+
+	/**
+	 * Reference mode index of each trip, for reference persons only.
+	 */
+	private int[][] refModes;
+
+	/**
+	 * State of the current trip: main mode index or state, traveled distance and number of finished trips.
+	 */
+	private int[] tripMode;
+	private double[] tripDistance;
+	private int[] tripCount;
+
+	/**
+	 * Persons currently in each vehicle.
+	 */
+	private final Map<Id<Vehicle>, IntList> occupants = new HashMap<>();
+
+	private long[] trips = new long[0];
+	private long[][] distances = new long[0][];
+	private long[][] confusion = new long[0][];
+
+	@Inject
+	OnlineTripAnalysis(Population population, Network network, OutputDirectoryHierarchy output) {
+		this.population = population;
+		this.network = network;
+		this.output = output;
+	}
+
+	private int mode(String mode) {
+		int idx = modes.getOrDefault(mode, -1);
+		if (idx >= 0)
+			return idx;
+
+		idx = modeNames.size();
+		modes.put(mode, idx);
+		modeNames.add(mode);
+
+		trips = Arrays.copyOf(trips, idx + 1);
+		distances = Arrays.copyOf(distances, idx + 1);
+		distances[idx] = new long[DIST_GROUPS.length];
+
+		confusion = Arrays.copyOf(confusion, idx + 1);
+		for (int i = 0; i < confusion.length; i++) {
+			confusion[i] = confusion[i] == null ? new long[idx + 1] : Arrays.copyOf(confusion[i], idx + 1);
+		}
+
+		return idx;
+	}
+
+	@Override
+	public void reset(int iteration) {
+
+		int n = Id.getNumberOfIds(Person.class);
+
+		analyzed = new boolean[n];
+		refModes = new int[n][];
+		tripMode = new int[n];
+		tripDistance = new double[n];
+		tripCount = new int[n];
+		Arrays.fill(tripMode, NOT_TRAVELING);
+
+		for (Person person : population.getPersons().values()) {
+			if (!"person".equals(PopulationUtils.getSubpopulation(person)))
+				continue;
+
+			int idx = person.getId().index();
+			analyzed[idx] = true;
+
+			Object ref = person.getAttributes().getAttribute(TripAnalysis.ATTR_REF_MODES);
+			if (ref != null)
+				refModes[idx] = Arrays.stream(ref.toString().split("-")).mapToInt(this::mode).toArray();
+		}
+
+		occupants.clear();
+		Arrays.fill(trips, 0);
+		for (long[] d : distances)
+			Arrays.fill(d, 0);
+		for (long[] c : confusion)
+			Arrays.fill(c, 0);
+	}
+
+	private boolean isAnalyzed(int idx) {
+		return idx < analyzed.length && analyzed[idx];
+	}
+
+	@Override
+	public void handleEvent(ActivityEndEvent event) {
+		int idx = event.getPersonId().index();
+		if (!isAnalyzed(idx) || TripStructureUtils.isStageActivityType(event.getActType()))
+			return;
+
+		tripMode[idx] = STARTED;
+		tripDistance[idx] = 0;
+	}
+
+	@Override
+	public void handleEvent(PersonDepartureEvent event) {
+		int idx = event.getPersonId().index();
+		if (!isAnalyzed(idx) || tripMode[idx] == NOT_TRAVELING)
+			return;
+
+		String mode = event.getRoutingMode() != null ? event.getRoutingMode() : event.getLegMode();
+		tripMode[idx] = mode(mode == null ? NO_TRIP : mode);
+	}
+
+	@Override
+	public void handleEvent(TeleportationArrivalEvent event) {
+		int idx = event.getPersonId().index();
+		if (isAnalyzed(idx) && tripMode[idx] != NOT_TRAVELING)
+			tripDistance[idx] += event.getDistance();
+	}
+
+	@Override
+	public void handleEvent(PersonEntersVehicleEvent event) {
+		int idx = event.getPersonId().index();
+		if (isAnalyzed(idx))
+			occupants.computeIfAbsent(event.getVehicleId(), k -> new IntArrayList(1)).add(idx);
+	}
+
+	@Override
+	public void handleEvent(PersonLeavesVehicleEvent event) {
+		IntList persons = occupants.get(event.getVehicleId());
+		if (persons != null) {
+			persons.rem(event.getPersonId().index());
+			if (persons.isEmpty())
+				occupants.remove(event.getVehicleId());
+		}
+	}
+
+	@Override
+	public void handleEvent(LinkEnterEvent event) {
+		IntList persons = occupants.get(event.getVehicleId());
+		if (persons == null)
+			return;
+
+		double length = network.getLinks().get(event.getLinkId()).getLength();
+		for (int i = 0; i < persons.size(); i++) {
+			int idx = persons.getInt(i);
+			if (tripMode[idx] != NOT_TRAVELING)
+				tripDistance[idx] += length;
+		}
+	}
+
+	@Override
+	public void handleEvent(ActivityStartEvent event) {
+		int idx = event.getPersonId().index();
+		if (!isAnalyzed(idx) || TripStructureUtils.isStageActivityType(event.getActType()) || tripMode[idx] < 0) {
+			return;
+		}
+
+		int mode = tripMode[idx];
+		trips[mode]++;
+		distances[mode][distGroup(tripDistance[idx])]++;
+
+		int[] ref = refModes[idx];
+		int trip = tripCount[idx]++;
+		if (ref != null && trip < ref.length)
+			confusion[ref[trip]][mode]++;
+
+		tripMode[idx] = NOT_TRAVELING;
+	}
+
+	private static int distGroup(double distance) {
+		int group = Arrays.binarySearch(DIST_GROUPS, distance);
+		return group >= 0 ? group : -group - 2;
+	}
+
+	private static String distLabel(int group) {
+		return group == DIST_GROUPS.length - 1 ?
+			"%.0f+".formatted(DIST_GROUPS[group]) :
+			"%.0f - %.0f".formatted(DIST_GROUPS[group], DIST_GROUPS[group + 1]);
+	}
+
+	@Override
+	public void notifyAfterMobsim(AfterMobsimEvent event) {
+
+		int iteration = event.getIteration();
+		long total = Arrays.stream(trips).sum();
+
+		List<String> sorted = new ArrayList<>(modeNames);
+		sorted.remove(NO_TRIP);
+		Collections.sort(sorted);
+
+		write(MODE_SHARE_FILE, List.of("iteration", "main_mode", "n", "share"), csv -> {
+			for (String mode : sorted) {
+				long n = trips[modes.getInt(mode)];
+				if (n > 0)
+					csv.printRecord(iteration, mode, n, total > 0 ? (double) n / total : 0);
+			}
+		});
+
+		write(DISTANCE_FILE, List.of("iteration", "main_mode", "dist_group", "n"), csv -> {
+			for (String mode : sorted) {
+				long[] d = distances[modes.getInt(mode)];
+				for (int g = 0; g < d.length; g++) {
+					if (d[g] > 0)
+						csv.printRecord(iteration, mode, distLabel(g), d[g]);
+				}
+			}
+		});
+
+		write(REF_MODES_FILE, List.of("iteration", "ref_mode", "main_mode", "n"), csv -> {
+			for (String ref : sorted) {
+				for (String mode : sorted) {
+					long n = confusion[modes.getInt(ref)][modes.getInt(mode)];
+					if (n > 0)
+						csv.printRecord(iteration, ref, mode, n);
+				}
+			}
+		});
+	}
+
+	private void write(String file, List<String> header, CsvWriter writer) {
+
+		Path path = Path.of(output.getOutputFilename(file));
+		boolean exists = Files.exists(path);
+
+		try (CSVPrinter csv = new CSVPrinter(Files.newBufferedWriter(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND), CSVFormat.DEFAULT)) {
+			if (!exists)
+				csv.printRecord(header);
+
+			writer.write(csv);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@FunctionalInterface
+	private interface CsvWriter {
+		void write(CSVPrinter csv) throws IOException;
+	}
+
+}
@@ -0,0 +1,16 @@
+package org.matsim.run.analysis;
+
+import jakarta.inject.Singleton;
+import org.matsim.core.controler.AbstractModule;
+
+/**
+ * Computes trip statistics during the mobsim of every iteration, see {@link OnlineTripAnalysis}.
+ */
+public final class OnlineTripAnalysisModule extends AbstractModule {
+	@Override
+	public void install() {
+		bind(OnlineTripAnalysis.class).in(Singleton.class);
+		addEventHandlerBinding().to(OnlineTripAnalysis.class);
+		addControlerListenerBinding().to(OnlineTripAnalysis.class);
+	}
+}
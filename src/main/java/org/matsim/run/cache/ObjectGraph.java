@@ -0,0 +1,825 @@
+package org.matsim.run.cache;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.pt.transitSchedule.api.Departure;
+import org.matsim.pt.transitSchedule.api.TransitLine;
+import org.matsim.pt.transitSchedule.api.TransitRoute;
+import org.matsim.pt.transitSchedule.api.TransitStopFacility;
+import org.matsim.vehicles.Vehicle;
+import org.matsim.vehicles.VehicleType;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Writes and reads object graphs of data structures that are not serializable, e.g. the data of MATSim routers, using reflection.
+ * Objects of the scenario, like links, stops or departures, are not written, but referenced by a key that is resolved against the loaded scenario, see {@link References}.
+ * <p>
+ * The field layout of every class is stored with the data. Reading fails with an {@link IOException} if a class has changed, so that files written with another MATSim version are not used.
+ * Supported are plain classes, records, arrays, strings, boxed primitives, enums, ids and the common JDK collections. Writing fails for anything else, e.g. lambdas or threads.
+ */
+public final class ObjectGraph {
+
+	private static final byte NULL = 0;
+	private static final byte REF = 1;
+	private static final byte STRING = 2;
+	private static final byte BOXED = 3;
+	private static final byte ENUM = 4;
+	private static final byte ID = 5;
+	private static final byte EXTERNAL = 6;
+	private static final byte ARRAY = 7;
+	private static final byte COLLECTION = 8;
+	private static final byte MAP = 9;
+	private static final byte OBJECT = 10;
+	private static final byte RECORD = 11;
+	private static final byte BITSET = 12;
+
+	/**
+	 * Types of ids that can be contained in a graph.
+	 */
+	private static final List<Class<?>> ID_TYPES = List.of(Link.class, Node.class, TransitStopFacility.class, TransitLine.class, TransitRoute.class,
+		Departure.class, Vehicle.class, VehicleType.class, Person.class, ActivityFacility.class);
+
+	/**
+	 * JDK collections that are created again with the same class. Other lists, sets and maps, e.g. immutable ones, are read as array lists and linked hash sets or maps.
+	 */
+	private static final Set<Class<?>> COLLECTIONS = Set.of(ArrayList.class, LinkedList.class, ArrayDeque.class, HashSet.class, LinkedHashSet.class, TreeSet.class,
+		HashMap.class, LinkedHashMap.class, TreeMap.class, IdentityHashMap.class, ConcurrentHashMap.class);
+
+	private static final Map<String, Class<?>> PRIMITIVES = Map.of("boolean", boolean.class, "byte", byte.class, "char", char.class, "short", short.class,
+		"int", int.class, "long", long.class, "float", float.class, "double", double.class);
+
+	/**
+	 * Objects are allocated without calling a constructor, like java serialization does.
+	 */
+	private static final Object UNSAFE;
+	private static final Method ALLOCATE;
+
+	/**
+	 * Marks a record whose components are still being read.
+	 */
+	private static final Object PENDING = new Object();
+
+	static {
+		try {
+			Class<?> unsafe = Class.forName("sun.misc.Unsafe");
+			Field field = unsafe.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			UNSAFE = field.get(null);
+			ALLOCATE = unsafe.getMethod("allocateInstance", Class.class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private ObjectGraph() {
+	}
+
+	/**
+	 * Write an object and everything reachable from it.
+	 */
+	public static void write(Object root, OutputStream out, References references) throws IOException {
+		DataOutputStream data = new DataOutputStream(out);
+		onLargeStack(() -> {
+			new Writer(data, references).write(root);
+			return null;
+		});
+		data.flush();
+	}
+
+	/**
+	 * Read an object graph written by {@link #write(Object, OutputStream, References)}.
+	 */
+	public static <T> T read(InputStream in, Class<T> type, References references) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+		Object root = onLargeStack(() -> new Reader(data, references).read());
+		if (!type.isInstance(root))
+			throw new IOException("Expected %s but read %s".formatted(type.getName(), root == null ? null : root.getClass().getName()));
+
+		return type.cast(root);
+	}
+
+	/**
+	 * Graphs can be deep, e.g. linked nodes, so they are traversed on a thread with a large stack.
+	 */
+	@SuppressWarnings("IllegalCatch")
+	private static <T> T onLargeStack(Task<T> task) throws IOException {
+
+		AtomicReference<T> result = new AtomicReference<>();
+		AtomicReference<Throwable> error = new AtomicReference<>();
+
+		Thread thread = new Thread(null, () -> {
+			try {
+				result.set(task.call());
+			} catch (IOException | RuntimeException | StackOverflowError e) {
+				error.set(e);
+			}
+		}, "object-graph", 1L << 30);
+
+		thread.start();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted", e);
+		}
+
+		Throwable e = error.get();
+		if (e instanceof IOException io)
+			throw io;
+		if (e != null)
+			throw new IOException("Invalid object graph: " + e, e);
+
+		return result.get();
+	}
+
+	/**
+	 * Instance fields of a class and its superclasses. Null if the class can not be accessed by reflection.
+	 */
+	private static Field[] fields(Class<?> cls) {
+		List<Field> fields = new ArrayList<>();
+		for (Class<?> c = cls; c != null && c != Object.class; c = c.getSuperclass()) {
+			for (Field f : c.getDeclaredFields()) {
+				if (Modifier.isStatic(f.getModifiers()))
+					continue;
+
+				// Fields of JDK classes can not be accessed
+				if (c.getModule().isNamed())
+					return null;
+
+				f.setAccessible(true);
+				fields.add(f);
+			}
+		}
+		return fields.toArray(Field[]::new);
+	}
+
+	private static String fieldName(Field f) {
+		return f.getDeclaringClass().getName() + "#" + f.getName();
+	}
+
+	private static boolean isBoxed(Object o) {
+		return o instanceof Integer || o instanceof Long || o instanceof Double || o instanceof Float
+			|| o instanceof Short || o instanceof Byte || o instanceof Character || o instanceof Boolean;
+	}
+
+	private static Class<?> forName(String name) throws IOException {
+		Class<?> primitive = PRIMITIVES.get(name);
+		if (primitive != null)
+			return primitive;
+
+		try {
+			return Class.forName(name, false, ObjectGraph.class.getClassLoader());
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Class not found: " + name, e);
+		}
+	}
+
+	/**
+	 * Resolves objects that are not part of the graph, but of the loaded scenario.
+	 */
+	public interface References {
+
+		/**
+		 * Write all objects into the graph.
+		 */
+		References NONE = new References() {
+			@Override
+			public String[] keyOf(Object o) {
+				return null;
+			}
+
+			@Override
+			public Object resolve(String[] key) {
+				return null;
+			}
+		};
+
+		/**
+		 * Key of an object that is referenced instead of written, or null if the object is part of the graph.
+		 */
+		String[] keyOf(Object o);
+
+		/**
+		 * Get the object for a key, or null if it does not exist.
+		 */
+		Object resolve(String[] key);
+
+	}
+
+	@FunctionalInterface
+	private interface Task<T> {
+		T call() throws IOException;
+	}
+
+	private static final class Writer {
+
+		private final DataOutputStream out;
+		private final References references;
+		private final Map<Object, Integer> handles = new IdentityHashMap<>();
+		private final Map<Class<?>, Integer> classes = new IdentityHashMap<>();
+		private final Map<Class<?>, Field[]> layouts = new IdentityHashMap<>();
+
+		private Writer(DataOutputStream out, References references) {
+			this.out = out;
+			this.references = references;
+		}
+
+		private void write(Object o) throws IOException {
+
+			if (o == null) {
+				out.writeByte(NULL);
+				return;
+			}
+
+			if (isBoxed(o)) {
+				out.writeByte(BOXED);
+				writeBoxed(o);
+				return;
+			}
+
+			if (o instanceof Enum<?> e) {
+				out.writeByte(ENUM);
+				writeClass(e.getDeclaringClass());
+				writeString(e.name());
+				return;
+			}
+
+			Integer handle = handles.get(o);
+			if (handle != null) {
+				out.writeByte(REF);
+				out.writeInt(handle);
+				return;
+			}
+
+			handles.put(o, handles.size());
+
+			String[] key = o instanceof String ? null : references.keyOf(o);
+			if (key != null) {
+				out.writeByte(EXTERNAL);
+				out.writeInt(key.length);
+				for (String k : key) {
+					writeString(k);
+				}
+				return;
+			}
+
+			switch (o) {
+				case String s -> {
+					out.writeByte(STRING);
+					writeString(s);
+				}
+				case Id<?> id -> writeId(id);
+				case BitSet bits -> {
+					out.writeByte(BITSET);
+					writeArray(bits.toLongArray());
+				}
+				case Collection<?> c when o.getClass().getModule().isNamed() -> {
+					out.writeByte(COLLECTION);
+					writeString(collectionType(c));
+					out.writeInt(c.size());
+					for (Object e : c) {
+						write(e);
+					}
+				}
+				case Map<?, ?> m when o.getClass().getModule().isNamed() -> {
+					out.writeByte(MAP);
+					writeString(collectionType(m));
+					out.writeInt(m.size());
+					for (Map.Entry<?, ?> e : m.entrySet()) {
+						write(e.getKey());
+						write(e.getValue());
+					}
+				}
+				default -> {
+					if (o.getClass().isArray()) {
+						out.writeByte(ARRAY);
+						writeClass(o.getClass().getComponentType());
+						writeArray(o);
+					} else
+						writeObject(o);
+				}
+			}
+		}
+
+		private void writeObject(Object o) throws IOException {
+
+			Class<?> cls = o.getClass();
+			if (cls.getModule().isNamed() || cls.isHidden())
+				throw new IOException("Can not write objects of " + cls.getName());
+
+			Field[] fields = layout(cls);
+			out.writeByte(cls.isRecord() ? RECORD : OBJECT);
+			writeClass(cls);
+
+			try {
+				for (Field f : fields) {
+					writeField(f, o);
+				}
+			} catch (IllegalAccessException e) {
+				throw new IOException("Can not access fields of " + cls.getName(), e);
+			}
+		}
+
+		private void writeField(Field f, Object o) throws IllegalAccessException, IOException {
+			Class<?> type = f.getType();
+			if (!type.isPrimitive())
+				write(f.get(o));
+			else if (type == int.class)
+				out.writeInt(f.getInt(o));
+			else if (type == long.class)
+				out.writeLong(f.getLong(o));
+			else if (type == double.class)
+				out.writeDouble(f.getDouble(o));
+			else if (type == float.class)
+				out.writeFloat(f.getFloat(o));
+			else if (type == boolean.class)
+				out.writeBoolean(f.getBoolean(o));
+			else if (type == short.class)
+				out.writeShort(f.getShort(o));
+			else if (type == byte.class)
+				out.writeByte(f.getByte(o));
+			else
+				out.writeChar(f.getChar(o));
+		}
+
+		private Field[] layout(Class<?> cls) throws IOException {
+			Field[] fields = layouts.get(cls);
+			if (fields == null) {
+				fields = fields(cls);
+				if (fields == null)
+					throw new IOException("Can not write objects of " + cls.getName() + ", which extends a JDK class");
+
+				layouts.put(cls, fields);
+			}
+			return fields;
+		}
+
+		/**
+		 * Classes are written once with their field layout and referenced by index afterward.
+		 */
+		private void writeClass(Class<?> cls) throws IOException {
+			Integer idx = classes.get(cls);
+			if (idx != null) {
+				out.writeInt(idx);
+				return;
+			}
+
+			out.writeInt(classes.size());
+			classes.put(cls, classes.size());
+			writeString(cls.getName());
+
+			boolean plain = !cls.isPrimitive() && !cls.isArray() && !cls.isEnum() && !cls.isInterface() && !cls.getModule().isNamed()
+				&& !Modifier.isAbstract(cls.getModifiers());
+			out.writeBoolean(plain);
+			if (plain) {
+				Field[] fields = layout(cls);
+				out.writeInt(fields.length);
+				for (Field f : fields) {
+					writeString(fieldName(f));
+				}
+			}
+		}
+
+		private void writeId(Id<?> id) throws IOException {
+			String key = id.toString();
+			for (Class<?> type : ID_TYPES) {
+				if (Id.get(key, type) == id) {
+					out.writeByte(ID);
+					writeClass(type);
+					writeString(key);
+					return;
+				}
+			}
+			throw new IOException("Unknown type of id " + key);
+		}
+
+		private String collectionType(Object c) throws IOException {
+			Class<?> cls = c.getClass();
+			if (c instanceof SortedMap<?, ?> m && m.comparator() != null || c instanceof SortedSet<?> s && s.comparator() != null)
+				throw new IOException("Sorted collections with comparator are not supported");
+
+			if (COLLECTIONS.contains(cls))
+				return cls.getName();
+			if (c instanceof List<?>)
+				return ArrayList.class.getName();
+			if (c instanceof Set<?>)
+				return LinkedHashSet.class.getName();
+			if (c instanceof Map<?, ?>)
+				return LinkedHashMap.class.getName();
+
+			throw new IOException("Unsupported collection " + cls.getName());
+		}
+
+		private void writeArray(Object array) throws IOException {
+			int n = Array.getLength(array);
+			out.writeInt(n);
+			switch (array) {
+				case int[] a -> {
+					for (int v : a) out.writeInt(v);
+				}
+				case long[] a -> {
+					for (long v : a) out.writeLong(v);
+				}
+				case double[] a -> {
+					for (double v : a) out.writeDouble(v);
+				}
+				case float[] a -> {
+					for (float v : a) out.writeFloat(v);
+				}
+				case boolean[] a -> {
+					for (boolean v : a) out.writeBoolean(v);
+				}
+				case short[] a -> {
+					for (short v : a) out.writeShort(v);
+				}
+				case byte[] a -> out.write(a);
+				case char[] a -> {
+					for (char v : a) out.writeChar(v);
+				}
+				default -> {
+					for (Object v : (Object[]) array) write(v);
+				}
+			}
+		}
+
+		private void writeBoxed(Object o) throws IOException {
+			switch (o) {
+				case Integer v -> {
+					out.writeByte(0);
+					out.writeInt(v);
+				}
+				case Long v -> {
+					out.writeByte(1);
+					out.writeLong(v);
+				}
+				case Double v -> {
+					out.writeByte(2);
+					out.writeDouble(v);
+				}
+				case Float v -> {
+					out.writeByte(3);
+					out.writeFloat(v);
+				}
+				case Short v -> {
+					out.writeByte(4);
+					out.writeShort(v);
+				}
+				case Byte v -> {
+					out.writeByte(5);
+					out.writeByte(v);
+				}
+				case Character v -> {
+					out.writeByte(6);
+					out.writeChar(v);
+				}
+				default -> {
+					out.writeByte(7);
+					out.writeBoolean((Boolean) o);
+				}
+			}
+		}
+
+		private void writeString(String s) throws IOException {
+			byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static final class Reader {
+
+		private final DataInputStream in;
+		private final References references;
+		private final List<Object> objects = new ArrayList<>();
+		private final List<ClassInfo> classes = new ArrayList<>();
+
+		private Reader(DataInputStream in, References references) {
+			this.in = in;
+			this.references = references;
+		}
+
+		private Object read() throws IOException {
+			byte tag = in.readByte();
+			return switch (tag) {
+				case NULL -> null;
+				case REF -> ref(in.readInt());
+				case BOXED -> readBoxed();
+				case ENUM -> readEnum();
+				case EXTERNAL -> register(readExternal());
+				case STRING -> register(readString());
+				case ID -> register(Id.create(readString(), readClass().cls));
+				case BITSET -> register(BitSet.valueOf((long[]) readPrimitives(long.class, in.readInt())));
+				case ARRAY -> readArray();
+				case COLLECTION -> readCollection();
+				case MAP -> readMap();
+				case OBJECT -> readObject();
+				case RECORD -> readRecord();
+				default -> throw new IOException("Invalid tag " + tag);
+			};
+		}
+
+		private Object register(Object o) {
+			objects.add(o);
+			return o;
+		}
+
+		private Object ref(int handle) throws IOException {
+			Object o = objects.get(handle);
+			if (o == PENDING)
+				throw new IOException("Records with cyclic references are not supported");
+
+			return o;
+		}
+
+		private Object readExternal() throws IOException {
+			String[] key = new String[in.readInt()];
+			for (int i = 0; i < key.length; i++) {
+				key[i] = readString();
+			}
+
+			Object o = references.resolve(key);
+			if (o == null)
+				throw new IOException("Unknown reference " + Arrays.toString(key));
+
+			return o;
+		}
+
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		private Object readEnum() throws IOException {
+			Class cls = readClass().cls;
+			String name = readString();
+			try {
+				return Enum.valueOf(cls, name);
+			} catch (IllegalArgumentException e) {
+				throw new IOException("Unknown constant %s of %s".formatted(name, cls.getName()), e);
+			}
+		}
+
+		private Object readArray() throws IOException {
+			Class<?> component = readClass().cls;
+			int n = in.readInt();
+
+			if (component.isPrimitive())
+				return register(readPrimitives(component, n));
+
+			// Registered before the elements, which may reference the array
+			Object[] array = (Object[]) Array.newInstance(component, n);
+			register(array);
+			for (int i = 0; i < n; i++) {
+				array[i] = read();
+			}
+			return array;
+		}
+
+		private Object readPrimitives(Class<?> component, int n) throws IOException {
+
+			if (component == int.class) {
+				int[] a = new int[n];
+				for (int i = 0; i < n; i++) a[i] = in.readInt();
+				return a;
+			} else if (component == long.class) {
+				long[] a = new long[n];
+				for (int i = 0; i < n; i++) a[i] = in.readLong();
+				return a;
+			} else if (component == double.class) {
+				double[] a = new double[n];
+				for (int i = 0; i < n; i++) a[i] = in.readDouble();
+				return a;
+			} else if (component == float.class) {
+				float[] a = new float[n];
+				for (int i = 0; i < n; i++) a[i] = in.readFloat();
+				return a;
+			} else if (component == boolean.class) {
+				boolean[] a = new boolean[n];
+				for (int i = 0; i < n; i++) a[i] = in.readBoolean();
+				return a;
+			} else if (component == short.class) {
+				short[] a = new short[n];
+				for (int i = 0; i < n; i++) a[i] = in.readShort();
+				return a;
+			} else if (component == byte.class) {
+				byte[] a = new byte[n];
+				in.readFully(a);
+				return a;
+			} else {
+				char[] a = new char[n];
+				for (int i = 0; i < n; i++) a[i] = in.readChar();
+				return a;
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private Object readCollection() throws IOException {
+			Collection<Object> c = (Collection<Object>) newCollection(readString());
+			int n = in.readInt();
+			register(c);
+			for (int i = 0; i < n; i++) {
+				c.add(read());
+			}
+			return c;
+		}
+
+		@SuppressWarnings("unchecked")
+		private Object readMap() throws IOException {
+			Map<Object, Object> m = (Map<Object, Object>) newCollection(readString());
+			int n = in.readInt();
+			register(m);
+			for (int i = 0; i < n; i++) {
+				Object key = read();
+				m.put(key, read());
+			}
+			return m;
+		}
+
+		private Object newCollection(String name) throws IOException {
+			Class<?> cls = forName(name);
+			if (!COLLECTIONS.contains(cls))
+				throw new IOException("Unsupported collection " + name);
+
+			try {
+				return cls.getDeclaredConstructor().newInstance();
+			} catch (ReflectiveOperationException e) {
+				throw new IOException("Can not create " + name, e);
+			}
+		}
+
+		private Object readObject() throws IOException {
+
+			ClassInfo info = readClass();
+			Object o;
+			try {
+				o = ALLOCATE.invoke(UNSAFE, info.cls);
+			} catch (IllegalAccessException | InvocationTargetException e) {
+				throw new IOException("Can not create " + info.cls.getName(), e);
+			}
+
+			register(o);
+
+			try {
+				for (Field f : info.fields) {
+					readField(f, o);
+				}
+			} catch (IllegalAccessException | IllegalArgumentException e) {
+				throw new IOException("Can not set fields of " + info.cls.getName(), e);
+			}
+
+			return o;
+		}
+
+		private void readField(Field f, Object o) throws IllegalAccessException, IOException {
+			Class<?> type = f.getType();
+			if (!type.isPrimitive())
+				f.set(o, read());
+			else if (type == int.class)
+				f.setInt(o, in.readInt());
+			else if (type == long.class)
+				f.setLong(o, in.readLong());
+			else if (type == double.class)
+				f.setDouble(o, in.readDouble());
+			else if (type == float.class)
+				f.setFloat(o, in.readFloat());
+			else if (type == boolean.class)
+				f.setBoolean(o, in.readBoolean());
+			else if (type == short.class)
+				f.setShort(o, in.readShort());
+			else if (type == byte.class)
+				f.setByte(o, in.readByte());
+			else
+				f.setChar(o, in.readChar());
+		}
+
+		/**
+		 * Records can only be created with their canonical constructor, after all components have been read.
+		 */
+		private Object readRecord() throws IOException {
+
+			ClassInfo info = readClass();
+			int handle = objects.size();
+			objects.add(PENDING);
+
+			Map<String, Object> values = new HashMap<>();
+			for (Field f : info.fields) {
+				values.put(f.getName(), f.getType().isPrimitive() ? readPrimitive(f.getType()) : read());
+			}
+
+			RecordComponent[] components = info.cls.getRecordComponents();
+			Class<?>[] types = new Class<?>[components.length];
+			Object[] args = new Object[components.length];
+			for (int i = 0; i < components.length; i++) {
+				types[i] = components[i].getType();
+				args[i] = values.get(components[i].getName());
+			}
+
+			try {
+				Constructor<?> constructor = info.cls.getDeclaredConstructor(types);
+				constructor.setAccessible(true);
+				Object o = constructor.newInstance(args);
+				objects.set(handle, o);
+				return o;
+			} catch (ReflectiveOperationException | IllegalArgumentException e) {
+				throw new IOException("Can not create record " + info.cls.getName(), e);
+			}
+		}
+
+		private Object readPrimitive(Class<?> type) throws IOException {
+			if (type == int.class)
+				return in.readInt();
+			if (type == long.class)
+				return in.readLong();
+			if (type == double.class)
+				return in.readDouble();
+			if (type == float.class)
+				return in.readFloat();
+			if (type == boolean.class)
+				return in.readBoolean();
+			if (type == short.class)
+				return in.readShort();
+			if (type == byte.class)
+				return in.readByte();
+			return in.readChar();
+		}
+
+		private Object readBoxed() throws IOException {
+			byte type = in.readByte();
+			return switch (type) {
+				case 0 -> in.readInt();
+				case 1 -> in.readLong();
+				case 2 -> in.readDouble();
+				case 3 -> in.readFloat();
+				case 4 -> in.readShort();
+				case 5 -> in.readByte();
+				case 6 -> in.readChar();
+				case 7 -> in.readBoolean();
+				default -> throw new IOException("Invalid boxed type " + type);
+			};
+		}
+
+		/**
+		 * Read a class reference and check that the field layout of new classes is the same as when writing.
+		 */
+		private ClassInfo readClass() throws IOException {
+
+			int idx = in.readInt();
+			if (idx < classes.size())
+				return classes.get(idx);
+
+			if (idx != classes.size())
+				throw new IOException("Invalid class index " + idx);
+
+			Class<?> cls = forName(readString());
+			Field[] fields = null;
+
+			if (in.readBoolean()) {
+				Field[] current = fields(cls);
+				if (current == null)
+					throw new IOException("Can not read objects of " + cls.getName());
+
+				Map<String, Field> byName = new HashMap<>();
+				for (Field f : current) {
+					byName.put(fieldName(f), f);
+				}
+
+				int n = in.readInt();
+				if (n != current.length)
+					throw new IOException("Fields of %s have changed".formatted(cls.getName()));
+
+				fields = new Field[n];
+				for (int i = 0; i < n; i++) {
+					String name = readString();
+					fields[i] = byName.get(name);
+					if (fields[i] == null)
+						throw new IOException("Field %s does not exist anymore".formatted(name));
+				}
+			}
+
+			ClassInfo info = new ClassInfo(cls, fields);
+			classes.add(info);
+			return info;
+		}
+
+		private String readString() throws IOException {
+			byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * Class and its fields in the order they were written.
+	 */
+	private record ClassInfo(Class<?> cls, Field[] fields) {
+	}
+}
@@ -0,0 +1,151 @@
+package org.matsim.run.cache;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.pt.transitSchedule.api.*;
+import org.matsim.vehicles.Vehicle;
+import org.matsim.vehicles.VehicleType;
+import org.matsim.vehicles.Vehicles;
+
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * References to the network, transit schedule and transit vehicles of a scenario, which are not written into an {@link ObjectGraph}.
+ * Objects are only referenced if they are the same instances as in the scenario, copies are written into the graph.
+ */
+public final class ScenarioReferences implements ObjectGraph.References {
+
+	private final Network network;
+	private final TransitSchedule schedule;
+	private final Vehicles vehicles;
+	private final Map<String, Object> named = new LinkedHashMap<>();
+
+	/**
+	 * Keys of schedule elements, which can only be looked up through their line and route.
+	 */
+	private Map<Object, String[]> scheduleKeys;
+
+	/**
+	 * Create references.
+	 *
+	 * @param schedule may be null
+	 * @param vehicles may be null
+	 */
+	public ScenarioReferences(Network network, TransitSchedule schedule, Vehicles vehicles) {
+		this.network = network;
+		this.schedule = schedule;
+		this.vehicles = vehicles;
+	}
+
+	/**
+	 * Reference another object under a fixed name, e.g. a shared component that is not part of the graph.
+	 */
+	public ScenarioReferences with(String name, Object object) {
+		named.put(name, object);
+		return this;
+	}
+
+	@Override
+	public String[] keyOf(Object o) {
+
+		for (Map.Entry<String, Object> e : named.entrySet()) {
+			if (e.getValue() == o)
+				return new String[]{"named", e.getKey()};
+		}
+
+		if (o == network)
+			return new String[]{"network"};
+		if (o instanceof Link l && network.getLinks().get(l.getId()) == o)
+			return new String[]{"link", l.getId().toString()};
+		if (o instanceof Node n && network.getNodes().get(n.getId()) == o)
+			return new String[]{"node", n.getId().toString()};
+
+		if (schedule != null) {
+			if (o == schedule)
+				return new String[]{"schedule"};
+			if (o instanceof TransitStopFacility f && schedule.getFacilities().get(f.getId()) == o)
+				return new String[]{"stop", f.getId().toString()};
+			if (o instanceof TransitLine || o instanceof TransitRoute || o instanceof TransitRouteStop || o instanceof Departure)
+				return scheduleKeys().get(o);
+		}
+
+		if (vehicles != null) {
+			if (o == vehicles)
+				return new String[]{"vehicles"};
+			if (o instanceof Vehicle v && vehicles.getVehicles().get(v.getId()) == o)
+				return new String[]{"vehicle", v.getId().toString()};
+			if (o instanceof VehicleType t && vehicles.getVehicleTypes().get(t.getId()) == o)
+				return new String[]{"vehicleType", t.getId().toString()};
+		}
+
+		return null;
+	}
+
+	@Override
+	public Object resolve(String[] key) {
+		return switch (key[0]) {
+			case "named" -> named.get(key[1]);
+			case "network" -> network;
+			case "link" -> network.getLinks().get(Id.createLinkId(key[1]));
+			case "node" -> network.getNodes().get(Id.createNodeId(key[1]));
+			case "schedule" -> schedule;
+			case "stop" -> schedule.getFacilities().get(Id.create(key[1], TransitStopFacility.class));
+			case "line" -> schedule.getTransitLines().get(Id.create(key[1], TransitLine.class));
+			case "route", "routeStop", "departure" -> resolveRouteElement(key);
+			case "vehicles" -> vehicles;
+			case "vehicle" -> vehicles.getVehicles().get(Id.createVehicleId(key[1]));
+			case "vehicleType" -> vehicles.getVehicleTypes().get(Id.create(key[1], VehicleType.class));
+			default -> null;
+		};
+	}
+
+	private Object resolveRouteElement(String[] key) {
+
+		TransitLine line = schedule.getTransitLines().get(Id.create(key[1], TransitLine.class));
+		TransitRoute route = line == null ? null : line.getRoutes().get(Id.create(key[2], TransitRoute.class));
+		if (route == null)
+			return null;
+
+		return switch (key[0]) {
+			case "route" -> route;
+			case "routeStop" -> {
+				List<TransitRouteStop> stops = route.getStops();
+				int idx = Integer.parseInt(key[3]);
+				yield idx < stops.size() ? stops.get(idx) : null;
+			}
+			default -> route.getDepartures().get(Id.create(key[3], Departure.class));
+		};
+	}
+
+	private Map<Object, String[]> scheduleKeys() {
+		if (scheduleKeys != null)
+			return scheduleKeys;
+
+		scheduleKeys = new IdentityHashMap<>();
+		for (TransitLine line : schedule.getTransitLines().values()) {
+			String lineId = line.getId().toString();
+			scheduleKeys.put(line, new String[]{"line", lineId});
+
+			for (TransitRoute route : line.getRoutes().values()) {
+				String routeId = route.getId().toString();
+				scheduleKeys.put(route, new String[]{"route", lineId, routeId});
+
+				List<TransitRouteStop> stops = route.getStops();
+				for (int i = 0; i < stops.size(); i++) {
+					scheduleKeys.put(stops.get(i), new String[]{"routeStop", lineId, routeId, String.valueOf(i)});
+				}
+
+				for (Departure departure : route.getDepartures().values()) {
+					scheduleKeys.put(departure, new String[]{"departure", lineId, routeId, departure.getId().toString()});
+				}
+			}
+		}
+
+		return scheduleKeys;
+	}
+}
@@ -0,0 +1,62 @@
+package org.matsim.run.check;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.application.MATSimAppCommand;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import picocli.CommandLine;
+
+import java.nio.file.Path;
+
+@CommandLine.Command(
+	name = "check-scenario",
+	description = "Check plans against network, facilities, transit schedule and configured modes, without routing or simulating."
+)
+public class CheckScenario implements MATSimAppCommand {
+
+	private static final Logger log = LogManager.getLogger(CheckScenario.class);
+
+	@CommandLine.Option(names = "--config", description = "Path to the scenario config", required = true)
+	private String configPath;
+
+	@CommandLine.Option(names = "--plans", description = "Use a different plans file than given in the config. Relative to the config.")
+	private String plans;
+
+	@CommandLine.Option(names = "--output", description = "Path to csv report of all issues")
+	private Path output;
+
+	@CommandLine.Option(names = "--threads", description = "Number of threads", defaultValue = "8")
+	private int threads;
+
+	public static void main(String[] args) {
+		new CheckScenario().execute(args);
+	}
+
+	@Override
+	public Integer call() throws Exception {
+
+		Config config = ConfigUtils.loadConfig(configPath);
+
+		if (plans != null)
+			config.plans().setInputFile(plans);
+
+		Scenario scenario = ScenarioUtils.loadScenario(config);
+
+		ScenarioCheck.Report report = ScenarioCheck.check(scenario, threads);
+
+		if (output != null)
+			report.write(output);
+
+		if (report.isEmpty()) {
+			log.info(report.summary());
+			return 0;
+		}
+
+		log.error(report.summary());
+		return 1;
+	}
+
+}
@@ -0,0 +1,243 @@
+package org.matsim.run.check;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.*;
+import org.matsim.core.config.Config;
+import org.matsim.core.population.PersonUtils;
+import org.matsim.core.population.algorithms.ParallelPersonAlgorithmUtils;
+import org.matsim.core.population.algorithms.PersonAlgorithm;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.router.TripStructureUtils;
+import org.matsim.facilities.ActivityFacilities;
+import org.matsim.pt.routes.TransitPassengerRoute;
+import org.matsim.pt.transitSchedule.api.TransitLine;
+import org.matsim.pt.transitSchedule.api.TransitRoute;
+import org.matsim.pt.transitSchedule.api.TransitSchedule;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Checks all plans of a scenario against the network, facilities, transit schedule and configured modes, before any routing or simulation.
+ * Persons are checked in parallel, only reading the scenario.
+ */
+public final class ScenarioCheck implements PersonAlgorithm {
+
+	/**
+	 * Number of example persons stored per issue.
+	 */
+	private static final int EXAMPLES = 10;
+
+	/**
+	 * Modes that are routed with the travel times of another network mode, see {@link org.matsim.run.OpenKyotoScenario.TravelTimeBinding}.
+	 */
+	private static final Map<String, String> NETWORK_MODES = Map.of(
+		TransportMode.ride, TransportMode.car,
+		"freight", TransportMode.truck
+	);
+
+	private final Network network;
+	private final ActivityFacilities facilities;
+	private final TransitSchedule schedule;
+	private final Set<String> modes = new HashSet<>();
+	private final Set<String> networkModes = new HashSet<>();
+	private final Report report = new Report();
+
+	private ScenarioCheck(Scenario scenario) {
+		this.network = scenario.getNetwork();
+		this.facilities = scenario.getActivityFacilities();
+		this.schedule = scenario.getConfig().transit().isUseTransit() ? scenario.getTransitSchedule() : null;
+
+		Config config = scenario.getConfig();
+		modes.add(TransportMode.walk);
+		modes.addAll(config.routing().getNetworkModes());
+		networkModes.addAll(config.routing().getNetworkModes());
+		modes.addAll(config.routing().getTeleportedModeParams().keySet());
+		modes.addAll(config.qsim().getMainModes());
+		if (schedule != null) {
+			modes.add(TransportMode.pt);
+			modes.addAll(config.transit().getTransitModes());
+		}
+	}
+
+	/**
+	 * Check all persons of the scenario.
+	 */
+	public static Report check(Scenario scenario, int threads) {
+		ScenarioCheck check = new ScenarioCheck(scenario);
+		ParallelPersonAlgorithmUtils.run(scenario.getPopulation(), threads, check);
+		check.report.persons.set(scenario.getPopulation().getPersons().size());
+		return check.report;
+	}
+
+	@Override
+	public void run(Person person) {
+
+		if (person.getSelectedPlan() == null) {
+			report.add("no_selected_plan", person, "");
+			return;
+		}
+
+		boolean car = !"never".equals(PersonUtils.getCarAvail(person));
+
+		for (Plan plan : person.getPlans()) {
+
+			List<PlanElement> elements = plan.getPlanElements();
+			if (elements.isEmpty() || !(elements.get(0) instanceof Activity) || !(elements.get(elements.size() - 1) instanceof Activity)) {
+				report.add("invalid_plan_structure", person, "plan must start and end with an activity");
+				continue;
+			}
+
+			for (int i = 0; i < elements.size(); i++) {
+				PlanElement el = elements.get(i);
+
+				// Activities and legs need to alternate
+				if (i > 0 && (el instanceof Activity) == (elements.get(i - 1) instanceof Activity)) {
+					report.add("invalid_plan_structure", person, "consecutive " + (el instanceof Activity ? "activities" : "legs"));
+				}
+
+				if (el instanceof Activity act)
+					checkActivity(person, act, i + 1 < elements.size() && elements.get(i + 1) instanceof Leg next ? next : null);
+				else if (el instanceof Leg leg)
+					checkLeg(person, leg, car);
+			}
+		}
+	}
+
+	/**
+	 * Check the location of an activity. Stage activities are checked against the mode of the following leg, all others against the car network.
+	 */
+	private void checkActivity(Person person, Activity act, Leg next) {
+
+		if (act.getCoord() == null && act.getLinkId() == null && act.getFacilityId() == null)
+			report.add("activity_without_location", person, act.getType());
+
+		// Facilities are only checked if they have been loaded
+		if (act.getFacilityId() != null && !facilities.getFacilities().isEmpty() && !facilities.getFacilities().containsKey(act.getFacilityId()))
+			report.add("missing_facility", person, act.getFacilityId().toString());
+
+		if (act.getLinkId() != null) {
+			Link link = network.getLinks().get(act.getLinkId());
+			if (link == null)
+				report.add("missing_activity_link", person, act.getLinkId().toString());
+			else if (!TripStructureUtils.isStageActivityType(act.getType())) {
+				if (!link.getAllowedModes().contains(TransportMode.car))
+					report.add("activity_link_not_in_car_network", person, act.getLinkId().toString());
+			} else if (next != null) {
+				// Stages of other modes, e.g. pt interactions at stops, may be located on any link
+				String mode = Objects.requireNonNullElse(TripStructureUtils.getRoutingMode(next), next.getMode());
+				if (networkModes.contains(mode) && !isAllowed(link, mode))
+					report.add("stage_activity_link_mode_not_allowed", person, act.getLinkId() + " " + mode);
+			}
+		}
+	}
+
+	private void checkLeg(Person person, Leg leg, boolean car) {
+
+		String mode = leg.getMode();
+		if (!modes.contains(mode))
+			report.add("unknown_mode", person, mode);
+
+		if (mode.equals(TransportMode.car) && !car)
+			report.add("car_leg_without_car_availability", person, "");
+
+		Route route = leg.getRoute();
+		if (route == null)
+			return;
+
+		if (route instanceof NetworkRoute r) {
+			for (Id<Link> id : r.getLinkIds()) {
+				Link link = network.getLinks().get(id);
+				if (link == null) {
+					report.add("missing_route_link", person, id.toString());
+					break;
+				}
+				if (!isAllowed(link, mode)) {
+					report.add("route_link_mode_not_allowed", person, id + " " + mode);
+					break;
+				}
+			}
+		} else if (route instanceof TransitPassengerRoute r && schedule != null) {
+			TransitLine line = schedule.getTransitLines().get(r.getLineId());
+			TransitRoute transitRoute = line == null ? null : line.getRoutes().get(r.getRouteId());
+			if (transitRoute == null)
+				report.add("missing_transit_route", person, r.getLineId() + " " + r.getRouteId());
+			else if (!schedule.getFacilities().containsKey(r.getAccessStopId()) || !schedule.getFacilities().containsKey(r.getEgressStopId()))
+				report.add("missing_transit_stop", person, r.getAccessStopId() + " " + r.getEgressStopId());
+		}
+	}
+
+	/**
+	 * Whether the link can be used by a mode, either directly or by the network mode it is routed with.
+	 */
+	private static boolean isAllowed(Link link, String mode) {
+		Set<String> allowed = link.getAllowedModes();
+		return allowed.contains(mode) || allowed.contains(NETWORK_MODES.getOrDefault(mode, mode));
+	}
+
+	/**
+	 * Number of plan elements with each issue and a few example persons. Each issue is counted at most once per element.
+	 */
+	public static final class Report {
+
+		private final Map<String, LongAdder> counts = new ConcurrentSkipListMap<>();
+		private final Map<String, Queue<String>> examples = new ConcurrentHashMap<>();
+		private final AtomicInteger persons = new AtomicInteger();
+
+		private void add(String issue, Person person, String detail) {
+			counts.computeIfAbsent(issue, k -> new LongAdder()).increment();
+
+			Queue<String> queue = examples.computeIfAbsent(issue, k -> new ConcurrentLinkedQueue<>());
+			// Might store slightly more examples when called concurrently, which is not a problem
+			if (queue.size() < EXAMPLES)
+				queue.add(detail.isBlank() ? person.getId().toString() : person.getId() + ": " + detail);
+		}
+
+		/**
+		 * Whether no issues were found.
+		 */
+		public boolean isEmpty() {
+			return counts.isEmpty();
+		}
+
+		/**
+		 * Human-readable summary, one line per issue.
+		 */
+		public String summary() {
+			StringBuilder b = new StringBuilder("Checked %d persons: ".formatted(persons.get()));
+			if (counts.isEmpty())
+				return b.append("no issues found").toString();
+
+			b.append("found issues");
+			counts.forEach((issue, n) -> b.append("\n\t").append(issue).append(": ").append(n.sum())
+				.append(" (e.g. ").append(String.join(", ", examples.get(issue))).append(")"));
+
+			return b.toString();
+		}
+
+		/**
+		 * Write issues with their count and examples as csv.
+		 */
+		public void write(Path path) throws IOException {
+			try (CSVPrinter csv = new CSVPrinter(Files.newBufferedWriter(path), CSVFormat.DEFAULT)) {
+				csv.printRecord("issue", "count", "examples");
+				for (Map.Entry<String, LongAdder> e : counts.entrySet()) {
+					csv.printRecord(e.getKey(), e.getValue().sum(), String.join(";", examples.get(e.getKey())));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,228 @@
+package org.matsim.run.checkpoint;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.config.Config;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.run.snapshot.SnapshotReader;
+import org.matsim.run.snapshot.SnapshotWriter;
+import org.matsim.run.traveltime.CompactTravelTime;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.function.ToIntFunction;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * State of a run after the replanning of an iteration: plans with scores, the number of MSA contributions of each plan,
+ * the observed travel times and the random seed, from which the random number generator is reset in each iteration.
+ * A resumed run starts with this iteration, for which MATSim does not replan, because it is the first one, and continues with its mobsim.
+ */
+public final class Checkpoint {
+
+	static final String FILE = "checkpoint.bin";
+
+	private static final Logger log = LogManager.getLogger(Checkpoint.class);
+
+	private static final int MAGIC = 0x4B594F43;
+	private static final int VERSION = 4;
+
+	private final Path path;
+
+	/**
+	 * Iteration at which the run continues, its replanning is already contained.
+	 */
+	final int iteration;
+	final long seed;
+
+	/**
+	 * Absolute iterations at which score averaging starts and innovation stops in the original run.
+	 */
+	final int msaStart;
+	final int innovationStop;
+
+	/**
+	 * Serialized travel times per mode and MSA contributions per plan, available after {@link #loadPopulation(Population)}.
+	 */
+	final Map<String, byte[]> travelTimes = new LinkedHashMap<>();
+	final Map<Plan, Integer> contributions = new IdentityHashMap<>();
+
+	private Checkpoint(Path path, int iteration, long seed, int msaStart, int innovationStop) {
+		this.path = path;
+		this.iteration = iteration;
+		this.seed = seed;
+		this.msaStart = msaStart;
+		this.innovationStop = innovationStop;
+	}
+
+	/**
+	 * Default location of the checkpoint in the output directory of a run.
+	 */
+	public static Path path(Config config) {
+		String runId = config.controller().getRunId();
+		return Path.of(config.controller().getOutputDirectory(), runId == null || runId.isBlank() ? FILE : runId + "." + FILE);
+	}
+
+	/**
+	 * Absolute iteration that results from a fraction of iterations.
+	 */
+	static int absoluteIteration(Config config, Double fraction) {
+		if (fraction == null || !Double.isFinite(fraction))
+			return Integer.MAX_VALUE;
+
+		int first = config.controller().getFirstIteration();
+		return (int) ((config.controller().getLastIteration() - first) * fraction + first);
+	}
+
+	/**
+	 * Read the header of a checkpoint. The rest is read by {@link #loadPopulation(Population)}.
+	 */
+	public static Checkpoint read(Path path) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				throw new IOException(path + " is not a checkpoint of the current version.");
+
+			return new Checkpoint(path, in.readInt(), in.readLong(), in.readInt(), in.readInt());
+		}
+	}
+
+	/**
+	 * Write a checkpoint atomically, an existing checkpoint is only replaced once the new one is complete.
+	 */
+	static void write(Path path, int iteration, Config config, int msaStart, int innovationStop, Population population,
+					  ToIntFunction<Plan> contributions, Map<String, CompactTravelTime> travelTimes) throws IOException {
+
+		Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+
+		try (DataOutputStream header = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+
+			header.writeInt(MAGIC);
+			header.writeInt(VERSION);
+			header.writeInt(iteration);
+			header.writeLong(config.global().getRandomSeed());
+			header.writeInt(msaStart);
+			header.writeInt(innovationStop);
+
+			Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(header, deflater, 1 << 16), 1 << 16))) {
+
+				out.writeInt(travelTimes.size());
+				for (Map.Entry<String, CompactTravelTime> e : travelTimes.entrySet()) {
+					ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+					try (DataOutputStream tt = new DataOutputStream(bytes)) {
+						e.getValue().write(tt);
+					}
+
+					out.writeUTF(e.getKey());
+					out.writeInt(bytes.size());
+					bytes.writeTo(out);
+				}
+
+				// The snapshot writer does not buffer, so it can share the stream
+				new SnapshotWriter(out).writePopulation(population);
+
+				// Contributions are stored in the same order as the persons and plans
+				for (Person person : population.getPersons().values()) {
+					for (Plan plan : person.getPlans()) {
+						out.writeInt(contributions.applyAsInt(plan));
+					}
+				}
+
+			} finally {
+				deflater.end();
+			}
+		}
+
+		Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Adjust the config so that the run continues at the checkpoint with the same schedule of score averaging and innovation.
+	 * MATSim computes these from fractions relative to the first iteration, which is changed here.
+	 */
+	public void apply(Config config) {
+
+		if (config.global().getRandomSeed() != seed)
+			throw new IllegalArgumentException("Checkpoint was created with random seed %d, but config uses %d.".formatted(seed, config.global().getRandomSeed()));
+
+		int first = iteration;
+		int last = config.controller().getLastIteration();
+
+		if (first > last)
+			throw new IllegalArgumentException("Checkpoint of iteration %d is after the last iteration %d.".formatted(iteration, last));
+
+		config.controller().setFirstIteration(first);
+
+		// Earlier iterations of the run should be kept
+		config.controller().setOverwriteFileSetting(OutputDirectoryHierarchy.OverwriteFileSetting.overwriteExistingFiles);
+
+		if (msaStart != Integer.MAX_VALUE)
+			config.scoring().setFractionOfIterationsToStartScoreMSA(fraction(msaStart, first, last));
+
+		if (innovationStop != Integer.MAX_VALUE)
+			config.replanning().setFractionOfIterationsToDisableInnovation(fraction(innovationStop, first, last));
+
+		log.info("Resuming from checkpoint {} at iteration {}", path, first);
+	}
+
+	/**
+	 * Fraction that results in the given absolute iteration. An iteration that has already been passed results in 0,
+	 * i.e. the first iteration, because negative fractions are not valid.
+	 */
+	private static double fraction(int absolute, int first, int last) {
+		if (absolute <= first)
+			return 0;
+
+		if (last == first)
+			return 1;
+
+		return Math.min(1, (absolute - first + 0.5) / (last - first));
+	}
+
+	/**
+	 * Add the persons stored in the checkpoint to a population, which should be loaded without the input plans.
+	 * Persons are stored in the order of the original input, so that their ids are created in the same order.
+	 */
+	public void loadPopulation(Population population) throws IOException {
+
+		if (!population.getPersons().isEmpty())
+			throw new IllegalArgumentException("Population already contains %d persons, the checkpoint replaces the input plans.".formatted(population.getPersons().size()));
+
+		try (DataInputStream header = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+
+			// Header has already been read
+			header.skipNBytes(4 + 4 + 4 + 8 + 4 + 4);
+
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(header), 1 << 16));
+
+			int n = in.readInt();
+			for (int i = 0; i < n; i++) {
+				String mode = in.readUTF();
+				byte[] bytes = new byte[in.readInt()];
+				in.readFully(bytes);
+				travelTimes.put(mode, bytes);
+			}
+
+			new SnapshotReader(in).readPopulation(population);
+
+			for (Person person : population.getPersons().values()) {
+				for (Plan plan : person.getPlans()) {
+					int c = in.readInt();
+					if (c > 0)
+						contributions.put(plan, c);
+				}
+			}
+		}
+
+		log.info("Loaded {} persons from checkpoint of iteration {}", population.getPersons().size(), iteration);
+	}
+
+}
@@ -0,0 +1,181 @@
+package org.matsim.run.checkpoint;
+
+import jakarta.inject.Inject;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.config.Config;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.controler.events.*;
+import org.matsim.core.controler.listener.ReplanningListener;
+import org.matsim.core.controler.listener.ScoringListener;
+import org.matsim.core.controler.listener.StartupListener;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.run.traveltime.CompactTravelTime;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Writes checkpoints periodically and restores the state of a run from a checkpoint.
+ * <p>
+ * Checkpoints are written after the replanning, so that the resumed run can start with the mobsim of that iteration,
+ * as MATSim does not replan in the first iteration. The random generator is reset by {@link ReseedListener} instead of being stored.
+ * <p>
+ * MATSim's score averaging counts the contributions of each plan internally. These counts are tracked here as well,
+ * so that the averaged scores of a resumed run can be corrected to what the uninterrupted run would have computed.
+ * This listener has a low priority, so that it is notified after the replanning and scoring of the core listeners.
+ */
+final class CheckpointListener implements StartupListener, ReplanningListener, ScoringListener {
+
+	private static final Logger log = LogManager.getLogger(CheckpointListener.class);
+
+	private static final double PRIORITY = -1000;
+
+	private final int interval;
+	private final Checkpoint resume;
+
+	/**
+	 * Contributions to the averaged score of each plan.
+	 */
+	private final Map<Plan, Contribution> contributions = new WeakHashMap<>();
+
+	@Inject
+	private Population population;
+
+	@Inject
+	private Config config;
+
+	@Inject
+	private OutputDirectoryHierarchy output;
+
+	@Inject
+	private Map<String, TravelTime> travelTimes;
+
+	private int msaStart;
+	private int innovationStop;
+
+	CheckpointListener(int interval, Checkpoint resume) {
+		this.interval = interval;
+		this.resume = resume;
+	}
+
+	@Override
+	public double priority() {
+		return PRIORITY;
+	}
+
+	@Override
+	public void notifyStartup(StartupEvent event) {
+
+		if (resume == null) {
+			msaStart = Checkpoint.absoluteIteration(config, config.scoring().getFractionOfIterationsToStartScoreMSA());
+			innovationStop = Checkpoint.absoluteIteration(config, config.replanning().getFractionOfIterationsToDisableInnovation());
+			return;
+		}
+
+		msaStart = resume.msaStart;
+		innovationStop = resume.innovationStop;
+
+		for (Map.Entry<Plan, Integer> e : resume.contributions.entrySet()) {
+			contributions.put(e.getKey(), new Contribution(e.getValue(), e.getKey().getScore()));
+		}
+
+		for (Map.Entry<String, byte[]> e : resume.travelTimes.entrySet()) {
+			if (!(travelTimes.get(e.getKey()) instanceof CompactTravelTime tt))
+				throw new IllegalStateException("Travel times of mode %s can not be restored, compact travel times are required.".formatted(e.getKey()));
+
+			try {
+				tt.read(new DataInputStream(new ByteArrayInputStream(e.getValue())));
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+		}
+	}
+
+	@Override
+	public void notifyReplanning(ReplanningEvent event) {
+
+		// The checkpoint contains the state after the previous iteration and the replanning of this one
+		if (interval <= 0 || (event.getIteration() - 1) % interval != 0)
+			return;
+
+		Map<String, CompactTravelTime> tt = new LinkedHashMap<>();
+		for (Map.Entry<String, TravelTime> e : travelTimes.entrySet()) {
+			// Aliased modes share an instance, which needs to be stored once
+			if (e.getValue() instanceof CompactTravelTime c && !tt.containsValue(c))
+				tt.put(e.getKey(), c);
+		}
+
+		Path path = Path.of(output.getOutputFilename(Checkpoint.FILE));
+		try {
+			Checkpoint.write(path, event.getIteration(), config, msaStart, innovationStop, population,
+				plan -> contributions.containsKey(plan) ? contributions.get(plan).total() : 0, tt);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		log.info("Written checkpoint of iteration {} to {}", event.getIteration(), path);
+	}
+
+	@Override
+	public void notifyScoring(ScoringEvent event) {
+
+		if (event.getIteration() < msaStart)
+			return;
+
+		for (Person person : population.getPersons().values()) {
+			Plan plan = person.getSelectedPlan();
+			if (plan == null || plan.getScore() == null)
+				continue;
+
+			contributions.computeIfAbsent(plan, k -> new Contribution(0, Double.NaN)).update(plan);
+		}
+	}
+
+	/**
+	 * Contributions of a plan before the checkpoint and afterward, which MATSim counts from zero again.
+	 */
+	private static final class Contribution {
+
+		private final int offset;
+		private int count;
+		private double previous;
+
+		private Contribution(int offset, double previous) {
+			this.offset = offset;
+			this.previous = previous;
+		}
+
+		int total() {
+			return offset + count;
+		}
+
+		/**
+		 * Called after MATSim has assigned the new score, which is corrected if contributions before the checkpoint are missing.
+		 */
+		void update(Plan plan) {
+
+			if (offset > 0) {
+				// Undo MATSim's averaging over the contributions since the checkpoint and average over all instead
+				double score = plan.getScore();
+				double raw = (count + 1) * score - count * previous;
+				int n = offset + count;
+
+				score = 1.0 / (n + 1) * raw + n / (n + 1.0) * previous;
+				plan.setScore(score);
+				previous = score;
+			}
+
+			count++;
+		}
+	}
+}
@@ -0,0 +1,31 @@
+package org.matsim.run.checkpoint;
+
+import org.matsim.core.controler.AbstractModule;
+
+/**
+ * Writes checkpoints every given number of iterations and restores a run from a checkpoint.
+ * Requires {@link org.matsim.run.traveltime.CompactTravelTimeModule}, because MATSim's own travel times can not be restored.
+ * {@link org.matsim.core.gbl.MatsimRandom} is reset in each iteration, see {@link ReseedListener} for what is reproduced.
+ */
+public final class CheckpointModule extends AbstractModule {
+
+	private final int interval;
+	private final Checkpoint resume;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param interval checkpoint interval, 0 to disable writing
+	 * @param resume   checkpoint to resume from, or null
+	 */
+	public CheckpointModule(int interval, Checkpoint resume) {
+		this.interval = interval;
+		this.resume = resume;
+	}
+
+	@Override
+	public void install() {
+		addControlerListenerBinding().toInstance(new CheckpointListener(interval, resume));
+		addControlerListenerBinding().toInstance(new ReseedListener(resume != null ? resume.seed : getConfig().global().getRandomSeed()));
+	}
+}
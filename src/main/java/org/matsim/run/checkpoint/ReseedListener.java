@@ -0,0 +1,44 @@
+package org.matsim.run.checkpoint;
+
+import org.matsim.core.controler.events.BeforeMobsimEvent;
+import org.matsim.core.controler.events.IterationStartsEvent;
+import org.matsim.core.controler.listener.BeforeMobsimListener;
+import org.matsim.core.controler.listener.IterationStartsListener;
+import org.matsim.core.gbl.MatsimRandom;
+
+/**
+ * Resets {@link MatsimRandom} at the start of each iteration and again before the mobsim, with seeds derived from the
+ * random seed of the run and the iteration. A resumed run starts without replanning, so the second reset is needed
+ * for the mobsim to see the same state as in the uninterrupted run.
+ * <p>
+ * Only the shared generator and local instances created after a reset are reproduced. Generators that modules and
+ * strategies obtained earlier, e.g. at startup, continue their own sequence and are not part of a checkpoint.
+ * Runs with checkpoints therefore draw different numbers than runs without, and a resumed run is only equal to
+ * the uninterrupted one as far as such generators are not used.
+ * This listener has a high priority, so that the reset happens before other listeners draw numbers.
+ */
+final class ReseedListener implements IterationStartsListener, BeforeMobsimListener {
+
+	private static final double PRIORITY = 1000;
+
+	private final long seed;
+
+	ReseedListener(long seed) {
+		this.seed = seed;
+	}
+
+	@Override
+	public double priority() {
+		return PRIORITY;
+	}
+
+	@Override
+	public void notifyIterationStarts(IterationStartsEvent event) {
+		MatsimRandom.reset(seed + 2L * event.getIteration());
+	}
+
+	@Override
+	public void notifyBeforeMobsim(BeforeMobsimEvent event) {
+		MatsimRandom.reset(seed + 2L * event.getIteration() + 1);
+	}
+}
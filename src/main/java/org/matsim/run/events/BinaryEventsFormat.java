@@ -0,0 +1,64 @@
+package org.matsim.run.events;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Constants and variable length integer encoding of the binary events format.
+ * <p>
+ * A file consists of a header and chunks of events. Each chunk stores the events column-wise in separately deflated blocks:
+ * new entries of the string dictionary, times, event types, attribute keys and attribute values.
+ * Ids, types and keys are references into the dictionary, which grows over the whole file.
+ * <p>
+ * The lowest bit of the type marks core events, whose fields are written to the value column in a fixed order per type.
+ * Other events are written as attributes, where numeric values are stored as numbers if they can be formatted back to exactly the same string.
+ */
+final class BinaryEventsFormat {
+
+	static final int MAGIC = 0x4B594F45;
+	static final int VERSION = 2;
+
+	/**
+	 * Number of events per chunk.
+	 */
+	static final int CHUNK_SIZE = 1 << 16;
+
+	static final int COLUMNS = 5;
+
+	static final byte V_STRING = 0;
+	static final byte V_LONG = 1;
+	static final byte V_DOUBLE = 2;
+
+	private BinaryEventsFormat() {
+	}
+
+	static void writeVarLong(DataOutput out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	static long readVarLong(DataInput in) throws IOException {
+		long value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = in.readByte();
+			value |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+
+		return value;
+	}
+
+	static long zigZag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	static long unZigZag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+}
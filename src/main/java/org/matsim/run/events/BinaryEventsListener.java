@@ -0,0 +1,72 @@
+package org.matsim.run.events;
+
+import jakarta.inject.Inject;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.config.Config;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.controler.events.AfterMobsimEvent;
+import org.matsim.core.controler.events.BeforeMobsimEvent;
+import org.matsim.core.controler.events.ShutdownEvent;
+import org.matsim.core.controler.listener.AfterMobsimListener;
+import org.matsim.core.controler.listener.BeforeMobsimListener;
+import org.matsim.core.controler.listener.ShutdownListener;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Writes binary events in the same iterations as the xml events and copies the last ones into the output directory.
+ */
+final class BinaryEventsListener implements BeforeMobsimListener, AfterMobsimListener, ShutdownListener {
+
+	static final String FILE = "events.bin";
+
+	@Inject
+	private EventsManager events;
+
+	@Inject
+	private Config config;
+
+	@Inject
+	private OutputDirectoryHierarchy output;
+
+	private BinaryEventsWriter writer;
+	private Path last;
+
+	@Override
+	public void notifyBeforeMobsim(BeforeMobsimEvent event) {
+
+		int interval = config.controller().getWriteEventsInterval();
+		if (!event.isLastIteration() && (interval <= 0 || event.getIteration() % interval != 0))
+			return;
+
+		last = Path.of(output.getIterationFilename(event.getIteration(), FILE));
+		writer = new BinaryEventsWriter(last);
+		events.addHandler(writer);
+	}
+
+	@Override
+	public void notifyAfterMobsim(AfterMobsimEvent event) {
+		if (writer != null) {
+			events.removeHandler(writer);
+			writer.closeFile();
+			writer = null;
+		}
+	}
+
+	@Override
+	public void notifyShutdown(ShutdownEvent event) {
+
+		if (last == null || event.isUnexpected())
+			return;
+
+		try {
+			Files.copy(last, Path.of(output.getOutputFilename("output_" + FILE)), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -0,0 +1,13 @@
+package org.matsim.run.events;
+
+import org.matsim.core.controler.AbstractModule;
+
+/**
+ * Writes events additionally in the binary format of {@link BinaryEventsWriter}.
+ */
+public final class BinaryEventsModule extends AbstractModule {
+	@Override
+	public void install() {
+		addControlerListenerBinding().to(BinaryEventsListener.class);
+	}
+}
@@ -0,0 +1,195 @@
+package org.matsim.run.events;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.*;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.EventsReaderXMLv1;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.vehicles.Vehicle;
+import org.xml.sax.helpers.AttributesImpl;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Stack;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static org.matsim.run.events.BinaryEventsFormat.*;
+
+/**
+ * Reads events written by {@link BinaryEventsWriter} chunk by chunk and passes them to an {@link EventsManager}.
+ * Core events of the mobsim are constructed directly from the decoded values. All other events are created by MATSim's
+ * xml events reader from their attributes, so that all event types, including custom ones, are created exactly as when
+ * reading xml events. As with {@link org.matsim.core.events.MatsimEventsReader},
+ * {@link EventsManager#initProcessing()} and {@link EventsManager#finishProcessing()} need to be called by the user.
+ */
+public final class BinaryEventsReader {
+
+	private static final String EVENT = "event";
+
+	private final EventsManager events;
+	private final EventsReaderXMLv1 delegate;
+	private final Stack<String> context = new Stack<>();
+	private final List<String> dictionary = new ArrayList<>();
+
+	public BinaryEventsReader(EventsManager events) {
+		this.events = events;
+		this.delegate = new EventsReaderXMLv1(events);
+	}
+
+	/**
+	 * Whether a file is written in the binary events format.
+	 */
+	public static boolean isBinary(Path path) {
+		try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+			return in.readInt() == MAGIC;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Read all events of a file.
+	 */
+	public void readFile(Path path) {
+
+		dictionary.clear();
+		dictionary.add(null);
+
+		Inflater inflater = new Inflater();
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+
+			if (in.readInt() != MAGIC)
+				throw new IOException(path + " is not a binary events file.");
+
+			int version = in.readInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported version %d of binary events file %s".formatted(version, path));
+
+			int n;
+			while ((n = in.readInt()) > 0) {
+				readChunk(in, n, inflater);
+			}
+
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	private void readChunk(DataInputStream in, int n, Inflater inflater) throws IOException {
+
+		int newStrings = in.readInt();
+
+		DataInputStream[] columns = new DataInputStream[COLUMNS];
+		for (int i = 0; i < COLUMNS; i++) {
+			byte[] raw = new byte[in.readInt()];
+			byte[] compressed = new byte[in.readInt()];
+			in.readFully(compressed);
+
+			inflater.reset();
+			inflater.setInput(compressed);
+			try {
+				int length = 0;
+				while (length < raw.length)
+					length += inflater.inflate(raw, length, raw.length - length);
+			} catch (DataFormatException e) {
+				throw new IOException(e);
+			}
+
+			columns[i] = new DataInputStream(new ByteArrayInputStream(raw));
+		}
+
+		DataInputStream strings = columns[0];
+		DataInputStream times = columns[1];
+		DataInputStream types = columns[2];
+		DataInputStream keys = columns[3];
+		DataInputStream values = columns[4];
+
+		for (int i = 0; i < newStrings; i++) {
+			byte[] bytes = new byte[(int) readVarLong(strings)];
+			strings.readFully(bytes);
+			dictionary.add(new String(bytes, StandardCharsets.UTF_8));
+		}
+
+		AttributesImpl atts = new AttributesImpl();
+
+		for (int i = 0; i < n; i++) {
+
+			double time = times.readDouble();
+			long type = readVarLong(types);
+
+			if ((type & 1) != 0) {
+				events.processEvent(readFields(dictionary.get((int) (type >>> 1)), time, values));
+				continue;
+			}
+
+			atts.clear();
+			atts.addAttribute("", "", Event.ATTRIBUTE_TIME, "CDATA", Double.toString(time));
+			atts.addAttribute("", "", Event.ATTRIBUTE_TYPE, "CDATA", dictionary.get((int) (type >>> 1)));
+
+			int attributes = (int) readVarLong(keys);
+			for (int j = 0; j < attributes; j++) {
+				String key = dictionary.get((int) readVarLong(keys));
+				atts.addAttribute("", "", key, "CDATA", readValue(values));
+			}
+
+			delegate.startTag(EVENT, atts, context);
+		}
+	}
+
+	/**
+	 * Create a core event from the fields written by {@link BinaryEventsWriter}.
+	 */
+	private Event readFields(String type, double time, DataInputStream in) throws IOException {
+		return switch (type) {
+			case LinkEnterEvent.EVENT_TYPE -> new LinkEnterEvent(time, readId(in, Vehicle.class), readId(in, Link.class));
+			case LinkLeaveEvent.EVENT_TYPE -> new LinkLeaveEvent(time, readId(in, Vehicle.class), readId(in, Link.class));
+			case VehicleEntersTrafficEvent.EVENT_TYPE -> new VehicleEntersTrafficEvent(time, readId(in, Person.class), readId(in, Link.class),
+				readId(in, Vehicle.class), readString(in), in.readDouble());
+			case VehicleLeavesTrafficEvent.EVENT_TYPE -> new VehicleLeavesTrafficEvent(time, readId(in, Person.class), readId(in, Link.class),
+				readId(in, Vehicle.class), readString(in), in.readDouble());
+			case PersonDepartureEvent.EVENT_TYPE -> new PersonDepartureEvent(time, readId(in, Person.class), readId(in, Link.class),
+				readString(in), readString(in));
+			case PersonArrivalEvent.EVENT_TYPE -> new PersonArrivalEvent(time, readId(in, Person.class), readId(in, Link.class), readString(in));
+			case ActivityStartEvent.EVENT_TYPE -> new ActivityStartEvent(time, readId(in, Person.class), readId(in, Link.class),
+				readId(in, ActivityFacility.class), readString(in), readCoord(in));
+			case ActivityEndEvent.EVENT_TYPE -> new ActivityEndEvent(time, readId(in, Person.class), readId(in, Link.class),
+				readId(in, ActivityFacility.class), readString(in), readCoord(in));
+			case PersonEntersVehicleEvent.EVENT_TYPE -> new PersonEntersVehicleEvent(time, readId(in, Person.class), readId(in, Vehicle.class));
+			case PersonLeavesVehicleEvent.EVENT_TYPE -> new PersonLeavesVehicleEvent(time, readId(in, Person.class), readId(in, Vehicle.class));
+			default -> throw new IOException("Unknown core event type: " + type);
+		};
+	}
+
+	private <T> Id<T> readId(DataInputStream in, Class<T> type) throws IOException {
+		String id = readString(in);
+		return id == null ? null : Id.create(id, type);
+	}
+
+	private String readString(DataInputStream in) throws IOException {
+		return dictionary.get((int) readVarLong(in));
+	}
+
+	private static Coord readCoord(DataInputStream in) throws IOException {
+		return in.readBoolean() ? new Coord(in.readDouble(), in.readDouble()) : null;
+	}
+
+	private String readValue(DataInputStream in) throws IOException {
+		byte type = in.readByte();
+		return switch (type) {
+			case V_STRING -> dictionary.get((int) readVarLong(in));
+			case V_LONG -> Long.toString(unZigZag(readVarLong(in)));
+			case V_DOUBLE -> Double.toString(in.readDouble());
+			default -> throw new IOException("Unknown value type: " + type);
+		};
+	}
+}
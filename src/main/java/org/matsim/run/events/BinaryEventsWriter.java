@@ -0,0 +1,322 @@
+package org.matsim.run.events;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.*;
+import org.matsim.core.events.algorithms.EventWriter;
+import org.matsim.core.events.handler.BasicEventHandler;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+import static org.matsim.run.events.BinaryEventsFormat.*;
+
+/**
+ * Writes events in the compact binary format described in {@link BinaryEventsFormat}.
+ * The core event types of the mobsim are encoded from their fields, all others from their attributes.
+ */
+public final class BinaryEventsWriter implements EventWriter, BasicEventHandler {
+
+	/**
+	 * Event classes whose fields are written directly. Subclasses may have more attributes and are written generically.
+	 */
+	private static final Set<Class<? extends Event>> CORE = Set.of(
+		LinkEnterEvent.class, LinkLeaveEvent.class, VehicleEntersTrafficEvent.class, VehicleLeavesTrafficEvent.class,
+		PersonDepartureEvent.class, PersonArrivalEvent.class, ActivityStartEvent.class, ActivityEndEvent.class,
+		PersonEntersVehicleEvent.class, PersonLeavesVehicleEvent.class
+	);
+
+	private final DataOutputStream out;
+	private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+	private final Object2IntMap<String> dictionary = new Object2IntOpenHashMap<>();
+
+	/**
+	 * Columns of the current chunk.
+	 */
+	private final ByteArrayOutputStream[] columns = new ByteArrayOutputStream[COLUMNS];
+	private final DataOutputStream strings;
+	private final DataOutputStream times;
+	private final DataOutputStream types;
+	private final DataOutputStream keys;
+	private final DataOutputStream values;
+
+	private int newStrings;
+	private int events;
+	private final byte[] buffer = new byte[1 << 16];
+
+	public BinaryEventsWriter(Path path) {
+		try {
+			this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		for (int i = 0; i < COLUMNS; i++) {
+			columns[i] = new ByteArrayOutputStream(1 << 16);
+		}
+
+		strings = new DataOutputStream(columns[0]);
+		times = new DataOutputStream(columns[1]);
+		types = new DataOutputStream(columns[2]);
+		keys = new DataOutputStream(columns[3]);
+		values = new DataOutputStream(columns[4]);
+
+		dictionary.defaultReturnValue(-1);
+	}
+
+	@Override
+	public void handleEvent(Event event) {
+		try {
+			times.writeDouble(event.getTime());
+
+			boolean core = CORE.contains(event.getClass());
+			writeVarLong(types, (long) intern(event.getEventType()) << 1 | (core ? 1 : 0));
+
+			if (core)
+				writeFields(event);
+			else
+				writeAttributes(event);
+
+			if (++events == CHUNK_SIZE)
+				writeChunk();
+
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Write the fields of a core event, in the order in which {@link BinaryEventsReader} passes them to the constructor.
+	 */
+	private void writeFields(Event event) throws IOException {
+		switch (event) {
+			case LinkEnterEvent e -> {
+				writeId(e.getVehicleId());
+				writeId(e.getLinkId());
+			}
+			case LinkLeaveEvent e -> {
+				writeId(e.getVehicleId());
+				writeId(e.getLinkId());
+			}
+			case VehicleEntersTrafficEvent e -> {
+				writeId(e.getPersonId());
+				writeId(e.getLinkId());
+				writeId(e.getVehicleId());
+				writeString(e.getNetworkMode());
+				values.writeDouble(e.getRelativePositionOnLink());
+			}
+			case VehicleLeavesTrafficEvent e -> {
+				writeId(e.getPersonId());
+				writeId(e.getLinkId());
+				writeId(e.getVehicleId());
+				writeString(e.getNetworkMode());
+				values.writeDouble(e.getRelativePositionOnLink());
+			}
+			case PersonDepartureEvent e -> {
+				writeId(e.getPersonId());
+				writeId(e.getLinkId());
+				writeString(e.getLegMode());
+				writeString(e.getRoutingMode());
+			}
+			case PersonArrivalEvent e -> {
+				writeId(e.getPersonId());
+				writeId(e.getLinkId());
+				writeString(e.getLegMode());
+			}
+			case ActivityStartEvent e -> {
+				writeId(e.getPersonId());
+				writeId(e.getLinkId());
+				writeId(e.getFacilityId());
+				writeString(e.getActType());
+				writeCoord(e.getCoord());
+			}
+			case ActivityEndEvent e -> {
+				writeId(e.getPersonId());
+				writeId(e.getLinkId());
+				writeId(e.getFacilityId());
+				writeString(e.getActType());
+				writeCoord(e.getCoord());
+			}
+			case PersonEntersVehicleEvent e -> {
+				writeId(e.getPersonId());
+				writeId(e.getVehicleId());
+			}
+			case PersonLeavesVehicleEvent e -> {
+				writeId(e.getPersonId());
+				writeId(e.getVehicleId());
+			}
+			default -> throw new IllegalStateException("Not a core event: " + event.getClass());
+		}
+	}
+
+	private void writeId(Id<?> id) throws IOException {
+		writeVarLong(values, intern(id == null ? null : id.toString()));
+	}
+
+	private void writeString(String value) throws IOException {
+		writeVarLong(values, intern(value));
+	}
+
+	private void writeCoord(Coord coord) throws IOException {
+		values.writeBoolean(coord != null);
+		if (coord != null) {
+			values.writeDouble(coord.getX());
+			values.writeDouble(coord.getY());
+		}
+	}
+
+	private void writeAttributes(Event event) throws IOException {
+
+		Map<String, String> attributes = event.getAttributes();
+
+		// Time and type are already stored in their own columns
+		int n = attributes.size();
+		if (attributes.containsKey(Event.ATTRIBUTE_TIME))
+			n--;
+		if (attributes.containsKey(Event.ATTRIBUTE_TYPE))
+			n--;
+
+		writeVarLong(keys, n);
+
+		for (Map.Entry<String, String> e : attributes.entrySet()) {
+			if (e.getKey().equals(Event.ATTRIBUTE_TIME) || e.getKey().equals(Event.ATTRIBUTE_TYPE))
+				continue;
+
+			writeVarLong(keys, intern(e.getKey()));
+			writeValue(e.getValue());
+		}
+	}
+
+	private void writeValue(String value) throws IOException {
+
+		if (value != null && !value.isEmpty()) {
+			char c = value.charAt(0);
+			if ((c >= '0' && c <= '9') || c == '-') {
+
+				Long l = parseLong(value);
+				if (l != null) {
+					values.writeByte(V_LONG);
+					writeVarLong(values, zigZag(l));
+					return;
+				}
+
+				try {
+					double d = Double.parseDouble(value);
+					if (Double.toString(d).equals(value)) {
+						values.writeByte(V_DOUBLE);
+						values.writeDouble(d);
+						return;
+					}
+				} catch (NumberFormatException e) {
+					// Stored as string
+				}
+			}
+		}
+
+		values.writeByte(V_STRING);
+		writeVarLong(values, intern(value));
+	}
+
+	/**
+	 * Parse a long, only if it is formatted the same way as {@link Long#toString(long)}.
+	 */
+	private static Long parseLong(String value) {
+
+		int start = value.charAt(0) == '-' ? 1 : 0;
+		int digits = value.length() - start;
+
+		if (digits == 0 || digits > 18 || (value.charAt(start) == '0' && (digits > 1 || start == 1)))
+			return null;
+
+		for (int i = start; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c < '0' || c > '9')
+				return null;
+		}
+
+		return Long.parseLong(value);
+	}
+
+	/**
+	 * Index of a string in the dictionary, adding it if needed. Null is stored as 0.
+	 */
+	private int intern(String s) throws IOException {
+
+		if (s == null)
+			return 0;
+
+		int idx = dictionary.getInt(s);
+		if (idx >= 0)
+			return idx;
+
+		idx = dictionary.size() + 1;
+		dictionary.put(s, idx);
+
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		writeVarLong(strings, bytes.length);
+		strings.write(bytes);
+		newStrings++;
+
+		return idx;
+	}
+
+	private void writeChunk() throws IOException {
+
+		if (events == 0)
+			return;
+
+		out.writeInt(events);
+		out.writeInt(newStrings);
+
+		for (ByteArrayOutputStream column : columns) {
+			byte[] raw = column.toByteArray();
+
+			deflater.reset();
+			deflater.setInput(raw);
+			deflater.finish();
+
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 4 + 64);
+			while (!deflater.finished()) {
+				int n = deflater.deflate(buffer);
+				compressed.write(buffer, 0, n);
+			}
+
+			out.writeInt(raw.length);
+			out.writeInt(compressed.size());
+			compressed.writeTo(out);
+
+			column.reset();
+		}
+
+		events = 0;
+		newStrings = 0;
+	}
+
+	@Override
+	public void closeFile() {
+		try {
+			writeChunk();
+			// Empty chunk marks the end
+			out.writeInt(0);
+			out.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			deflater.end();
+		}
+	}
+
+	@Override
+	public void reset(int iteration) {
+		// One writer per file, nothing to reset
+	}
+}
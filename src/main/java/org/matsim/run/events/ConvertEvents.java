@@ -0,0 +1,56 @@
+package org.matsim.run.events;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.application.MATSimAppCommand;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.events.MatsimEventsReader;
+import org.matsim.core.events.algorithms.EventWriter;
+import org.matsim.core.events.algorithms.EventWriterXML;
+import picocli.CommandLine;
+
+import java.nio.file.Path;
+
+@CommandLine.Command(
+	name = "convert-events",
+	description = "Convert binary events to xml and vice versa, the direction is determined by the input file."
+)
+public class ConvertEvents implements MATSimAppCommand {
+
+	private static final Logger log = LogManager.getLogger(ConvertEvents.class);
+
+	@CommandLine.Option(names = "--input", description = "Path to input events, either binary or xml", required = true)
+	private Path input;
+
+	@CommandLine.Option(names = "--output", description = "Path to output events", required = true)
+	private Path output;
+
+	public static void main(String[] args) {
+		new ConvertEvents().execute(args);
+	}
+
+	@Override
+	public Integer call() throws Exception {
+
+		boolean binary = BinaryEventsReader.isBinary(input);
+
+		EventsManager events = EventsUtils.createEventsManager();
+		EventWriter writer = binary ? new EventWriterXML(output.toString()) : new BinaryEventsWriter(output);
+		events.addHandler(writer);
+
+		events.initProcessing();
+
+		if (binary)
+			new BinaryEventsReader(events).readFile(input);
+		else
+			new MatsimEventsReader(events).readFile(input.toString());
+
+		events.finishProcessing();
+		writer.closeFile();
+
+		log.info("Converted {} events {} to {}", binary ? "binary" : "xml", input, output);
+
+		return 0;
+	}
+}
@@ -0,0 +1,53 @@
+package org.matsim.run.links;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.application.MATSimAppCommand;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import picocli.CommandLine;
+
+import java.nio.file.Path;
+
+@CommandLine.Command(
+	name = "facility-links",
+	description = "Precompute the nearest car links of facilities and activity coordinates, which are otherwise assigned at the start of every run."
+)
+public class CreateFacilityLinks implements MATSimAppCommand {
+
+	private static final Logger log = LogManager.getLogger(CreateFacilityLinks.class);
+
+	@CommandLine.Option(names = "--config", description = "Path to the scenario config", required = true)
+	private String configPath;
+
+	@CommandLine.Option(names = "--plans", description = "Use a different plans file than given in the config, e.g. for another sample size. Relative to the config.")
+	private String plans;
+
+	@CommandLine.Option(names = "--output", description = "Path to output mapping", required = true)
+	private Path output;
+
+	public static void main(String[] args) {
+		new CreateFacilityLinks().execute(args);
+	}
+
+	@Override
+	public Integer call() throws Exception {
+
+		Config config = ConfigUtils.loadConfig(configPath);
+
+		if (plans != null)
+			config.plans().setInputFile(plans);
+
+		Scenario scenario = ScenarioUtils.loadScenario(config);
+
+		FacilityLinks links = FacilityLinks.compute(scenario);
+		links.write(config, output);
+
+		log.info("Written links of {} facilities and {} activity coordinates to {}", links.getFacilityCount(), links.getCoordCount(), output);
+
+		return 0;
+	}
+
+}
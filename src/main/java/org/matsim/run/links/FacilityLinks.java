@@ -0,0 +1,250 @@
+package org.matsim.run.links;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.core.config.Config;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.network.algorithms.TransportModeNetworkFilter;
+import org.matsim.core.population.algorithms.ParallelPersonAlgorithmUtils;
+import org.matsim.facilities.ActivityFacilities;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.facilities.FacilitiesUtils;
+import org.matsim.run.InputHash;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Precomputed nearest car links of all facilities and of all activity coordinates without facility, as assigned by MATSim when preparing the simulation.
+ * The mapping contains the hash of the network it was computed on and is only applied if the network of the config still matches.
+ */
+public final class FacilityLinks {
+
+	private static final Logger log = LogManager.getLogger(FacilityLinks.class);
+
+	private static final int MAGIC = 0x4B594F4C;
+	private static final int VERSION = 2;
+
+	private final Map<Id<ActivityFacility>, Id<Link>> facilities;
+	private final Map<Coord, Id<Link>> coords;
+
+	private FacilityLinks(Map<Id<ActivityFacility>, Id<Link>> facilities, Map<Coord, Id<Link>> coords) {
+		this.facilities = facilities;
+		this.coords = coords;
+	}
+
+	/**
+	 * Compute the nearest car links of facilities and activity coordinates of a loaded scenario.
+	 */
+	public static FacilityLinks compute(Scenario scenario) {
+
+		Network network = scenario.getNetwork();
+		Network carNetwork = NetworkUtils.createNetwork(scenario.getConfig().network());
+		new TransportModeNetworkFilter(network).filter(carNetwork, Set.of(TransportMode.car));
+
+		// Same lookup as XY2Links and XY2LinksForFacilities. The spatial index is created lazily, which is not thread-safe
+		if (!carNetwork.getLinks().isEmpty())
+			NetworkUtils.getNearestLinkExactly(carNetwork, new Coord(0, 0));
+
+		Map<Id<ActivityFacility>, Id<Link>> facilities = scenario.getActivityFacilities().getFacilities().values().parallelStream()
+			.collect(HashMap::new, (m, f) -> m.put(f.getId(), NetworkUtils.getNearestLinkExactly(carNetwork, f.getCoord()).getId()), Map::putAll);
+
+		Set<Coord> unassigned = new HashSet<>();
+		for (Person person : scenario.getPopulation().getPersons().values()) {
+			for (Plan plan : person.getPlans()) {
+				for (PlanElement el : plan.getPlanElements()) {
+					if (el instanceof Activity act && act.getLinkId() == null && act.getFacilityId() == null && act.getCoord() != null)
+						unassigned.add(act.getCoord());
+				}
+			}
+		}
+
+		Map<Coord, Id<Link>> coords = unassigned.parallelStream()
+			.collect(HashMap::new, (m, c) -> m.put(c, NetworkUtils.getNearestLinkExactly(carNetwork, c).getId()), Map::putAll);
+
+		return new FacilityLinks(facilities, coords);
+	}
+
+	/**
+	 * Hashes of the network and facility files the mapping depends on.
+	 */
+	private static String[] inputHashes(Config config) {
+		return new String[]{
+			Objects.toString(InputHash.of(config.getContext(), config.network().getInputFile()), ""),
+			Objects.toString(InputHash.of(config.getContext(), config.facilities().getInputFile()), "")
+		};
+	}
+
+	/**
+	 * Apply the mapping file to a scenario, if it was created for the same network and facilities.
+	 * Links are only set for facilities and activities that do not have one yet.
+	 *
+	 * @return whether the mapping has been applied
+	 */
+	public static boolean apply(Scenario scenario, Path path, int threads) throws IOException {
+
+		String[] expected = inputHashes(scenario.getConfig());
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				log.warn("{} is not a facility link mapping of the current version, it will be ignored.", path);
+				return false;
+			}
+
+			if (!in.readUTF().equals(expected[0]) || !in.readUTF().equals(expected[1])) {
+				log.warn("Facility links {} were created for a different network or facilities, they will be ignored.", path);
+				return false;
+			}
+
+			FacilityLinks links = read(new DataInputStream(new BufferedInputStream(new InflaterInputStream(in), 1 << 16)));
+			links.apply(scenario, threads);
+		}
+
+		return true;
+	}
+
+	private static FacilityLinks read(DataInputStream in) throws IOException {
+
+		List<Id<Link>> linkIds = new ArrayList<>();
+		int n = in.readInt();
+		for (int i = 0; i < n; i++) {
+			linkIds.add(Id.createLinkId(in.readUTF()));
+		}
+
+		Map<Id<ActivityFacility>, Id<Link>> facilities = new HashMap<>();
+		n = in.readInt();
+		for (int i = 0; i < n; i++) {
+			facilities.put(Id.create(in.readUTF(), ActivityFacility.class), linkIds.get(in.readInt()));
+		}
+
+		Map<Coord, Id<Link>> coords = new HashMap<>();
+		n = in.readInt();
+		for (int i = 0; i < n; i++) {
+			coords.put(new Coord(in.readDouble(), in.readDouble()), linkIds.get(in.readInt()));
+		}
+
+		return new FacilityLinks(facilities, coords);
+	}
+
+	/**
+	 * Write the mapping for the network and facilities given in the config.
+	 */
+	public void write(Config config, Path path) throws IOException {
+
+		String[] hashes = inputHashes(config);
+
+		try (DataOutputStream header = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+
+			header.writeInt(MAGIC);
+			header.writeInt(VERSION);
+			header.writeUTF(hashes[0]);
+			header.writeUTF(hashes[1]);
+
+			Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(header, deflater, 1 << 16), 1 << 16))) {
+
+				// Link ids are written once and referenced by index
+				Object2IntMap<Id<Link>> index = new Object2IntOpenHashMap<>();
+				List<Id<Link>> linkIds = new ArrayList<>();
+				Stream.concat(facilities.values().stream(), coords.values().stream()).forEach(id -> {
+					if (!index.containsKey(id)) {
+						index.put(id, linkIds.size());
+						linkIds.add(id);
+					}
+				});
+
+				out.writeInt(linkIds.size());
+				for (Id<Link> id : linkIds)
+					out.writeUTF(id.toString());
+
+				out.writeInt(facilities.size());
+				for (Map.Entry<Id<ActivityFacility>, Id<Link>> e : facilities.entrySet()) {
+					out.writeUTF(e.getKey().toString());
+					out.writeInt(index.getInt(e.getValue()));
+				}
+
+				out.writeInt(coords.size());
+				for (Map.Entry<Coord, Id<Link>> e : coords.entrySet()) {
+					out.writeDouble(e.getKey().getX());
+					out.writeDouble(e.getKey().getY());
+					out.writeInt(index.getInt(e.getValue()));
+				}
+			} finally {
+				deflater.end();
+			}
+		}
+	}
+
+	/**
+	 * Number of facilities in the mapping.
+	 */
+	public int getFacilityCount() {
+		return facilities.size();
+	}
+
+	/**
+	 * Number of activity coordinates in the mapping.
+	 */
+	public int getCoordCount() {
+		return coords.size();
+	}
+
+	private void apply(Scenario scenario, int threads) {
+
+		ActivityFacilities all = scenario.getActivityFacilities();
+
+		int assigned = 0;
+		for (ActivityFacility f : all.getFacilities().values()) {
+			if (f.getLinkId() == null) {
+				Id<Link> link = facilities.get(f.getId());
+				if (link != null) {
+					FacilitiesUtils.setLinkID(f, link);
+					assigned++;
+				}
+			}
+		}
+
+		AtomicInteger activities = new AtomicInteger();
+		ParallelPersonAlgorithmUtils.run(scenario.getPopulation(), threads, person -> {
+			for (Plan plan : person.getPlans()) {
+				for (PlanElement el : plan.getPlanElements()) {
+					if (el instanceof Activity act && act.getLinkId() == null) {
+						Id<Link> link = null;
+						if (act.getFacilityId() != null) {
+							ActivityFacility f = all.getFacilities().get(act.getFacilityId());
+							link = f != null ? f.getLinkId() : null;
+						} else if (act.getCoord() != null)
+							link = coords.get(act.getCoord());
+
+						if (link != null) {
+							act.setLinkId(link);
+							activities.incrementAndGet();
+						}
+					}
+				}
+			}
+		});
+
+		log.info("Assigned links to {} facilities and {} activities from precomputed mapping", assigned, activities.get());
+	}
+}
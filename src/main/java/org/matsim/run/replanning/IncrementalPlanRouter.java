@@ -0,0 +1,208 @@
+package org.matsim.run.replanning;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.core.population.algorithms.PlanAlgorithm;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.router.TripRouter;
+import org.matsim.core.router.TripStructureUtils;
+import org.matsim.core.router.TripStructureUtils.Trip;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.core.utils.timing.TimeInterpretation;
+import org.matsim.core.utils.timing.TimeTracker;
+import org.matsim.facilities.ActivityFacilities;
+import org.matsim.facilities.FacilitiesUtils;
+import org.matsim.facilities.Facility;
+import org.matsim.run.traveltime.CompactTravelTime;
+import org.matsim.vehicles.Vehicle;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Routes the trips of a plan like {@link org.matsim.core.router.PlanRouter}, but keeps existing routes
+ * if their departure time is unchanged and their travel time did not change more than a threshold.
+ * <p>
+ * The travel time of a network route is compared against the travel time of the route itself, which is set by the router
+ * and replaced here by the travel time computed with the same method as the comparison. It is copied along with the plan
+ * and does not add attributes to the output. Routes without travel time are routed again.
+ * <p>
+ * A route that keeps its travel time is not stale, even if a faster route became available meanwhile.
+ * Therefore, a share of the trips is routed again regardless of their travel time.
+ */
+final class IncrementalPlanRouter implements PlanAlgorithm {
+
+	/**
+	 * Departure times may differ by rounding from the times computed here.
+	 */
+	private static final double TIME_TOLERANCE = 1;
+
+	private final TripRouter tripRouter;
+	private final ActivityFacilities facilities;
+	private final TimeInterpretation timeInterpretation;
+	private final Network network;
+	private final Map<String, TravelTime> travelTimes;
+	private final double threshold;
+	private final double share;
+	private final Random rnd;
+	private final IncrementalReRoute.Stats stats;
+
+	IncrementalPlanRouter(TripRouter tripRouter, ActivityFacilities facilities, TimeInterpretation timeInterpretation,
+						  Network network, Map<String, TravelTime> travelTimes, double threshold, double share, Random rnd, IncrementalReRoute.Stats stats) {
+		this.tripRouter = tripRouter;
+		this.facilities = facilities;
+		this.timeInterpretation = timeInterpretation;
+		this.network = network;
+		this.travelTimes = travelTimes;
+		this.threshold = threshold;
+		this.share = share;
+		this.rnd = rnd;
+		this.stats = stats;
+	}
+
+	@Override
+	public void run(Plan plan) {
+
+		TimeTracker timeTracker = new TimeTracker(timeInterpretation);
+
+		for (Trip oldTrip : TripStructureUtils.getTrips(plan)) {
+
+			timeTracker.addActivity(oldTrip.getOriginActivity());
+			double departure = timeTracker.getTime().seconds();
+
+			// The random number is drawn for every trip, so that the draws do not depend on the travel times
+			boolean always = rnd.nextDouble() < share;
+
+			if (!always && !isStale(oldTrip, departure)) {
+				stats.kept.increment();
+				timeTracker.addElements(oldTrip.getTripElements());
+				continue;
+			}
+
+			stats.rerouted.increment();
+
+			String routingMode = TripStructureUtils.identifyMainMode(oldTrip.getTripElements());
+			Facility fromFacility = FacilitiesUtils.toFacility(oldTrip.getOriginActivity(), facilities);
+			Facility toFacility = FacilitiesUtils.toFacility(oldTrip.getDestinationActivity(), facilities);
+
+			List<? extends PlanElement> newTrip = tripRouter.calcRoute(routingMode, fromFacility, toFacility, departure,
+				plan.getPerson(), oldTrip.getTripAttributes());
+
+			putVehicleFromOldTripIntoNewTripIfMeaningful(oldTrip, newTrip);
+			setReference(newTrip);
+
+			TripRouter.insertTrip(plan, oldTrip.getOriginActivity(), newTrip, oldTrip.getDestinationActivity());
+			timeTracker.addElements(newTrip);
+		}
+	}
+
+	/**
+	 * Whether a trip needs to be routed again.
+	 */
+	private boolean isStale(Trip trip, double departure) {
+
+		List<Leg> legs = trip.getLegsOnly();
+		if (legs.isEmpty())
+			return true;
+
+		Leg first = legs.get(0);
+		if (first.getDepartureTime().isUndefined() || Math.abs(first.getDepartureTime().seconds() - departure) > TIME_TOLERANCE)
+			return true;
+
+		for (Leg leg : legs) {
+			if (leg.getRoute() == null)
+				return true;
+
+			if (leg.getRoute() instanceof NetworkRoute route && isStale(leg, route))
+				return true;
+		}
+
+		// Teleported and pt legs with unchanged departure will be routed the same way
+		return false;
+	}
+
+	private boolean isStale(Leg leg, NetworkRoute route) {
+
+		if (!(travelTimes.get(leg.getMode()) instanceof CompactTravelTime tt) || leg.getDepartureTime().isUndefined())
+			return true;
+
+		if (route.getTravelTime().isUndefined())
+			return true;
+
+		double reference = route.getTravelTime().seconds();
+		double current = travelTime(tt, route, leg.getDepartureTime().seconds());
+		return Double.isNaN(current) || Math.abs(current - reference) > threshold * reference;
+	}
+
+	/**
+	 * Store the current travel time of the network routes of a new trip as reference, replacing the one of the router.
+	 */
+	private void setReference(List<? extends PlanElement> trip) {
+		for (Leg leg : TripStructureUtils.getLegs(trip)) {
+			if (!(leg.getRoute() instanceof NetworkRoute route) || !(travelTimes.get(leg.getMode()) instanceof CompactTravelTime tt)
+				|| leg.getDepartureTime().isUndefined())
+				continue;
+
+			double time = travelTime(tt, route, leg.getDepartureTime().seconds());
+			if (!Double.isNaN(time))
+				route.setTravelTime(time);
+		}
+	}
+
+	/**
+	 * Travel time of a route with the current travel times, or NaN if it contains links not in the network.
+	 */
+	private double travelTime(CompactTravelTime tt, NetworkRoute route, double departure) {
+
+		// The vehicle enters traffic at the end of the start link
+		double time = departure;
+
+		for (int i = 0; i <= route.getLinkIds().size(); i++) {
+			Link link = network.getLinks().get(i < route.getLinkIds().size() ? route.getLinkIds().get(i) : route.getEndLinkId());
+			if (link == null)
+				return Double.NaN;
+
+			time += tt.getLinkTravelTime(link, time, null, null);
+		}
+
+		return time - departure;
+	}
+
+	/**
+	 * Same as in {@link org.matsim.core.router.PlanRouter}: if the old trip used a single vehicle and the network routes
+	 * of the new trip have none, the vehicle of the old trip is used.
+	 */
+	private static void putVehicleFromOldTripIntoNewTripIfMeaningful(Trip oldTrip, List<? extends PlanElement> newTrip) {
+
+		Id<Vehicle> vehicleId = getUniqueVehicleId(oldTrip);
+		if (vehicleId == null)
+			return;
+
+		for (Leg leg : TripStructureUtils.getLegs(newTrip)) {
+			if (leg.getRoute() instanceof NetworkRoute route && route.getVehicleId() == null)
+				route.setVehicleId(vehicleId);
+		}
+	}
+
+	private static Id<Vehicle> getUniqueVehicleId(Trip trip) {
+
+		Id<Vehicle> vehicleId = null;
+		for (Leg leg : trip.getLegsOnly()) {
+			if (!(leg.getRoute() instanceof NetworkRoute route))
+				continue;
+
+			// The trip uses several vehicles
+			if (vehicleId != null && !vehicleId.equals(route.getVehicleId()))
+				return null;
+
+			vehicleId = route.getVehicleId();
+		}
+
+		return vehicleId;
+	}
+}
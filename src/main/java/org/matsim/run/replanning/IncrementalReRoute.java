@@ -0,0 +1,99 @@
+package org.matsim.run.replanning;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Provider;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.config.groups.GlobalConfigGroup;
+import org.matsim.core.gbl.MatsimRandom;
+import org.matsim.core.population.algorithms.PlanAlgorithm;
+import org.matsim.core.replanning.PlanStrategy;
+import org.matsim.core.replanning.PlanStrategyImpl;
+import org.matsim.core.replanning.ReplanningContext;
+import org.matsim.core.replanning.modules.AbstractMultithreadedModule;
+import org.matsim.core.replanning.selectors.RandomPlanSelector;
+import org.matsim.core.router.TripRouter;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.core.utils.timing.TimeInterpretation;
+import org.matsim.facilities.ActivityFacilities;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Strategy similar to ReRoute, which only routes trips whose routes have become stale.
+ * Routes are stale if departure times changed or if their travel time changed more than a threshold since they were computed.
+ * Staleness does not detect faster alternatives on other links, so a share of the trips is routed again in any case.
+ * This requires the {@link org.matsim.run.traveltime.CompactTravelTime} store for network modes.
+ */
+final class IncrementalReRoute implements Provider<PlanStrategy> {
+
+	private static final Logger log = LogManager.getLogger(IncrementalReRoute.class);
+
+	private final double threshold;
+	private final double share;
+
+	@Inject
+	private Provider<TripRouter> tripRouterProvider;
+
+	@Inject
+	private GlobalConfigGroup globalConfigGroup;
+
+	@Inject
+	private ActivityFacilities facilities;
+
+	@Inject
+	private TimeInterpretation timeInterpretation;
+
+	@Inject
+	private Network network;
+
+	@Inject
+	private Map<String, TravelTime> travelTimes;
+
+	IncrementalReRoute(double threshold, double share) {
+		this.threshold = threshold;
+		this.share = share;
+	}
+
+	@Override
+	public PlanStrategy get() {
+		return new PlanStrategyImpl.Builder(new RandomPlanSelector<>())
+			.addStrategyModule(new Module())
+			.build();
+	}
+
+	/**
+	 * Number of kept and rerouted trips.
+	 */
+	static final class Stats {
+		final LongAdder kept = new LongAdder();
+		final LongAdder rerouted = new LongAdder();
+	}
+
+	private final class Module extends AbstractMultithreadedModule {
+
+		private Stats stats = new Stats();
+
+		private Module() {
+			super(globalConfigGroup);
+		}
+
+		@Override
+		protected void beforePrepareReplanningHook(ReplanningContext replanningContext) {
+			stats = new Stats();
+		}
+
+		@Override
+		public PlanAlgorithm getPlanAlgoInstance() {
+			return new IncrementalPlanRouter(tripRouterProvider.get(), facilities, timeInterpretation, network, travelTimes, threshold, share,
+				MatsimRandom.getLocalInstance(), stats);
+		}
+
+		@Override
+		protected void afterFinishReplanningHook() {
+			log.info("Incremental rerouting kept {} trips and routed {} trips", stats.kept.sum(), stats.rerouted.sum());
+		}
+	}
+}
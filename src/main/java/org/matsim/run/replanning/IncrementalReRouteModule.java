@@ -0,0 +1,33 @@
+package org.matsim.run.replanning;
+
+import org.matsim.core.controler.AbstractModule;
+
+/**
+ * Provides the {@link #INCREMENTAL_RE_ROUTE} strategy.
+ */
+public final class IncrementalReRouteModule extends AbstractModule {
+
+	/**
+	 * Strategy name, to be used instead of ReRoute.
+	 */
+	public static final String INCREMENTAL_RE_ROUTE = "IncrementalReRoute";
+
+	private final double threshold;
+	private final double share;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param threshold relative change of the route travel time above which routes are computed again
+	 * @param share     share of trips that are computed again regardless of their travel time
+	 */
+	public IncrementalReRouteModule(double threshold, double share) {
+		this.threshold = threshold;
+		this.share = share;
+	}
+
+	@Override
+	public void install() {
+		addPlanStrategyBinding(INCREMENTAL_RE_ROUTE).toProvider(new IncrementalReRoute(threshold, share));
+	}
+}
@@ -0,0 +1,118 @@
+package org.matsim.run.routing;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.config.Config;
+import org.matsim.core.router.speedy.SpeedyALT;
+import org.matsim.core.router.speedy.SpeedyALTData;
+import org.matsim.core.router.speedy.SpeedyGraph;
+import org.matsim.core.router.speedy.SpeedyGraphBuilder;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.util.LeastCostPathCalculatorFactory;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.core.router.util.TravelTime;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Creates {@link SpeedyALT} routers like {@link org.matsim.core.router.speedy.SpeedyALTFactory}, but with landmarks from the {@link LandmarkCache}.
+ * Graphs are shared per network instance, landmarks only between routers whose minimum travel costs are equal,
+ * so that the landmark distances are a lower bound of the costs of every mode that uses them.
+ * <p>
+ * Travel disutilities are usually created for every router, so the minimum costs can not be cached per instance.
+ * They are computed once per network and disutility class and reused for disutilities with equal minimum costs on a sample of links.
+ * This assumes that disutilities of the same class that agree on the sample agree on all links, which holds for the
+ * usual combinations of link length and free speed travel time.
+ */
+@Singleton
+final class CachedSpeedyALTFactory implements LeastCostPathCalculatorFactory {
+
+	/**
+	 * Number of links on which minimum costs are compared.
+	 */
+	private static final int SAMPLE_SIZE = 256;
+
+	private final Map<Network, SpeedyGraph> graphs = new IdentityHashMap<>();
+	private final Map<SpeedyGraph, List<Landmarks>> landmarks = new IdentityHashMap<>();
+	private final Map<Network, List<MinimumCosts>> minimumCosts = new IdentityHashMap<>();
+
+	@Inject
+	private Config config;
+
+	@Override
+	public synchronized LeastCostPathCalculator createPathCalculator(Network network, TravelDisutility travelCosts, TravelTime travelTimes) {
+
+		SpeedyGraph graph = graphs.computeIfAbsent(network, SpeedyGraphBuilder::build);
+		double[] costs = minimumCosts(network, travelCosts);
+
+		List<Landmarks> list = landmarks.computeIfAbsent(graph, k -> new ArrayList<>());
+		SpeedyALTData data = list.stream()
+			.filter(l -> Arrays.equals(l.costs, costs))
+			.map(Landmarks::data)
+			.findFirst()
+			.orElse(null);
+
+		if (data == null) {
+			data = LandmarkCache.getOrCreate(config, network, graph, costs, travelCosts);
+			list.add(new Landmarks(costs, data));
+		}
+
+		return new SpeedyALT(data, travelTimes, travelCosts);
+	}
+
+	/**
+	 * Minimum costs of all links, shared by disutilities of the same class with equal costs on the sample links.
+	 */
+	private double[] minimumCosts(Network network, TravelDisutility travelCosts) {
+
+		List<MinimumCosts> list = minimumCosts.computeIfAbsent(network, k -> new ArrayList<>());
+
+		Link[] links = list.isEmpty() ? sample(network) : list.get(0).links;
+		double[] sample = new double[links.length];
+		for (int i = 0; i < links.length; i++) {
+			sample[i] = travelCosts.getLinkMinimumTravelDisutility(links[i]);
+		}
+
+		for (MinimumCosts c : list) {
+			if (c.type == travelCosts.getClass() && Arrays.equals(c.sample, sample))
+				return c.costs;
+		}
+
+		double[] costs = LandmarkCache.minimumCosts(network, travelCosts);
+		list.add(new MinimumCosts(travelCosts.getClass(), links, sample, costs));
+		return costs;
+	}
+
+	/**
+	 * Evenly spaced links of the network.
+	 */
+	private static Link[] sample(Network network) {
+
+		List<Link> all = new ArrayList<>(network.getLinks().values());
+		int n = Math.min(SAMPLE_SIZE, all.size());
+
+		Link[] links = new Link[n];
+		for (int i = 0; i < n; i++) {
+			links[i] = all.get((int) ((long) i * all.size() / n));
+		}
+		return links;
+	}
+
+	/**
+	 * Minimum costs of a disutility class and the costs on the sample links they were identified with.
+	 */
+	private record MinimumCosts(Class<?> type, Link[] links, double[] sample, double[] costs) {
+	}
+
+	/**
+	 * Landmark data and the minimum costs it was computed with.
+	 */
+	private record Landmarks(double[] costs, SpeedyALTData data) {
+	}
+}
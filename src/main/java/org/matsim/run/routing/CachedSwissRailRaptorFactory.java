@@ -0,0 +1,60 @@
+package org.matsim.run.routing;
+
+import ch.sbb.matsim.routing.pt.raptor.*;
+import jakarta.inject.Inject;
+import jakarta.inject.Provider;
+import jakarta.inject.Singleton;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.core.config.Config;
+
+/**
+ * Creates {@link SwissRailRaptor} instances like the default factory, but with raptor data from the {@link RaptorDataCache}.
+ * The data is loaded once and shared by all router instances.
+ */
+@Singleton
+final class CachedSwissRailRaptorFactory implements Provider<SwissRailRaptor> {
+
+	@Inject
+	private Scenario scenario;
+
+	@Inject
+	private Config config;
+
+	@Inject
+	private OccupancyData occupancyData;
+
+	@Inject
+	private RaptorParametersForPerson parametersForPerson;
+
+	@Inject
+	private RaptorRouteSelector routeSelector;
+
+	@Inject
+	private Provider<RaptorStopFinder> stopFinder;
+
+	@Inject
+	private RaptorInVehicleCostCalculator inVehicleCostCalculator;
+
+	@Inject
+	private RaptorTransferCostCalculator transferCostCalculator;
+
+	private SwissRailRaptorData data;
+
+	@Override
+	public SwissRailRaptor get() {
+		return new SwissRailRaptor.Builder(getData(), config)
+			.with(parametersForPerson)
+			.with(routeSelector)
+			.with(stopFinder.get())
+			.with(inVehicleCostCalculator)
+			.with(transferCostCalculator)
+			.build();
+	}
+
+	private synchronized SwissRailRaptorData getData() {
+		if (data == null)
+			data = RaptorDataCache.getOrCreate(scenario, RaptorUtils.createStaticConfig(config), occupancyData);
+
+		return data;
+	}
+}
@@ -0,0 +1,160 @@
+package org.matsim.run.routing;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.core.population.routes.AbstractRoute;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.population.routes.RouteUtils;
+import org.matsim.vehicles.Vehicle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Network route that stores the link indices as zig-zag encoded differences with variable length, usually one or two bytes per link.
+ * The link ids are decoded on every access, so routes that are used often, e.g. by the mobsim, should be expanded with {@link #expand()}.
+ * Route type and description are the same as of MATSim's default network routes.
+ * <p>
+ * Copies should be created with {@link #of(NetworkRoute)}, which encodes the links into a new array.
+ * Plan copies made by MATSim use the shallow clone of {@link AbstractRoute}, which is safe because the encoded links
+ * are never modified in place but only replaced by {@link #setLinkIds}. Such copies only exist during replanning,
+ * as the routes of selected plans are expanded before the mobsim by {@link CompactRoutes}.
+ */
+public final class CompactNetworkRoute extends AbstractRoute implements NetworkRoute {
+
+	private byte[] links = new byte[0];
+	private double travelCost = Double.NaN;
+	private Id<Vehicle> vehicleId;
+
+	CompactNetworkRoute(Id<Link> startLinkId, Id<Link> endLinkId) {
+		super(startLinkId, endLinkId);
+	}
+
+	/**
+	 * Create a compact copy of another network route, which may be compact as well. The copy does not share any state with the route.
+	 */
+	public static CompactNetworkRoute of(NetworkRoute route) {
+		CompactNetworkRoute r = new CompactNetworkRoute(route.getStartLinkId(), route.getEndLinkId());
+		r.setLinkIds(route.getStartLinkId(), route.getLinkIds(), route.getEndLinkId());
+		r.setDistance(route.getDistance());
+		route.getTravelTime().ifDefinedOrElse(r::setTravelTime, r::setTravelTimeUndefined);
+		r.setTravelCost(route.getTravelCost());
+		r.setVehicleId(route.getVehicleId());
+		return r;
+	}
+
+	/**
+	 * Create a default network route with the same content.
+	 */
+	public NetworkRoute expand() {
+		NetworkRoute r = RouteUtils.createLinkNetworkRouteImpl(getStartLinkId(), getLinkIds(), getEndLinkId());
+		r.setDistance(getDistance());
+		getTravelTime().ifDefinedOrElse(r::setTravelTime, r::setTravelTimeUndefined);
+		r.setTravelCost(travelCost);
+		r.setVehicleId(vehicleId);
+		return r;
+	}
+
+	@Override
+	public void setLinkIds(Id<Link> startLinkId, List<Id<Link>> linkIds, Id<Link> endLinkId) {
+
+		setStartLinkId(startLinkId);
+		setEndLinkId(endLinkId);
+
+		byte[] buffer = new byte[linkIds.size() * 5];
+		int pos = 0;
+		int last = 0;
+		for (Id<Link> id : linkIds) {
+			int idx = id.index();
+			int delta = idx - last;
+			last = idx;
+
+			int value = (delta << 1) ^ (delta >> 31);
+			while ((value & ~0x7F) != 0) {
+				buffer[pos++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			buffer[pos++] = (byte) value;
+		}
+
+		links = Arrays.copyOf(buffer, pos);
+	}
+
+	@Override
+	public List<Id<Link>> getLinkIds() {
+
+		List<Id<Link>> ids = new ArrayList<>(links.length);
+		int pos = 0;
+		int last = 0;
+		while (pos < links.length) {
+			int value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = links[pos++];
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+
+			last += (value >>> 1) ^ -(value & 1);
+			ids.add(Id.get(last, Link.class));
+		}
+
+		return ids;
+	}
+
+	@Override
+	public NetworkRoute getSubRoute(Id<Link> fromLinkId, Id<Link> toLinkId) {
+		return expand().getSubRoute(fromLinkId, toLinkId);
+	}
+
+	@Override
+	public void setTravelCost(double travelCost) {
+		this.travelCost = travelCost;
+	}
+
+	@Override
+	public double getTravelCost() {
+		return travelCost;
+	}
+
+	@Override
+	public Id<Vehicle> getVehicleId() {
+		return vehicleId;
+	}
+
+	@Override
+	public void setVehicleId(Id<Vehicle> vehicleId) {
+		this.vehicleId = vehicleId;
+	}
+
+	@Override
+	public String getRouteDescription() {
+		StringBuilder desc = new StringBuilder();
+		if (getStartLinkId() != null)
+			desc.append(getStartLinkId());
+
+		for (Id<Link> id : getLinkIds()) {
+			desc.append(' ').append(id);
+		}
+
+		// Same as the default network route, the end link is only repeated if the route is not empty
+		if (getEndLinkId() != null && (!getEndLinkId().equals(getStartLinkId()) || links.length > 0))
+			desc.append(' ').append(getEndLinkId());
+
+		return desc.toString();
+	}
+
+	@Override
+	public void setRouteDescription(String routeDescription) {
+		NetworkRoute r = RouteUtils.createLinkNetworkRouteImpl(getStartLinkId(), getEndLinkId());
+		r.setRouteDescription(routeDescription);
+		setLinkIds(r.getStartLinkId(), r.getLinkIds(), r.getEndLinkId());
+	}
+
+	@Override
+	public String getRouteType() {
+		return NetworkRoute.ROUTE_TYPE;
+	}
+}
@@ -0,0 +1,65 @@
+package org.matsim.run.routing;
+
+import jakarta.inject.Inject;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.controler.events.BeforeMobsimEvent;
+import org.matsim.core.controler.events.IterationEndsEvent;
+import org.matsim.core.controler.listener.BeforeMobsimListener;
+import org.matsim.core.controler.listener.IterationEndsListener;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.router.TripStructureUtils;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stores the network routes of non-selected plans as {@link CompactNetworkRoute} after each iteration,
+ * and expands the routes of selected plans again before the mobsim.
+ */
+final class CompactRoutes implements IterationEndsListener, BeforeMobsimListener {
+
+	private static final Logger log = LogManager.getLogger(CompactRoutes.class);
+
+	@Inject
+	private Population population;
+
+	@Override
+	public void notifyBeforeMobsim(BeforeMobsimEvent event) {
+
+		population.getPersons().values().parallelStream().forEach(person -> {
+			Plan plan = person.getSelectedPlan();
+			if (plan == null)
+				return;
+
+			for (Leg leg : TripStructureUtils.getLegs(plan)) {
+				if (leg.getRoute() instanceof CompactNetworkRoute route)
+					leg.setRoute(route.expand());
+			}
+		});
+	}
+
+	@Override
+	public void notifyIterationEnds(IterationEndsEvent event) {
+
+		LongAdder compacted = new LongAdder();
+
+		population.getPersons().values().parallelStream().forEach(person -> {
+			for (Plan plan : person.getPlans()) {
+				if (plan == person.getSelectedPlan())
+					continue;
+
+				for (Leg leg : TripStructureUtils.getLegs(plan)) {
+					if (leg.getRoute() instanceof NetworkRoute route && !(route instanceof CompactNetworkRoute)) {
+						leg.setRoute(CompactNetworkRoute.of(route));
+						compacted.increment();
+					}
+				}
+			}
+		});
+
+		log.info("Compacted {} network routes of non-selected plans", compacted.sum());
+	}
+}
@@ -0,0 +1,13 @@
+package org.matsim.run.routing;
+
+import org.matsim.core.controler.AbstractModule;
+
+/**
+ * Keeps network routes of non-selected plans in a compact form, see {@link CompactRoutes}.
+ */
+public final class CompactRoutesModule extends AbstractModule {
+	@Override
+	public void install() {
+		addControlerListenerBinding().to(CompactRoutes.class);
+	}
+}
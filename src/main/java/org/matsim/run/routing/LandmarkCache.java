@@ -0,0 +1,216 @@
+package org.matsim.run.routing;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigGroup;
+import org.matsim.core.router.speedy.SpeedyALTData;
+import org.matsim.core.router.speedy.SpeedyGraph;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.run.cache.ObjectGraph;
+import org.matsim.run.cache.ScenarioReferences;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Stores the ALT landmark data of a filtered routing network next to the network file, so that later runs do not compute it again.
+ * <p>
+ * The landmark distances depend on the links of the network, the indices of their ids and the minimum travel costs of the mode.
+ * All of these are hashed into a key, which is part of the file name and stored in the header, so a file is only used
+ * for exactly the same network and costs. The graph is not stored, it is built from the network and referenced.
+ */
+public final class LandmarkCache {
+
+	/**
+	 * Number of landmarks, same as in {@link org.matsim.core.router.speedy.SpeedyALTFactory}.
+	 */
+	static final int LANDMARKS = 16;
+
+	private static final Logger log = LogManager.getLogger(LandmarkCache.class);
+
+	private static final int MAGIC = 0x4B594F41;
+	private static final int VERSION = 1;
+
+	private static final String GRAPH = "graph";
+	private static final String TRAVEL_COSTS = "travelCosts";
+
+	private LandmarkCache() {
+	}
+
+	/**
+	 * Minimum travel costs of all links in the iteration order of the network, which determine the landmark distances.
+	 */
+	static double[] minimumCosts(Network network, TravelDisutility travelCosts) {
+		double[] costs = new double[network.getLinks().size()];
+		int i = 0;
+		for (Link link : network.getLinks().values()) {
+			costs[i++] = travelCosts.getLinkMinimumTravelDisutility(link);
+		}
+		return costs;
+	}
+
+	/**
+	 * Load the landmark data from the cache, or create it and store it in the cache. Problems with the cache are logged and the data is created as usual.
+	 */
+	static SpeedyALTData getOrCreate(Config config, Network network, SpeedyGraph graph, double[] costs, TravelDisutility travelCosts) {
+
+		String key = null;
+		Path path = null;
+		try {
+			key = key(network, costs);
+			path = path(config, key);
+		} catch (IOException e) {
+			log.warn("Landmarks can not be cached: {}", e.getMessage());
+		}
+
+		if (path != null && Files.exists(path)) {
+			try {
+				long start = System.nanoTime();
+				SpeedyALTData data = read(path, key, network, graph, travelCosts);
+				if (data != null) {
+					log.info("Loaded landmarks from {} in {}s", path, (System.nanoTime() - start) / 1_000_000 / 1000.0);
+					return data;
+				}
+			} catch (IOException e) {
+				log.warn("Could not read landmarks from {}, they will be computed again: {}", path, e.getMessage());
+			}
+		}
+
+		SpeedyALTData data = new SpeedyALTData(graph, Math.min(LANDMARKS, network.getNodes().size()), travelCosts);
+
+		if (path != null) {
+			try {
+				write(path, key, data, network, graph, travelCosts);
+				log.info("Written landmarks to {}", path);
+			} catch (IOException e) {
+				log.warn("Could not write landmarks to {}: {}", path, e.getMessage());
+			}
+		}
+
+		return data;
+	}
+
+	/**
+	 * Path of the cache file next to the network, or null if the network is not a local file.
+	 */
+	static Path path(Config config, String key) {
+
+		URL url = ConfigGroup.getInputFileURL(config.getContext(), config.network().getInputFile());
+		if (!"file".equals(url.getProtocol()))
+			return null;
+
+		Path network;
+		try {
+			network = Path.of(url.toURI());
+		} catch (URISyntaxException e) {
+			return null;
+		}
+
+		return network.resolveSibling(network.getFileName() + "." + key.substring(0, 12) + ".landmarks");
+	}
+
+	/**
+	 * Hash of the network structure, id indices and minimum travel costs.
+	 */
+	static String key(Network network, double[] costs) throws IOException {
+
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DigestOutputStream(OutputStream.nullOutputStream(), digest), 1 << 16))) {
+
+			out.writeInt(LANDMARKS);
+
+			out.writeInt(network.getNodes().size());
+			for (Node node : network.getNodes().values()) {
+				out.writeUTF(node.getId().toString());
+				out.writeInt(node.getId().index());
+			}
+
+			out.writeInt(network.getLinks().size());
+			int i = 0;
+			for (Link link : network.getLinks().values()) {
+				out.writeUTF(link.getId().toString());
+				out.writeInt(link.getId().index());
+				out.writeInt(link.getFromNode().getId().index());
+				out.writeInt(link.getToNode().getId().index());
+				out.writeDouble(costs[i++]);
+			}
+		}
+
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	private static void write(Path path, String key, SpeedyALTData data, Network network, SpeedyGraph graph, TravelDisutility travelCosts) throws IOException {
+
+		// Several runs may be started at the same time, the file is only visible once it is complete
+		Path tmp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeUTF(key);
+
+				Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+				try (OutputStream body = new BufferedOutputStream(new DeflaterOutputStream(out, deflater, 1 << 16), 1 << 16)) {
+					ObjectGraph.write(data, body, references(network, graph, travelCosts));
+				} finally {
+					deflater.end();
+				}
+			}
+
+			Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	/**
+	 * Read the cached data, or return null if it was created for another network or other costs.
+	 */
+	private static SpeedyALTData read(Path path, String key, Network network, SpeedyGraph graph, TravelDisutility travelCosts) throws IOException {
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				log.warn("{} is not a landmark cache of the current version, it will be created again.", path);
+				return null;
+			}
+
+			if (!in.readUTF().equals(key)) {
+				log.warn("Landmarks {} were created for a different network or costs, they will be computed again.", path);
+				return null;
+			}
+
+			return ObjectGraph.read(new BufferedInputStream(new InflaterInputStream(in), 1 << 16), SpeedyALTData.class, references(network, graph, travelCosts));
+		}
+	}
+
+	/**
+	 * The graph is rebuilt from the network, the travel costs are only used while computing the landmarks.
+	 */
+	private static ScenarioReferences references(Network network, SpeedyGraph graph, TravelDisutility travelCosts) {
+		return new ScenarioReferences(network, null, null)
+			.with(GRAPH, graph)
+			.with(TRAVEL_COSTS, travelCosts);
+	}
+}
@@ -0,0 +1,16 @@
+package org.matsim.run.routing;
+
+import org.matsim.core.config.groups.ControllerConfigGroup;
+import org.matsim.core.controler.AbstractModule;
+import org.matsim.core.router.util.LeastCostPathCalculatorFactory;
+
+/**
+ * Provides the network router with landmarks from the {@link LandmarkCache} next to the network file.
+ */
+public final class LandmarkCacheModule extends AbstractModule {
+	@Override
+	public void install() {
+		if (getConfig().controller().getRoutingAlgorithmType() == ControllerConfigGroup.RoutingAlgorithmType.SpeedyALT)
+			bind(LeastCostPathCalculatorFactory.class).to(CachedSpeedyALTFactory.class);
+	}
+}
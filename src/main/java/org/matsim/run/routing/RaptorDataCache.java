@@ -0,0 +1,239 @@
+package org.matsim.run.routing;
+
+import ch.sbb.matsim.routing.pt.raptor.OccupancyData;
+import ch.sbb.matsim.routing.pt.raptor.RaptorStaticConfig;
+import ch.sbb.matsim.routing.pt.raptor.SwissRailRaptorData;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigGroup;
+import org.matsim.run.InputHash;
+import org.matsim.run.cache.ObjectGraph;
+import org.matsim.pt.transitSchedule.api.TransitLine;
+import org.matsim.pt.transitSchedule.api.TransitRoute;
+import org.matsim.pt.transitSchedule.api.TransitSchedule;
+import org.matsim.run.cache.ScenarioReferences;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Stores the {@link SwissRailRaptorData} of a scenario next to the transit schedule, so that later runs with the same inputs do not build it again.
+ * The file name contains a hash of the static raptor config, so runs with different router settings use different files.
+ * The header contains stamps of the schedule, transit vehicles and network; the file is only used if all of them still match.
+ * <p>
+ * Containers such as {@link org.matsim.api.core.v01.IdMap} store their entries by {@link Id#index()}, which depends on the order
+ * in which the ids were created in the jvm, e.g. when inputs are read concurrently. The header therefore also contains a hash of the
+ * index of every id in the network, schedule and transit vehicles, and the file is not used if any index differs.
+ * <p>
+ * The raptor data is written with {@link ObjectGraph}. Stops, routes, departures, links and vehicles are referenced by id and resolved against the loaded scenario.
+ */
+public final class RaptorDataCache {
+
+	private static final Logger log = LogManager.getLogger(RaptorDataCache.class);
+
+	private static final int MAGIC = 0x4B594F52;
+	private static final int VERSION = 2;
+
+	/**
+	 * Name under which the occupancy data is referenced, it is shared with the mobsim and not part of the cache.
+	 */
+	private static final String OCCUPANCY = "occupancy";
+
+	private RaptorDataCache() {
+	}
+
+	/**
+	 * Load the raptor data from the cache, or create it and store it in the cache. Problems with the cache are logged and the data is created as usual.
+	 */
+	public static SwissRailRaptorData getOrCreate(Scenario scenario, RaptorStaticConfig staticConfig, OccupancyData occupancyData) {
+
+		Path path = null;
+		try {
+			path = path(scenario.getConfig(), staticConfig);
+		} catch (IOException e) {
+			log.warn("Raptor data can not be cached: {}", e.getMessage());
+		}
+
+		if (path != null && Files.exists(path)) {
+			try {
+				long start = System.nanoTime();
+				SwissRailRaptorData data = read(path, scenario, occupancyData);
+				if (data != null) {
+					log.info("Loaded raptor data from {} in {}s", path, (System.nanoTime() - start) / 1_000_000 / 1000.0);
+					return data;
+				}
+			} catch (IOException e) {
+				log.warn("Could not read raptor data from {}, it will be created again: {}", path, e.getMessage());
+			}
+		}
+
+		SwissRailRaptorData data = SwissRailRaptorData.create(scenario.getTransitSchedule(), scenario.getTransitVehicles(), staticConfig,
+			scenario.getNetwork(), occupancyData);
+
+		if (path != null) {
+			try {
+				write(path, scenario, data, occupancyData);
+				log.info("Written raptor data to {}", path);
+			} catch (IOException e) {
+				log.warn("Could not write raptor data to {}: {}", path, e.getMessage());
+			}
+		}
+
+		return data;
+	}
+
+	/**
+	 * Path of the cache file next to the schedule, or null if the schedule is not a local file.
+	 */
+	static Path path(Config config, RaptorStaticConfig staticConfig) throws IOException {
+
+		URL url = ConfigGroup.getInputFileURL(config.getContext(), config.transit().getTransitScheduleFile());
+		if (!"file".equals(url.getProtocol()))
+			return null;
+
+		Path schedule;
+		try {
+			schedule = Path.of(url.toURI());
+		} catch (URISyntaxException e) {
+			return null;
+		}
+
+		return schedule.resolveSibling(schedule.getFileName() + "." + configKey(staticConfig).substring(0, 12) + ".raptor");
+	}
+
+	/**
+	 * Hash of all settings that affect the raptor data.
+	 */
+	static String configKey(RaptorStaticConfig staticConfig) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectGraph.write(staticConfig, bytes, ObjectGraph.References.NONE);
+
+		try {
+			return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes.toByteArray()));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Hash of the string and index of all ids of the network, schedule and transit vehicles.
+	 */
+	static String indexKey(Scenario scenario) throws IOException {
+
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DigestOutputStream(OutputStream.nullOutputStream(), digest), 1 << 16))) {
+
+			writeIds(out, scenario.getNetwork().getNodes().keySet());
+			writeIds(out, scenario.getNetwork().getLinks().keySet());
+
+			TransitSchedule schedule = scenario.getTransitSchedule();
+			writeIds(out, schedule.getFacilities().keySet());
+			writeIds(out, schedule.getTransitLines().keySet());
+			for (TransitLine line : schedule.getTransitLines().values()) {
+				writeIds(out, line.getRoutes().keySet());
+				for (TransitRoute route : line.getRoutes().values()) {
+					writeIds(out, route.getDepartures().keySet());
+				}
+			}
+
+			writeIds(out, scenario.getTransitVehicles().getVehicleTypes().keySet());
+			writeIds(out, scenario.getTransitVehicles().getVehicles().keySet());
+		}
+
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	private static void write(Path path, Scenario scenario, SwissRailRaptorData data, OccupancyData occupancyData) throws IOException {
+
+		Config config = scenario.getConfig();
+
+		// Several runs may be started at the same time, the file is only visible once it is complete
+		Path tmp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				InputHash.stamp(config.getContext(), config.transit().getTransitScheduleFile()).write(out);
+				InputHash.stamp(config.getContext(), config.transit().getVehiclesFile()).write(out);
+				InputHash.stamp(config.getContext(), config.network().getInputFile()).write(out);
+				out.writeUTF(indexKey(scenario));
+
+				Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+				try (OutputStream body = new BufferedOutputStream(new DeflaterOutputStream(out, deflater, 1 << 16), 1 << 16)) {
+					ObjectGraph.write(data, body, references(scenario, occupancyData));
+				} finally {
+					deflater.end();
+				}
+			}
+
+			Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	/**
+	 * Read the cached data, or return null if the inputs have changed.
+	 */
+	private static SwissRailRaptorData read(Path path, Scenario scenario, OccupancyData occupancyData) throws IOException {
+
+		Config config = scenario.getConfig();
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				log.warn("{} is not a raptor data cache of the current version, it will be created again.", path);
+				return null;
+			}
+
+			if (!InputHash.matches(config.getContext(), config.transit().getTransitScheduleFile(), InputHash.Stamp.read(in))
+				|| !InputHash.matches(config.getContext(), config.transit().getVehiclesFile(), InputHash.Stamp.read(in))
+				|| !InputHash.matches(config.getContext(), config.network().getInputFile(), InputHash.Stamp.read(in))) {
+				log.warn("Raptor data {} was created from different schedule, vehicles or network, it will be created again.", path);
+				return null;
+			}
+
+			if (!in.readUTF().equals(indexKey(scenario))) {
+				log.warn("Raptor data {} was created with a different order of ids, it will be created again.", path);
+				return null;
+			}
+
+			return ObjectGraph.read(new BufferedInputStream(new InflaterInputStream(in), 1 << 16), SwissRailRaptorData.class, references(scenario, occupancyData));
+		}
+	}
+
+	private static void writeIds(DataOutput out, Collection<? extends Id<?>> ids) throws IOException {
+		out.writeInt(ids.size());
+		for (Id<?> id : ids) {
+			out.writeUTF(id.toString());
+			out.writeInt(id.index());
+		}
+	}
+
+	private static ScenarioReferences references(Scenario scenario, OccupancyData occupancyData) {
+		return new ScenarioReferences(scenario.getNetwork(), scenario.getTransitSchedule(), scenario.getTransitVehicles())
+			.with(OCCUPANCY, occupancyData)
+			.with("config", scenario.getConfig());
+	}
+}
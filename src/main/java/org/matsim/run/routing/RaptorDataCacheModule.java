@@ -0,0 +1,15 @@
+package org.matsim.run.routing;
+
+import ch.sbb.matsim.routing.pt.raptor.SwissRailRaptor;
+import org.matsim.core.controler.AbstractModule;
+
+/**
+ * Provides the pt router with raptor data from the {@link RaptorDataCache} next to the transit schedule.
+ */
+public final class RaptorDataCacheModule extends AbstractModule {
+	@Override
+	public void install() {
+		if (getConfig().transit().isUseTransit())
+			bind(SwissRailRaptor.class).toProvider(CachedSwissRailRaptorFactory.class);
+	}
+}
@@ -0,0 +1,89 @@
+package org.matsim.run.routing;
+
+import jakarta.inject.Inject;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.config.Config;
+import org.matsim.core.controler.events.StartupEvent;
+import org.matsim.core.controler.listener.StartupListener;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.network.algorithms.TransportModeNetworkFilter;
+import org.matsim.core.router.SingleModeNetworksCache;
+import org.matsim.core.router.costcalculators.TravelDisutilityFactory;
+
+import java.util.*;
+
+/**
+ * Puts one filtered network into the routing cache for all network modes that can use exactly the same links
+ * and have the same travel disutility factory.
+ * The router builds its graph and the ALT landmarks per network instance, so modes like car and ride share them
+ * instead of computing them again. Landmarks are computed with the minimum costs of the first mode that is routed,
+ * which is why modes with different disutilities, e.g. car and truck, do not share a network.
+ */
+final class SharedRoutingNetworks implements StartupListener {
+
+	private static final Logger log = LogManager.getLogger(SharedRoutingNetworks.class);
+
+	@Inject
+	private Network network;
+
+	@Inject
+	private Config config;
+
+	@Inject
+	private SingleModeNetworksCache cache;
+
+	@Inject
+	private Map<String, TravelDisutilityFactory> disutilities;
+
+	@Override
+	public void notifyStartup(StartupEvent event) {
+
+		Map<String, Network> networks = cache.getSingleModeNetworksCache();
+
+		for (List<String> modes : group(network, config.routing().getNetworkModes(), disutilities)) {
+
+			// Networks that were already created by the router are kept
+			if (modes.size() < 2 || modes.stream().anyMatch(networks::containsKey))
+				continue;
+
+			Network filtered = NetworkUtils.createNetwork(config.network());
+			new TransportModeNetworkFilter(network).filter(filtered, Set.of(modes.get(0)));
+
+			for (String mode : modes) {
+				networks.put(mode, filtered);
+			}
+
+			log.info("Modes {} share the routing network with {} links", modes, filtered.getLinks().size());
+		}
+	}
+
+	/**
+	 * Group modes that are allowed on exactly the same links and use the same disutility factory instance.
+	 * Aliased modes, such as ride for car, are bound to the same instance.
+	 */
+	static Collection<List<String>> group(Network network, Collection<String> modes, Map<String, TravelDisutilityFactory> disutilities) {
+
+		Map<Group, List<String>> groups = new LinkedHashMap<>();
+
+		for (String mode : modes) {
+			BitSet links = new BitSet();
+			for (Link link : network.getLinks().values()) {
+				if (link.getAllowedModes().contains(mode))
+					links.set(link.getId().index());
+			}
+
+			groups.computeIfAbsent(new Group(links, disutilities.get(mode)), k -> new ArrayList<>()).add(mode);
+		}
+
+		return groups.values();
+	}
+
+	/**
+	 * Usable links and disutility factory, which is compared by identity.
+	 */
+	private record Group(BitSet links, TravelDisutilityFactory disutility) {
+	}
+}
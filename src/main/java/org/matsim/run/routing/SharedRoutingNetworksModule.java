@@ -0,0 +1,13 @@
+package org.matsim.run.routing;
+
+import org.matsim.core.controler.AbstractModule;
+
+/**
+ * Shares filtered routing networks, and therefore router graphs and landmarks, between modes with identical links and travel disutility.
+ */
+public final class SharedRoutingNetworksModule extends AbstractModule {
+	@Override
+	public void install() {
+		addControlerListenerBinding().to(SharedRoutingNetworks.class);
+	}
+}
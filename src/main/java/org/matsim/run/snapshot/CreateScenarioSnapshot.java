@@ -0,0 +1,53 @@
+package org.matsim.run.snapshot;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.application.MATSimAppCommand;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import picocli.CommandLine;
+
+import java.nio.file.Path;
+
+@CommandLine.Command(
+	name = "snapshot",
+	description = "Write network, facilities and population of a scenario into a binary snapshot, which can be loaded much faster."
+)
+public class CreateScenarioSnapshot implements MATSimAppCommand {
+
+	private static final Logger log = LogManager.getLogger(CreateScenarioSnapshot.class);
+
+	@CommandLine.Option(names = "--config", description = "Path to the scenario config", required = true)
+	private String configPath;
+
+	@CommandLine.Option(names = "--plans", description = "Use a different plans file than given in the config, e.g. for another sample size. Relative to the config.")
+	private String plans;
+
+	@CommandLine.Option(names = "--output", description = "Path to output snapshot", required = true)
+	private Path output;
+
+	public static void main(String[] args) {
+		new CreateScenarioSnapshot().execute(args);
+	}
+
+	@Override
+	public Integer call() throws Exception {
+
+		Config config = ConfigUtils.loadConfig(configPath);
+
+		if (plans != null)
+			config.plans().setInputFile(plans);
+
+		Scenario scenario = ScenarioUtils.loadScenario(config);
+
+		ScenarioSnapshot.write(scenario, output);
+
+		log.info("Written snapshot with {} links, {} facilities and {} persons to {}", scenario.getNetwork().getLinks().size(),
+			scenario.getActivityFacilities().getFacilities().size(), scenario.getPopulation().getPersons().size(), output);
+
+		return 0;
+	}
+
+}
@@ -0,0 +1,158 @@
+package org.matsim.run.snapshot;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.groups.FacilitiesConfigGroup;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.run.InputHash;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Binary snapshot of the network, facilities and population of a scenario.
+ * The snapshot contains size, modification time and hash of the input files it was created from and is only used if they still match the config.
+ * Files are only hashed when loading if their size or modification time has changed.
+ * Transit schedule and vehicles are small in comparison and are still read from their original files.
+ */
+public final class ScenarioSnapshot {
+
+	private static final Logger log = LogManager.getLogger(ScenarioSnapshot.class);
+
+	private static final int MAGIC = 0x4B594F53;
+	private static final int VERSION = 2;
+
+	private ScenarioSnapshot() {
+	}
+
+	/**
+	 * Input files that are part of the snapshot.
+	 */
+	static Map<String, String> inputFiles(Config config) {
+		Map<String, String> files = new LinkedHashMap<>();
+		files.put("network", config.network().getInputFile());
+		files.put("plans", config.plans().getInputFile());
+		files.put("facilities", config.facilities().getInputFile());
+		return files;
+	}
+
+	/**
+	 * Write snapshot of a scenario, that has been loaded using the given config.
+	 */
+	public static void write(Scenario scenario, Path path) throws IOException {
+
+		Config config = scenario.getConfig();
+		Map<String, String> files = inputFiles(config);
+
+		try (DataOutputStream header = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+
+			header.writeInt(MAGIC);
+			header.writeInt(VERSION);
+			header.writeInt(files.size());
+			for (Map.Entry<String, String> e : files.entrySet()) {
+				header.writeUTF(e.getKey());
+				InputHash.stamp(config.getContext(), e.getValue()).write(header);
+			}
+
+			// Body is deflated with the fastest setting, decompression is cheap compared to parsing xml
+			Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+			try (SnapshotWriter writer = new SnapshotWriter(new BufferedOutputStream(new DeflaterOutputStream(header, deflater, 1 << 16), 1 << 16))) {
+				writer.writeNetwork(scenario.getNetwork());
+				writer.writeFacilities(scenario.getActivityFacilities());
+				writer.writePopulation(scenario.getPopulation());
+			} finally {
+				deflater.end();
+			}
+		}
+	}
+
+	/**
+	 * Load the scenario using the snapshot for network, facilities and population.
+	 *
+	 * @return loaded scenario or null if the snapshot does not match the input files of the config.
+	 */
+	public static Scenario load(Config config, Path path) throws IOException {
+		return load(config, path, true);
+	}
+
+	/**
+	 * Load the scenario using the snapshot for network, facilities and optionally the population.
+	 *
+	 * @param population whether to read the population, otherwise it stays empty
+	 * @return loaded scenario or null if the snapshot does not match the input files of the config.
+	 */
+	public static Scenario load(Config config, Path path, boolean population) throws IOException {
+
+		Map<String, String> files = inputFiles(config);
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				log.warn("{} is not a scenario snapshot of the current version, it will be ignored.", path);
+				return null;
+			}
+
+			int n = in.readInt();
+			Map<String, InputHash.Stamp> stamps = new LinkedHashMap<>();
+			for (int i = 0; i < n; i++) {
+				stamps.put(in.readUTF(), InputHash.Stamp.read(in));
+			}
+
+			for (Map.Entry<String, String> e : files.entrySet()) {
+				InputHash.Stamp stamp = stamps.get(e.getKey());
+				if (stamp == null || !InputHash.matches(config.getContext(), e.getValue(), stamp)) {
+					log.warn("Snapshot {} was created from a different {} file, it will be ignored.", path, e.getKey());
+					return null;
+				}
+			}
+
+			log.info("Loading network, facilities and population from snapshot {}", path);
+
+			Scenario scenario = loadWithoutSnapshotInputs(config);
+
+			try (SnapshotReader reader = new SnapshotReader(new BufferedInputStream(new InflaterInputStream(in), 1 << 16))) {
+				reader.readNetwork(scenario.getNetwork());
+				reader.readFacilities(scenario.getActivityFacilities());
+				// The population is the last part and does not need to be inflated if it is not needed
+				if (population)
+					reader.readPopulation(scenario.getPopulation());
+			}
+
+			return scenario;
+		}
+	}
+
+	/**
+	 * Load all remaining parts of the scenario using the default loader. The config is restored afterward.
+	 */
+	private static Scenario loadWithoutSnapshotInputs(Config config) {
+
+		String network = config.network().getInputFile();
+		String plans = config.plans().getInputFile();
+		String facilities = config.facilities().getInputFile();
+		FacilitiesConfigGroup.FacilitiesSource source = config.facilities().getFacilitiesSource();
+
+		try {
+			config.network().setInputFile(null);
+			config.plans().setInputFile(null);
+			config.facilities().setInputFile(null);
+			config.facilities().setFacilitiesSource(FacilitiesConfigGroup.FacilitiesSource.none);
+
+			return ScenarioUtils.loadScenario(config);
+		} finally {
+			config.network().setInputFile(network);
+			config.plans().setInputFile(plans);
+			config.facilities().setInputFile(facilities);
+			config.facilities().setFacilitiesSource(source);
+		}
+	}
+
+}
@@ -0,0 +1,309 @@
+package org.matsim.run.snapshot;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.NetworkFactory;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.*;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.population.routes.RouteFactories;
+import org.matsim.facilities.*;
+import org.matsim.utils.objectattributes.ObjectAttributesConverter;
+import org.matsim.utils.objectattributes.attributable.Attributes;
+import org.matsim.vehicles.Vehicle;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reads scenario elements written by {@link SnapshotWriter}. Elements must be read in the same order as they were written.
+ */
+public final class SnapshotReader implements AutoCloseable {
+
+	private final DataInputStream in;
+	private final List<String> strings = new ArrayList<>();
+	private final ObjectAttributesConverter converter = new ObjectAttributesConverter();
+
+	public SnapshotReader(InputStream in) {
+		this.in = new DataInputStream(in);
+	}
+
+	/**
+	 * Read nodes and links into an empty network.
+	 */
+	public void readNetwork(Network network) throws IOException {
+
+		NetworkFactory f = network.getFactory();
+
+		network.setName(readString());
+		network.setCapacityPeriod(in.readDouble());
+		network.setEffectiveLaneWidth(in.readDouble());
+		readAttributes(network.getAttributes());
+
+		int nodes = readVarInt();
+		for (int i = 0; i < nodes; i++) {
+			Node node = f.createNode(readId(Node.class), readCoord());
+			readAttributes(node.getAttributes());
+			network.addNode(node);
+		}
+
+		int links = readVarInt();
+		for (int i = 0; i < links; i++) {
+			Id<Link> id = readId(Link.class);
+			Node from = network.getNodes().get(readId(Node.class));
+			Node to = network.getNodes().get(readId(Node.class));
+
+			Link link = f.createLink(id, from, to);
+			link.setLength(in.readDouble());
+			link.setFreespeed(in.readDouble());
+			link.setCapacity(in.readDouble());
+			link.setNumberOfLanes(in.readDouble());
+
+			int n = readVarInt();
+			Set<String> modes = new HashSet<>();
+			for (int j = 0; j < n; j++) {
+				modes.add(readString());
+			}
+			link.setAllowedModes(modes);
+
+			readAttributes(link.getAttributes());
+			network.addLink(link);
+		}
+	}
+
+	/**
+	 * Read facilities into an empty container.
+	 */
+	public void readFacilities(ActivityFacilities facilities) throws IOException {
+
+		ActivityFacilitiesFactory f = facilities.getFactory();
+
+		readAttributes(facilities.getAttributes());
+
+		int n = readVarInt();
+		for (int i = 0; i < n; i++) {
+			ActivityFacility facility = f.createActivityFacility(readId(ActivityFacility.class), readCoord(), readId(Link.class));
+
+			int options = readVarInt();
+			for (int j = 0; j < options; j++) {
+				ActivityOption option = f.createActivityOption(readString());
+				option.setCapacity(in.readDouble());
+
+				int times = readVarInt();
+				for (int k = 0; k < times; k++) {
+					option.addOpeningTime(new OpeningTimeImpl(in.readDouble(), in.readDouble()));
+				}
+
+				facility.addActivityOption(option);
+			}
+
+			readAttributes(facility.getAttributes());
+			facilities.addActivityFacility(facility);
+		}
+	}
+
+	/**
+	 * Read persons into the population.
+	 */
+	public void readPopulation(Population population) throws IOException {
+
+		readAttributes(population.getAttributes());
+
+		int n = readVarInt();
+		for (int i = 0; i < n; i++) {
+			population.addPerson(readPerson(population.getFactory()));
+		}
+	}
+
+	private Person readPerson(PopulationFactory f) throws IOException {
+
+		Person person = f.createPerson(readId(Person.class));
+		readAttributes(person.getAttributes());
+
+		int plans = readVarInt();
+		int selected = readVarInt() - 1;
+
+		for (int i = 0; i < plans; i++) {
+			Plan plan = f.createPlan();
+			plan.setType(readString());
+
+			double score = in.readDouble();
+			plan.setScore(Double.isNaN(score) ? null : score);
+			readAttributes(plan.getAttributes());
+
+			int elements = readVarInt();
+			for (int j = 0; j < elements; j++) {
+				byte type = in.readByte();
+				if (type == SnapshotWriter.ACTIVITY)
+					plan.addActivity(readActivity(f));
+				else if (type == SnapshotWriter.LEG)
+					plan.addLeg(readLeg(f));
+				else
+					throw new IOException("Unknown plan element type: " + type);
+			}
+
+			person.addPlan(plan);
+			if (i == selected)
+				person.setSelectedPlan(plan);
+		}
+
+		return person;
+	}
+
+	private Activity readActivity(PopulationFactory f) throws IOException {
+
+		String type = readString();
+		Coord coord = readCoord();
+		Id<Link> linkId = readId(Link.class);
+		Id<ActivityFacility> facilityId = readId(ActivityFacility.class);
+
+		Activity act;
+		if (coord != null)
+			act = f.createActivityFromCoord(type, coord);
+		else if (linkId != null)
+			act = f.createActivityFromLinkId(type, linkId);
+		else
+			act = f.createActivityFromActivityFacilityId(type, facilityId);
+
+		act.setLinkId(linkId);
+		act.setFacilityId(facilityId);
+
+		double start = in.readDouble();
+		if (!Double.isNaN(start))
+			act.setStartTime(start);
+
+		double end = in.readDouble();
+		if (!Double.isNaN(end))
+			act.setEndTime(end);
+
+		double dur = in.readDouble();
+		if (!Double.isNaN(dur))
+			act.setMaximumDuration(dur);
+
+		readAttributes(act.getAttributes());
+		return act;
+	}
+
+	private Leg readLeg(PopulationFactory f) throws IOException {
+
+		Leg leg = f.createLeg(readString());
+		leg.setRoutingMode(readString());
+
+		double dep = in.readDouble();
+		if (!Double.isNaN(dep))
+			leg.setDepartureTime(dep);
+
+		double tt = in.readDouble();
+		if (!Double.isNaN(tt))
+			leg.setTravelTime(tt);
+
+		if (in.readBoolean()) {
+			RouteFactories rf = f.getRouteFactories();
+
+			String type = readString();
+			Route route = rf.createRoute(rf.getRouteClassForType(type), readId(Link.class), readId(Link.class));
+			route.setDistance(in.readDouble());
+
+			double routeTT = in.readDouble();
+			if (!Double.isNaN(routeTT))
+				route.setTravelTime(routeTT);
+
+			route.setRouteDescription(readText());
+
+			Id<Vehicle> vehicleId = readId(Vehicle.class);
+			if (route instanceof NetworkRoute r)
+				r.setVehicleId(vehicleId);
+
+			leg.setRoute(route);
+		}
+
+		readAttributes(leg.getAttributes());
+		return leg;
+	}
+
+	private void readAttributes(Attributes attributes) throws IOException {
+
+		int n = readVarInt();
+		for (int i = 0; i < n; i++) {
+			String key = readString();
+			byte type = in.readByte();
+
+			Object value = switch (type) {
+				case SnapshotWriter.T_STRING -> readString();
+				case SnapshotWriter.T_INT -> in.readInt();
+				case SnapshotWriter.T_DOUBLE -> in.readDouble();
+				case SnapshotWriter.T_BOOLEAN -> in.readBoolean();
+				case SnapshotWriter.T_LONG -> in.readLong();
+				case SnapshotWriter.T_OTHER -> converter.convert(readString(), readText());
+				default -> throw new IOException("Unknown attribute type: " + type);
+			};
+
+			attributes.putAttribute(key, value);
+		}
+	}
+
+	private Coord readCoord() throws IOException {
+		byte dim = in.readByte();
+		return switch (dim) {
+			case 0 -> null;
+			case 2 -> new Coord(in.readDouble(), in.readDouble());
+			case 3 -> new Coord(in.readDouble(), in.readDouble(), in.readDouble());
+			default -> throw new IOException("Invalid coordinate dimension: " + dim);
+		};
+	}
+
+	private <T> Id<T> readId(Class<T> type) throws IOException {
+		String s = readString();
+		return s == null ? null : Id.create(s, type);
+	}
+
+	private String readString() throws IOException {
+		int idx = readVarInt();
+		if (idx == 0)
+			return null;
+
+		if (idx == 1) {
+			String s = readText();
+			strings.add(s);
+			return s;
+		}
+
+		return strings.get(idx - 2);
+	}
+
+	private String readText() throws IOException {
+		int length = readVarInt();
+		if (length == 0)
+			return null;
+
+		byte[] bytes = new byte[length - 1];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private int readVarInt() throws IOException {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = in.readByte();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+
+		return value;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
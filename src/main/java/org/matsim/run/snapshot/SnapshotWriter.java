@@ -0,0 +1,298 @@
+package org.matsim.run.snapshot;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.*;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.utils.misc.OptionalTime;
+import org.matsim.facilities.ActivityFacilities;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.facilities.ActivityOption;
+import org.matsim.facilities.OpeningTime;
+import org.matsim.utils.objectattributes.ObjectAttributesConverter;
+import org.matsim.utils.objectattributes.attributable.Attributes;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Writes scenario elements into the compact binary format read by {@link SnapshotReader}.
+ * Strings, including ids, are written only once and referenced by their index afterward.
+ */
+public final class SnapshotWriter implements AutoCloseable {
+
+	static final byte ACTIVITY = 1;
+	static final byte LEG = 2;
+
+	static final byte T_OTHER = 0;
+	static final byte T_STRING = 1;
+	static final byte T_INT = 2;
+	static final byte T_DOUBLE = 3;
+	static final byte T_BOOLEAN = 4;
+	static final byte T_LONG = 5;
+
+	private final DataOutputStream out;
+	private final Object2IntMap<String> strings = new Object2IntOpenHashMap<>();
+	private final ObjectAttributesConverter converter = new ObjectAttributesConverter();
+
+	public SnapshotWriter(OutputStream out) {
+		this.out = new DataOutputStream(out);
+	}
+
+	/**
+	 * Write nodes, links and attributes of the network.
+	 */
+	public void writeNetwork(Network network) throws IOException {
+
+		writeString(network.getName());
+		out.writeDouble(network.getCapacityPeriod());
+		out.writeDouble(network.getEffectiveLaneWidth());
+		writeAttributes(network.getAttributes());
+
+		writeVarInt(network.getNodes().size());
+		for (Node node : network.getNodes().values()) {
+			writeId(node.getId());
+			writeCoord(node.getCoord());
+			writeAttributes(node.getAttributes());
+		}
+
+		writeVarInt(network.getLinks().size());
+		for (Link link : network.getLinks().values()) {
+			writeId(link.getId());
+			writeId(link.getFromNode().getId());
+			writeId(link.getToNode().getId());
+			out.writeDouble(link.getLength());
+			out.writeDouble(link.getFreespeed());
+			out.writeDouble(link.getCapacity());
+			out.writeDouble(link.getNumberOfLanes());
+
+			writeVarInt(link.getAllowedModes().size());
+			for (String mode : link.getAllowedModes()) {
+				writeString(mode);
+			}
+
+			writeAttributes(link.getAttributes());
+		}
+	}
+
+	/**
+	 * Write facilities including their activity options.
+	 */
+	public void writeFacilities(ActivityFacilities facilities) throws IOException {
+
+		writeAttributes(facilities.getAttributes());
+
+		writeVarInt(facilities.getFacilities().size());
+		for (ActivityFacility facility : facilities.getFacilities().values()) {
+			writeId(facility.getId());
+			writeCoord(facility.getCoord());
+			writeId(facility.getLinkId());
+
+			writeVarInt(facility.getActivityOptions().size());
+			for (ActivityOption option : facility.getActivityOptions().values()) {
+				writeString(option.getType());
+				out.writeDouble(option.getCapacity());
+
+				writeVarInt(option.getOpeningTimes().size());
+				for (OpeningTime t : option.getOpeningTimes()) {
+					out.writeDouble(t.getStartTime());
+					out.writeDouble(t.getEndTime());
+				}
+			}
+
+			writeAttributes(facility.getAttributes());
+		}
+	}
+
+	/**
+	 * Write all persons with all their plans and scores.
+	 */
+	public void writePopulation(Population population) throws IOException {
+
+		writeAttributes(population.getAttributes());
+
+		writeVarInt(population.getPersons().size());
+		for (Person person : population.getPersons().values()) {
+			writePerson(person);
+		}
+	}
+
+	private void writePerson(Person person) throws IOException {
+
+		writeId(person.getId());
+		writeAttributes(person.getAttributes());
+
+		writeVarInt(person.getPlans().size());
+		writeVarInt(person.getPlans().indexOf(person.getSelectedPlan()) + 1);
+
+		for (Plan plan : person.getPlans()) {
+			writeString(plan.getType());
+			Double score = plan.getScore();
+			out.writeDouble(score == null ? Double.NaN : score);
+			writeAttributes(plan.getAttributes());
+
+			writeVarInt(plan.getPlanElements().size());
+			for (PlanElement el : plan.getPlanElements()) {
+				if (el instanceof Activity act)
+					writeActivity(act);
+				else if (el instanceof Leg leg)
+					writeLeg(leg);
+				else
+					throw new IllegalArgumentException("Unknown plan element: " + el);
+			}
+		}
+	}
+
+	private void writeActivity(Activity act) throws IOException {
+		out.writeByte(ACTIVITY);
+		writeString(act.getType());
+		writeCoord(act.getCoord());
+		writeId(act.getLinkId());
+		writeId(act.getFacilityId());
+		writeTime(act.getStartTime());
+		writeTime(act.getEndTime());
+		writeTime(act.getMaximumDuration());
+		writeAttributes(act.getAttributes());
+	}
+
+	private void writeLeg(Leg leg) throws IOException {
+		out.writeByte(LEG);
+		writeString(leg.getMode());
+		writeString(leg.getRoutingMode());
+		writeTime(leg.getDepartureTime());
+		writeTime(leg.getTravelTime());
+
+		Route route = leg.getRoute();
+		out.writeBoolean(route != null);
+		if (route != null) {
+			writeString(route.getRouteType());
+			writeId(route.getStartLinkId());
+			writeId(route.getEndLinkId());
+			out.writeDouble(route.getDistance());
+			writeTime(route.getTravelTime());
+			writeText(route.getRouteDescription());
+			writeId(route instanceof NetworkRoute r ? r.getVehicleId() : null);
+		}
+
+		writeAttributes(leg.getAttributes());
+	}
+
+	private void writeAttributes(Attributes attributes) throws IOException {
+
+		Map<String, Object> entries = attributes.getAsMap();
+
+		writeVarInt(entries.size());
+		for (Map.Entry<String, Object> e : entries.entrySet()) {
+			writeString(e.getKey());
+			switch (e.getValue()) {
+				case String s -> {
+					out.writeByte(T_STRING);
+					writeString(s);
+				}
+				case Integer i -> {
+					out.writeByte(T_INT);
+					out.writeInt(i);
+				}
+				case Double d -> {
+					out.writeByte(T_DOUBLE);
+					out.writeDouble(d);
+				}
+				case Boolean b -> {
+					out.writeByte(T_BOOLEAN);
+					out.writeBoolean(b);
+				}
+				case Long l -> {
+					out.writeByte(T_LONG);
+					out.writeLong(l);
+				}
+				default -> {
+					// Attributes without converter can not be stored, the snapshot would silently differ from the input files
+					String value = converter.convertToString(e.getValue());
+					if (value == null)
+						throw new IOException("No converter for attribute '%s' of type %s, the snapshot can not be created.".formatted(e.getKey(), e.getValue().getClass().getName()));
+
+					out.writeByte(T_OTHER);
+					writeString(e.getValue().getClass().getName());
+					writeText(value);
+				}
+			}
+		}
+	}
+
+	private void writeCoord(Coord coord) throws IOException {
+		if (coord == null) {
+			out.writeByte(0);
+		} else if (coord.hasZ()) {
+			out.writeByte(3);
+			out.writeDouble(coord.getX());
+			out.writeDouble(coord.getY());
+			out.writeDouble(coord.getZ());
+		} else {
+			out.writeByte(2);
+			out.writeDouble(coord.getX());
+			out.writeDouble(coord.getY());
+		}
+	}
+
+	private void writeTime(OptionalTime time) throws IOException {
+		out.writeDouble(time.isDefined() ? time.seconds() : Double.NaN);
+	}
+
+	private void writeId(Id<?> id) throws IOException {
+		writeString(id == null ? null : id.toString());
+	}
+
+	/**
+	 * Strings are written as index into the table of already written strings. 0 is null, 1 marks a new string that follows.
+	 */
+	private void writeString(String s) throws IOException {
+		if (s == null) {
+			writeVarInt(0);
+			return;
+		}
+
+		int idx = strings.getOrDefault(s, -1);
+		if (idx >= 0) {
+			writeVarInt(idx + 2);
+		} else {
+			strings.put(s, strings.size());
+			writeVarInt(1);
+			writeText(s);
+		}
+	}
+
+	/**
+	 * Write strings that are unlikely to repeat, e.g. route descriptions, without adding them to the table.
+	 */
+	private void writeText(String s) throws IOException {
+		if (s == null) {
+			writeVarInt(0);
+			return;
+		}
+
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(bytes.length + 1);
+		out.write(bytes);
+	}
+
+	private void writeVarInt(int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+}
@@ -0,0 +1,58 @@
+package org.matsim.run.telemetry;
+
+import org.matsim.simwrapper.Dashboard;
+import org.matsim.simwrapper.Header;
+import org.matsim.simwrapper.Layout;
+import org.matsim.simwrapper.viz.Line;
+import org.matsim.simwrapper.viz.Table;
+
+import java.util.List;
+
+/**
+ * Shows the measurements of the {@link PerformanceTelemetryModule}.
+ */
+public final class PerformanceDashboard implements Dashboard {
+
+	@Override
+	public void configure(Header header, Layout layout) {
+
+		header.title = "Performance";
+		header.description = "Runtime and memory usage per iteration.";
+
+		layout.row("time").el(Line.class, (viz, data) -> {
+			viz.title = "Wall time";
+			viz.description = "Each phase is measured from its first to its last listener. Event flush is the after mobsim phase, in which the event writers are closed.";
+			viz.dataset = data.output("(*.)?" + PerformanceTelemetry.FILE);
+			viz.x = "iteration";
+			viz.columns = List.of("iteration_s", "replanning_s", "mobsim_s", "events_flush_s", "scoring_s");
+			viz.xAxisName = "Iteration";
+			viz.yAxisName = "Time [s]";
+		});
+
+		layout.row("memory").el(Line.class, (viz, data) -> {
+			viz.title = "Heap";
+			viz.description = "Peak heap within each iteration, as well as used and committed heap at its end.";
+			viz.dataset = data.output("(*.)?" + PerformanceTelemetry.FILE);
+			viz.x = "iteration";
+			viz.columns = List.of("heap_peak_mb", "heap_used_end_mb", "heap_committed_end_mb");
+			viz.xAxisName = "Iteration";
+			viz.yAxisName = "Memory [MB]";
+		}).el(Line.class, (viz, data) -> {
+			viz.title = "Garbage collection";
+			viz.description = "time spent in collections per iteration";
+			viz.dataset = data.output("(*.)?" + PerformanceTelemetry.FILE);
+			viz.x = "iteration";
+			viz.columns = List.of("gc_s");
+			viz.xAxisName = "Iteration";
+			viz.yAxisName = "Time [s]";
+		});
+
+		layout.row("replanning").el(Table.class, (viz, data) -> {
+			viz.title = "Replanning";
+			viz.description = "New plans per innovative strategy, the legs of these plans per mode, and calls and time of the routing modules per mode. The time per strategy is not measured.";
+			viz.dataset = data.output("(*.)?" + PerformanceTelemetry.REPLANNING_FILE);
+			viz.showAllRows = true;
+		});
+	}
+
+}
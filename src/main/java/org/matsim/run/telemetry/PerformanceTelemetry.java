@@ -0,0 +1,310 @@
+package org.matsim.run.telemetry;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import jakarta.inject.Inject;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.controler.events.*;
+import org.matsim.core.controler.listener.*;
+import org.matsim.core.router.TripStructureUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Records wall time of the iteration phases, heap usage and garbage collection per iteration.
+ * Each phase is measured from its first to its last listener, which is why this listener runs first and {@link Last} runs last.
+ * <p>
+ * The peak heap is the largest heap usage before a garbage collection or at the end of the iteration, reported by the collector notifications.
+ * Additionally, it counts the plans created by each innovative strategy, the legs of these new plans per mode and the calls and time of the
+ * routing modules per mode. The time of the individual strategies is not measured, only the replanning phase as a whole.
+ */
+final class PerformanceTelemetry implements StartupListener, IterationStartsListener, ReplanningListener, BeforeMobsimListener,
+	AfterMobsimListener, ScoringListener, ShutdownListener {
+
+	static final String FILE = "performance.csv";
+	static final String REPLANNING_FILE = "performance_replanning.csv";
+
+	/**
+	 * Priority of this listener, {@link Last} uses the negative value.
+	 */
+	static final double PRIORITY = 10_000;
+
+	private static final Logger log = LogManager.getLogger(PerformanceTelemetry.class);
+
+	@Inject
+	private Population population;
+
+	@Inject
+	private OutputDirectoryHierarchy output;
+
+	@Inject
+	private RoutingTelemetry routing;
+
+	private final Set<String> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+		.filter(p -> p.getType() == MemoryType.HEAP)
+		.map(MemoryPoolMXBean::getName)
+		.collect(Collectors.toSet());
+
+	private final NotificationListener gcListener = this::handleGc;
+
+	/**
+	 * Largest heap usage in the current iteration.
+	 */
+	private final AtomicLong peakHeap = new AtomicLong();
+
+	private long iterationStart;
+	private long replanningStart;
+	private long replanningEnd;
+	private long mobsimStart;
+	private long mobsimEnd;
+	private long eventsEnd;
+	private long scoringStart;
+	private long scoringEnd;
+
+	private long gcCount;
+	private long gcTime;
+
+	/**
+	 * Number of new plans per strategy and legs of these plans per mode in the current iteration.
+	 */
+	private Map<String, Object2IntMap<String>> replanning = new TreeMap<>();
+
+	@Override
+	public double priority() {
+		return PRIORITY;
+	}
+
+	@Override
+	public void notifyStartup(StartupEvent event) {
+		// Collections during loading of the scenario are not counted
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			gcCount += Math.max(0, gc.getCollectionCount());
+			gcTime += Math.max(0, gc.getCollectionTime());
+
+			if (gc instanceof NotificationEmitter emitter)
+				emitter.addNotificationListener(gcListener, null, null);
+		}
+	}
+
+	@Override
+	public void notifyShutdown(ShutdownEvent event) {
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			if (gc instanceof NotificationEmitter emitter) {
+				try {
+					emitter.removeNotificationListener(gcListener);
+				} catch (ListenerNotFoundException e) {
+					// Not registered, nothing to do
+				}
+			}
+		}
+	}
+
+	/**
+	 * The heap usage before a collection is a local maximum, as the heap only grows between collections.
+	 */
+	private void handleGc(Notification notification, Object handback) {
+		if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION))
+			return;
+
+		GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+		long used = info.getGcInfo().getMemoryUsageBeforeGc().entrySet().stream()
+			.filter(e -> heapPools.contains(e.getKey()))
+			.mapToLong(e -> e.getValue().getUsed())
+			.sum();
+
+		peakHeap.accumulateAndGet(used, Math::max);
+	}
+
+	@Override
+	public void notifyIterationStarts(IterationStartsEvent event) {
+		iterationStart = System.nanoTime();
+
+		// There is no replanning in the first iteration
+		replanningStart = 0;
+		replanningEnd = 0;
+		replanning = new TreeMap<>();
+		routing.reset();
+		peakHeap.set(ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+	}
+
+	@Override
+	public void notifyReplanning(ReplanningEvent event) {
+		replanningStart = System.nanoTime();
+	}
+
+	@Override
+	public void notifyBeforeMobsim(BeforeMobsimEvent event) {
+
+		// Plans without score have been created by an innovative strategy in this iteration
+		// Initial plans have no mutator and are not counted
+		Object2IntMap<String> strategies = new Object2IntOpenHashMap<>();
+		Object2IntMap<String> legs = new Object2IntOpenHashMap<>();
+
+		for (Person person : population.getPersons().values()) {
+			Plan plan = person.getSelectedPlan();
+			if (plan == null || plan.getScore() != null || plan.getPlanMutator() == null)
+				continue;
+
+			strategies.mergeInt(plan.getPlanMutator(), 1, Integer::sum);
+			for (Leg leg : TripStructureUtils.getLegs(plan)) {
+				legs.mergeInt(leg.getMode(), 1, Integer::sum);
+			}
+		}
+
+		replanning.put("new_plans", strategies);
+		replanning.put("new_plan_legs", legs);
+		replanning.putAll(routing.collect());
+	}
+
+	@Override
+	public void notifyAfterMobsim(AfterMobsimEvent event) {
+		mobsimEnd = System.nanoTime();
+	}
+
+	@Override
+	public void notifyScoring(ScoringEvent event) {
+		scoringStart = System.nanoTime();
+	}
+
+	/**
+	 * Write the measurements of the iteration, called by {@link Last}.
+	 */
+	private void write(IterationEndsEvent event) {
+
+		long now = System.nanoTime();
+
+		long count = 0;
+		long time = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, gc.getCollectionCount());
+			time += Math.max(0, gc.getCollectionTime());
+		}
+
+		MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+		long peak = peakHeap.accumulateAndGet(heap.getUsed(), Math::max);
+
+		Path path = Path.of(output.getOutputFilename(FILE));
+		boolean header = !Files.exists(path);
+
+		try (CSVPrinter csv = new CSVPrinter(Files.newBufferedWriter(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND), CSVFormat.DEFAULT)) {
+
+			if (header)
+				csv.printRecord("iteration", "iteration_s", "replanning_s", "mobsim_s", "events_flush_s", "scoring_s",
+					"heap_used_end_mb", "heap_committed_end_mb", "heap_peak_mb", "gc_count", "gc_s");
+
+			csv.printRecord(event.getIteration(),
+				seconds(now - iterationStart),
+				seconds(replanningEnd - replanningStart),
+				seconds(mobsimEnd - mobsimStart),
+				seconds(eventsEnd - mobsimEnd),
+				seconds(scoringEnd - scoringStart),
+				heap.getUsed() / 1024 / 1024,
+				heap.getCommitted() / 1024 / 1024,
+				peak / 1024 / 1024,
+				count - gcCount,
+				(time - gcTime) / 1000.0
+			);
+
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		path = Path.of(output.getOutputFilename(REPLANNING_FILE));
+		header = !Files.exists(path);
+
+		try (CSVPrinter csv = new CSVPrinter(Files.newBufferedWriter(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND), CSVFormat.DEFAULT)) {
+
+			if (header)
+				csv.printRecord("iteration", "type", "name", "n");
+
+			for (Map.Entry<String, Object2IntMap<String>> e : replanning.entrySet()) {
+				for (Map.Entry<String, Integer> v : new TreeMap<>(e.getValue()).entrySet()) {
+					csv.printRecord(event.getIteration(), e.getKey(), v.getKey(), v.getValue());
+				}
+			}
+
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		log.info("Iteration {} took {}s, mobsim {}s, peak heap {} MB, {} GC runs", event.getIteration(),
+			seconds(now - iterationStart), seconds(mobsimEnd - mobsimStart), peak / 1024 / 1024, count - gcCount);
+
+		gcCount = count;
+		gcTime = time;
+	}
+
+	private static double seconds(long nanos) {
+		return Math.round(nanos / 1e6) / 1000.0;
+	}
+
+	/**
+	 * Runs after all other listeners of a phase and records its end.
+	 * The event writers are flushed and closed by the after mobsim listeners, so that phase is reported as event flush time.
+	 */
+	static final class Last implements ReplanningListener, BeforeMobsimListener, AfterMobsimListener, ScoringListener, IterationEndsListener {
+
+		@Inject
+		private PerformanceTelemetry telemetry;
+
+		@Override
+		public double priority() {
+			return -PRIORITY;
+		}
+
+		@Override
+		public void notifyReplanning(ReplanningEvent event) {
+			telemetry.replanningEnd = System.nanoTime();
+		}
+
+		@Override
+		public void notifyBeforeMobsim(BeforeMobsimEvent event) {
+			telemetry.mobsimStart = System.nanoTime();
+		}
+
+		@Override
+		public void notifyAfterMobsim(AfterMobsimEvent event) {
+			telemetry.eventsEnd = System.nanoTime();
+		}
+
+		@Override
+		public void notifyScoring(ScoringEvent event) {
+			telemetry.scoringEnd = System.nanoTime();
+		}
+
+		@Override
+		public void notifyIterationEnds(IterationEndsEvent event) {
+			telemetry.write(event);
+		}
+	}
+
+}
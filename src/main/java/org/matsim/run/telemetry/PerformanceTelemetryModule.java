@@ -0,0 +1,21 @@
+package org.matsim.run.telemetry;
+
+import jakarta.inject.Singleton;
+import org.matsim.core.controler.AbstractModule;
+import org.matsim.core.router.TripRouter;
+
+/**
+ * Writes per iteration performance measurements to {@code performance.csv}, which are shown in the {@link PerformanceDashboard}.
+ */
+public final class PerformanceTelemetryModule extends AbstractModule {
+
+	@Override
+	public void install() {
+		bind(PerformanceTelemetry.class).in(Singleton.class);
+		bind(RoutingTelemetry.class).in(Singleton.class);
+		bind(TripRouter.class).toProvider(RoutingTelemetry.TripRouterProvider.class);
+		addControlerListenerBinding().to(PerformanceTelemetry.class);
+		addControlerListenerBinding().to(PerformanceTelemetry.Last.class);
+	}
+
+}
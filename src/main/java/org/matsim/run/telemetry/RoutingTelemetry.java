@@ -0,0 +1,81 @@
+package org.matsim.run.telemetry;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import jakarta.inject.Inject;
+import jakarta.inject.Provider;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.core.config.Config;
+import org.matsim.core.router.RoutingModule;
+import org.matsim.core.router.RoutingRequest;
+import org.matsim.core.router.TripRouter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the calls of the routing modules and the time spent in them per mode.
+ * Trip routers are created by {@link TripRouterProvider}, which wraps all bound routing modules.
+ */
+final class RoutingTelemetry {
+
+	private final Map<String, LongAdder> calls = new ConcurrentHashMap<>();
+	private final Map<String, LongAdder> nanos = new ConcurrentHashMap<>();
+
+	/**
+	 * Routing calls and time in milliseconds per mode since the last reset.
+	 */
+	Map<String, Object2IntMap<String>> collect() {
+
+		Object2IntMap<String> n = new Object2IntOpenHashMap<>();
+		Object2IntMap<String> ms = new Object2IntOpenHashMap<>();
+
+		calls.forEach((mode, v) -> n.put(mode, v.intValue()));
+		nanos.forEach((mode, v) -> ms.put(mode, (int) (v.sum() / 1_000_000)));
+
+		return Map.of("routing_calls", n, "routing_ms", ms);
+	}
+
+	void reset() {
+		calls.clear();
+		nanos.clear();
+	}
+
+	/**
+	 * Creates trip routers like the default binding, with the default fallback routing module, but each routing module is counted.
+	 */
+	static final class TripRouterProvider implements Provider<TripRouter> {
+
+		@Inject
+		private Map<String, Provider<RoutingModule>> routingModules;
+
+		@Inject
+		private Config config;
+
+		@Inject
+		private RoutingTelemetry telemetry;
+
+		@Override
+		public TripRouter get() {
+			TripRouter.Builder builder = new TripRouter.Builder(config);
+			routingModules.forEach((mode, provider) -> builder.setRoutingModule(mode, new CountingRoutingModule(mode, provider.get(), telemetry)));
+			return builder.build();
+		}
+	}
+
+	private record CountingRoutingModule(String mode, RoutingModule delegate, RoutingTelemetry telemetry) implements RoutingModule {
+
+		@Override
+		public List<? extends PlanElement> calcRoute(RoutingRequest request) {
+			long start = System.nanoTime();
+			try {
+				return delegate.calcRoute(request);
+			} finally {
+				telemetry.calls.computeIfAbsent(mode, k -> new LongAdder()).increment();
+				telemetry.nanos.computeIfAbsent(mode, k -> new LongAdder()).add(System.nanoTime() - start);
+			}
+		}
+	}
+}
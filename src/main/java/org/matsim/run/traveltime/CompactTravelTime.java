@@ -0,0 +1,241 @@
+package org.matsim.run.traveltime;
+
+import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.LinkLeaveEvent;
+import org.matsim.api.core.v01.events.VehicleEntersTrafficEvent;
+import org.matsim.api.core.v01.events.VehicleLeavesTrafficEvent;
+import org.matsim.api.core.v01.events.handler.LinkEnterEventHandler;
+import org.matsim.api.core.v01.events.handler.LinkLeaveEventHandler;
+import org.matsim.api.core.v01.events.handler.VehicleEntersTrafficEventHandler;
+import org.matsim.api.core.v01.events.handler.VehicleLeavesTrafficEventHandler;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.controler.events.AfterMobsimEvent;
+import org.matsim.core.controler.listener.AfterMobsimListener;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.vehicles.Vehicle;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Observed link travel times of one or more network modes, stored as one float array of time bins per link.
+ * Arrays are only allocated for links that have been used, all others return the free speed travel time.
+ * <p>
+ * Travel times are collected during the mobsim and published as an immutable snapshot afterward,
+ * so that routing threads can read them without synchronization.
+ */
+public final class CompactTravelTime implements TravelTime, LinkEnterEventHandler, LinkLeaveEventHandler,
+	VehicleEntersTrafficEventHandler, VehicleLeavesTrafficEventHandler, AfterMobsimListener {
+
+	private final Set<String> modes;
+	private final double binSize;
+	private final int bins;
+
+	/**
+	 * Vehicles of the observed modes currently in traffic.
+	 */
+	private final IntSet vehicles = new IntOpenHashSet();
+
+	/**
+	 * Time the vehicle entered its current link.
+	 */
+	private final Int2DoubleMap enterTimes = new Int2DoubleOpenHashMap();
+
+	/**
+	 * Sum of travel times and number of observations of the current iteration, indexed by link index and time bin.
+	 */
+	private float[][] sum = new float[0][];
+	private int[][] count = new int[0][];
+
+	/**
+	 * Average travel times of the last iteration. Rows are null for unused links, entries NaN for bins without observation.
+	 */
+	private volatile float[][] travelTimes = new float[0][];
+
+	public CompactTravelTime(Set<String> modes, double binSize, double maxTime) {
+		this.modes = modes;
+		this.binSize = binSize;
+		this.bins = (int) (maxTime / binSize) + 1;
+	}
+
+	@Override
+	public double getLinkTravelTime(Link link, double time, Person person, Vehicle vehicle) {
+		return lookup(travelTimes, link, time);
+	}
+
+	private double lookup(float[][] tt, Link link, double time) {
+
+		double freeSpeed = link.getLength() / link.getFreespeed(time);
+
+		int idx = link.getId().index();
+		if (idx >= tt.length || tt[idx] == null)
+			return freeSpeed;
+
+		float value = tt[idx][bin(time)];
+		return Float.isNaN(value) ? freeSpeed : Math.max(freeSpeed, value);
+	}
+
+	private int bin(double time) {
+		return Math.min(bins - 1, Math.max(0, (int) (time / binSize)));
+	}
+
+	@Override
+	public void handleEvent(VehicleEntersTrafficEvent event) {
+		if (modes.contains(event.getNetworkMode()))
+			vehicles.add(event.getVehicleId().index());
+	}
+
+	@Override
+	public void handleEvent(LinkEnterEvent event) {
+		int v = event.getVehicleId().index();
+		if (vehicles.contains(v))
+			enterTimes.put(v, event.getTime());
+	}
+
+	@Override
+	public void handleEvent(LinkLeaveEvent event) {
+
+		int v = event.getVehicleId().index();
+		if (!enterTimes.containsKey(v))
+			return;
+
+		double enter = enterTimes.remove(v);
+		int idx = event.getLinkId().index();
+
+		if (idx >= sum.length) {
+			int size = Math.max(idx + 1, Id.getNumberOfIds(Link.class));
+			sum = Arrays.copyOf(sum, size);
+			count = Arrays.copyOf(count, size);
+		}
+
+		if (sum[idx] == null) {
+			sum[idx] = new float[bins];
+			count[idx] = new int[bins];
+		}
+
+		int bin = bin(enter);
+		sum[idx][bin] += (float) (event.getTime() - enter);
+		count[idx][bin]++;
+	}
+
+	@Override
+	public void handleEvent(VehicleLeavesTrafficEvent event) {
+		int v = event.getVehicleId().index();
+		vehicles.remove(v);
+		// The partially traveled last link is not counted
+		enterTimes.remove(v);
+	}
+
+	@Override
+	public void reset(int iteration) {
+		vehicles.clear();
+		enterTimes.clear();
+		sum = new float[0][];
+		count = new int[0][];
+	}
+
+	@Override
+	public void notifyAfterMobsim(AfterMobsimEvent event) {
+
+		float[][] tt = new float[sum.length][];
+
+		for (int i = 0; i < sum.length; i++) {
+			if (sum[i] == null)
+				continue;
+
+			float[] row = new float[bins];
+			for (int b = 0; b < bins; b++) {
+				row[b] = count[i][b] > 0 ? sum[i][b] / count[i][b] : Float.NaN;
+			}
+
+			consolidate(row);
+			tt[i] = row;
+		}
+
+		// Accumulated values are not needed anymore
+		sum = new float[0][];
+		count = new int[0][];
+
+		travelTimes = tt;
+	}
+
+	/**
+	 * Write the travel times of the last iteration, e.g. for a checkpoint.
+	 */
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(bins);
+		write(out, travelTimes);
+	}
+
+	private static void write(DataOutput out, float[][] tt) throws IOException {
+
+		out.writeInt((int) Arrays.stream(tt).filter(Objects::nonNull).count());
+
+		for (int i = 0; i < tt.length; i++) {
+			if (tt[i] == null)
+				continue;
+
+			out.writeUTF(Id.get(i, Link.class).toString());
+			for (float v : tt[i]) {
+				out.writeFloat(v);
+			}
+		}
+	}
+
+	/**
+	 * Replace the current travel times with the ones written by {@link #write(DataOutput)}.
+	 */
+	public void read(DataInput in) throws IOException {
+
+		int n = in.readInt();
+		if (n != bins)
+			throw new IOException("Travel times have been written with %d time bins, but %d are configured.".formatted(n, bins));
+
+		travelTimes = read(in, bins);
+	}
+
+	private static float[][] read(DataInput in, int bins) throws IOException {
+
+		float[][] tt = new float[Id.getNumberOfIds(Link.class)][];
+
+		int links = in.readInt();
+		for (int i = 0; i < links; i++) {
+			int idx = Id.create(in.readUTF(), Link.class).index();
+			if (idx >= tt.length)
+				tt = Arrays.copyOf(tt, idx + 1);
+
+			float[] row = new float[bins];
+			for (int b = 0; b < bins; b++) {
+				row[b] = in.readFloat();
+			}
+			tt[idx] = row;
+		}
+
+		return tt;
+	}
+
+	/**
+	 * Ensures that vehicles entering a link later do not leave it earlier, similar to MATSim's travel time calculator.
+	 * Bins without observation stay NaN, unless the previous bin requires a higher value than free speed.
+	 */
+	private void consolidate(float[] row) {
+		for (int b = 1; b < bins; b++) {
+			if (Float.isNaN(row[b - 1]))
+				continue;
+
+			float min = (float) (row[b - 1] - binSize);
+			if (min > 0 && (Float.isNaN(row[b]) || row[b] < min))
+				row[b] = min;
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package org.matsim.run.traveltime;
+
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.core.controler.AbstractModule;
+
+import java.util.Set;
+
+/**
+ * Replaces the observed travel times of car and truck by {@link CompactTravelTime}.
+ * Ride uses the same instance as car and freight the same as truck, as in {@link org.matsim.run.OpenKyotoScenario.TravelTimeBinding}.
+ * It is meant to be the only travel time calculator, so {@code travelTimeCalculator.calculateLinkTravelTimes} should be disabled,
+ * as done by {@link org.matsim.run.OpenKyotoScenario} with {@code --compact-travel-times}.
+ */
+public final class CompactTravelTimeModule extends AbstractModule {
+
+	@Override
+	public void install() {
+
+		double binSize = getConfig().travelTimeCalculator().getTraveltimeBinSize();
+		double maxTime = Math.max(getConfig().travelTimeCalculator().getMaxTime(), getConfig().qsim().getEndTime().orElse(0));
+
+		CompactTravelTime car = new CompactTravelTime(Set.of(TransportMode.car), binSize, maxTime);
+		CompactTravelTime truck = new CompactTravelTime(Set.of(TransportMode.truck), binSize, maxTime);
+
+		for (CompactTravelTime tt : Set.of(car, truck)) {
+			addEventHandlerBinding().toInstance(tt);
+			addControlerListenerBinding().toInstance(tt);
+		}
+
+		addTravelTimeBinding(TransportMode.car).toInstance(car);
+		addTravelTimeBinding(TransportMode.ride).toInstance(car);
+
+		addTravelTimeBinding(TransportMode.truck).toInstance(truck);
+		addTravelTimeBinding("freight").toInstance(truck);
+	}
+
+}
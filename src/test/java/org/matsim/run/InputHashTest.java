@@ -0,0 +1,48 @@
+package org.matsim.run;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InputHashTest {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void stamp() throws IOException {
+
+		Path file = dir.resolve("input.txt");
+		Files.writeString(file, "abc");
+
+		URL context = dir.toUri().toURL();
+		InputHash.Stamp stamp = InputHash.stamp(context, "input.txt");
+
+		assertThat(stamp.size()).isEqualTo(3);
+		assertThat(stamp.hash()).isEqualTo(InputHash.of(context, "input.txt"));
+		assertThat(InputHash.matches(context, "input.txt", stamp)).isTrue();
+
+		// Same content with a different modification time, e.g. after a copy
+		Files.setLastModifiedTime(file, FileTime.fromMillis(stamp.modified() + 10_000));
+		assertThat(InputHash.matches(context, "input.txt", stamp)).isTrue();
+
+		// Changed content is detected by the hash
+		Files.writeString(file, "abd");
+		Files.setLastModifiedTime(file, FileTime.fromMillis(stamp.modified() + 20_000));
+		assertThat(InputHash.matches(context, "input.txt", stamp)).isFalse();
+	}
+
+	@Test
+	void unset() {
+		assertThat(InputHash.stamp(null, null)).isEqualTo(InputHash.Stamp.NONE);
+		assertThat(InputHash.matches(null, null, InputHash.Stamp.NONE)).isTrue();
+	}
+
+}
@@ -0,0 +1,146 @@
+package org.matsim.run.cache;
+
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.*;
+import java.util.function.IntSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ObjectGraphTest {
+
+	private static Network createNetwork() {
+		Network network = NetworkUtils.createNetwork();
+		Node a = NetworkUtils.createAndAddNode(network, Id.createNodeId("a"), new Coord(0, 0));
+		Node b = NetworkUtils.createAndAddNode(network, Id.createNodeId("b"), new Coord(100, 0));
+		NetworkUtils.createAndAddLink(network, Id.createLinkId("ab"), a, b, 100, 10, 1000, 1);
+		return network;
+	}
+
+	private static <T> T roundTrip(T root, Class<T> type, ObjectGraph.References references) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectGraph.write(root, bytes, references);
+		return ObjectGraph.read(new ByteArrayInputStream(bytes.toByteArray()), type, references);
+	}
+
+	@Test
+	void graph() throws IOException {
+
+		Network network = createNetwork();
+		Link link = network.getLinks().get(Id.createLinkId("ab"));
+
+		Element first = new Element(new int[]{1, 2, 3}, new Point(1.5, 2.5), Kind.B);
+		first.names.add("x");
+		first.counts.put("y", 2);
+		first.link = link;
+		first.linkId = link.getId();
+		first.bits.set(70);
+
+		Element second = new Element(new int[0], null, Kind.A);
+		second.next = first;
+		first.next = second;
+
+		Element[] array = {first, second, first};
+
+		ScenarioReferences references = new ScenarioReferences(network, null, null);
+		Element[] read = roundTrip(array, Element[].class, references);
+
+		assertThat(read).hasSize(3);
+		assertThat(read[0]).isSameAs(read[2]);
+		assertThat(read[0].next).isSameAs(read[1]);
+		assertThat(read[1].next).isSameAs(read[0]);
+
+		assertThat(read[0].values).containsExactly(1, 2, 3);
+		assertThat(read[0].point).isEqualTo(new Point(1.5, 2.5));
+		assertThat(read[0].kind).isEqualTo(Kind.B);
+		assertThat(read[0].names).containsExactly("x");
+		assertThat(read[0].counts).containsEntry("y", 2);
+		assertThat(read[0].bits.get(70)).isTrue();
+		assertThat(read[1].point).isNull();
+
+		// Scenario objects are resolved and not copied
+		assertThat(read[0].link).isSameAs(link);
+		assertThat(read[0].linkId).isSameAs(link.getId());
+	}
+
+	@Test
+	void immutableCollections() throws IOException {
+
+		Element e = new Element(new int[]{1}, new Point(0, 0), Kind.A);
+		e.names.addAll(List.of("a", "b"));
+		Holder holder = new Holder(List.of(e, e), Map.of("k", e));
+
+		Holder read = roundTrip(holder, Holder.class, ObjectGraph.References.NONE);
+
+		assertThat(read.elements()).hasSize(2);
+		assertThat(read.elements().get(0)).isSameAs(read.elements().get(1)).isSameAs(read.byName().get("k"));
+		assertThat(read.elements().get(0).names).containsExactly("a", "b");
+	}
+
+	@Test
+	void unsupported() {
+
+		Element e = new Element(new int[0], null, Kind.A);
+		e.supplier = () -> 1;
+
+		assertThatThrownBy(() -> roundTrip(e, Element.class, ObjectGraph.References.NONE))
+			.isInstanceOf(IOException.class);
+	}
+
+	@Test
+	void missingReference() throws IOException {
+
+		Network network = createNetwork();
+		Element e = new Element(new int[0], null, Kind.A);
+		e.link = network.getLinks().get(Id.createLinkId("ab"));
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectGraph.write(e, bytes, new ScenarioReferences(network, null, null));
+
+		Network other = NetworkUtils.createNetwork();
+		assertThatThrownBy(() -> ObjectGraph.read(new ByteArrayInputStream(bytes.toByteArray()), Element.class, new ScenarioReferences(other, null, null)))
+			.isInstanceOf(IOException.class)
+			.hasMessageContaining("ab");
+	}
+
+	enum Kind {
+		A, B
+	}
+
+	record Point(double x, double y) {
+	}
+
+	record Holder(List<Element> elements, Map<String, Element> byName) {
+	}
+
+	static final class Element {
+
+		private final int[] values;
+		private final Point point;
+		private final Kind kind;
+		private final List<String> names = new ArrayList<>();
+		private final Map<String, Integer> counts = new HashMap<>();
+		private final BitSet bits = new BitSet();
+		private Element next;
+		private Link link;
+		private Id<Link> linkId;
+		private IntSupplier supplier;
+
+		Element(int[] values, Point point, Kind kind) {
+			this.values = values;
+			this.point = point;
+			this.kind = kind;
+		}
+	}
+
+}
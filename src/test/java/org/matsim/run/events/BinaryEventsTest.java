@@ -0,0 +1,102 @@
+package org.matsim.run.events;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.events.*;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.events.handler.BasicEventHandler;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.vehicles.Vehicle;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BinaryEventsTest {
+
+	@TempDir
+	Path dir;
+
+	/**
+	 * Attributes without time and type, which are compared separately.
+	 */
+	private static Map<String, String> attributes(Event event) {
+		Map<String, String> attributes = new TreeMap<>(event.getAttributes());
+		attributes.remove(Event.ATTRIBUTE_TIME);
+		attributes.remove(Event.ATTRIBUTE_TYPE);
+		return attributes;
+	}
+
+	private static List<Event> createEvents() {
+
+		Id<Person> person = Id.createPersonId("p1");
+		Id<Link> link = Id.createLinkId("l1");
+		Id<Link> next = Id.createLinkId("l2");
+		Id<Vehicle> vehicle = Id.createVehicleId("v1");
+		Id<ActivityFacility> facility = Id.create("f1", ActivityFacility.class);
+
+		GenericEvent custom = new GenericEvent("custom", 28800.5);
+		custom.getAttributes().put("count", "42");
+		custom.getAttributes().put("share", "0.25");
+		custom.getAttributes().put("label", "007");
+
+		List<Event> events = new ArrayList<>();
+		events.add(new ActivityEndEvent(28800, person, link, facility, "home", new Coord(10.5, -3)));
+		events.add(new PersonDepartureEvent(28800, person, link, TransportMode.car, TransportMode.car));
+		events.add(new PersonEntersVehicleEvent(28800, person, vehicle));
+		events.add(new VehicleEntersTrafficEvent(28800, person, link, vehicle, TransportMode.car, 1.0));
+		events.add(custom);
+		events.add(new LinkLeaveEvent(28801, vehicle, link));
+		events.add(new LinkEnterEvent(28801, vehicle, next));
+		events.add(new VehicleLeavesTrafficEvent(28860.25, person, next, vehicle, TransportMode.car, 1.0));
+		events.add(new PersonLeavesVehicleEvent(28860.25, person, vehicle));
+		events.add(new PersonArrivalEvent(28860.25, person, next, TransportMode.car));
+		events.add(new ActivityStartEvent(28860.25, person, next, null, "work", null));
+
+		return events;
+	}
+
+	@Test
+	void roundTrip() {
+
+		List<Event> events = createEvents();
+		Path path = dir.resolve("events.bin");
+
+		BinaryEventsWriter writer = new BinaryEventsWriter(path);
+		events.forEach(writer::handleEvent);
+		writer.closeFile();
+
+		assertThat(BinaryEventsReader.isBinary(path)).isTrue();
+
+		List<Event> read = new ArrayList<>();
+		EventsManager manager = EventsUtils.createEventsManager();
+		manager.addHandler((BasicEventHandler) read::add);
+
+		manager.initProcessing();
+		new BinaryEventsReader(manager).readFile(path);
+		manager.finishProcessing();
+
+		assertThat(read).hasSameSizeAs(events);
+
+		for (int i = 0; i < events.size(); i++) {
+			Event expected = events.get(i);
+			Event actual = read.get(i);
+
+			assertThat(actual.getClass()).isEqualTo(expected.getClass());
+			assertThat(actual.getEventType()).isEqualTo(expected.getEventType());
+			assertThat(actual.getTime()).isEqualTo(expected.getTime());
+			assertThat(attributes(actual)).isEqualTo(attributes(expected));
+		}
+	}
+
+}
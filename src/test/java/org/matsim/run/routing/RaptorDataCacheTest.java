@@ -0,0 +1,167 @@
+package org.matsim.run.routing;
+
+import ch.sbb.matsim.routing.pt.raptor.OccupancyData;
+import ch.sbb.matsim.routing.pt.raptor.RaptorStaticConfig;
+import ch.sbb.matsim.routing.pt.raptor.RaptorUtils;
+import ch.sbb.matsim.routing.pt.raptor.SwissRailRaptor;
+import ch.sbb.matsim.routing.pt.raptor.SwissRailRaptorData;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.NetworkWriter;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.routes.RouteUtils;
+import org.matsim.core.router.DefaultRoutingRequest;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.facilities.FacilitiesUtils;
+import org.matsim.pt.routes.TransitPassengerRoute;
+import org.matsim.pt.transitSchedule.api.*;
+import org.matsim.vehicles.MatsimVehicleWriter;
+import org.matsim.vehicles.Vehicle;
+import org.matsim.vehicles.VehicleType;
+import org.matsim.vehicles.VehicleUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RaptorDataCacheTest {
+
+	@TempDir
+	Path dir;
+
+	/**
+	 * A line along four nodes with three stops and departures every ten minutes, written to files in {@code dir}.
+	 */
+	private static Scenario createScenario(Path dir) {
+
+		Config config = ConfigUtils.createConfig();
+		config.transit().setUseTransit(true);
+		config.network().setInputFile(dir.resolve("network.xml").toString());
+		config.transit().setTransitScheduleFile(dir.resolve("schedule.xml").toString());
+		config.transit().setVehiclesFile(dir.resolve("vehicles.xml").toString());
+
+		Scenario scenario = ScenarioUtils.createScenario(config);
+		Network network = scenario.getNetwork();
+
+		List<Node> nodes = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			nodes.add(NetworkUtils.createAndAddNode(network, Id.createNodeId("n" + i), new Coord(i * 2000, 0)));
+		}
+
+		List<Id<Link>> links = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			Link link = NetworkUtils.createAndAddLink(network, Id.createLinkId("l" + i), nodes.get(i), nodes.get(i + 1), 2000, 15, 1000, 1);
+			link.setAllowedModes(Set.of(TransportMode.car, TransportMode.pt));
+			links.add(link.getId());
+		}
+
+		TransitSchedule schedule = scenario.getTransitSchedule();
+		TransitScheduleFactory f = schedule.getFactory();
+
+		List<TransitRouteStop> stops = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			TransitStopFacility stop = f.createTransitStopFacility(Id.create("s" + i, TransitStopFacility.class), new Coord((i + 1) * 2000, 0), false);
+			stop.setLinkId(links.get(i));
+			schedule.addStopFacility(stop);
+			stops.add(f.createTransitRouteStop(stop, i * 180, i * 180 + 30));
+		}
+
+		VehicleType type = VehicleUtils.createVehicleType(Id.create("bus", VehicleType.class));
+		type.getCapacity().setSeats(50);
+		scenario.getTransitVehicles().addVehicleType(type);
+
+		TransitRoute route = f.createTransitRoute(Id.create("r", TransitRoute.class),
+			RouteUtils.createLinkNetworkRouteImpl(links.get(0), links.subList(1, 2), links.get(2)), stops, "bus");
+
+		for (int i = 0; i < 12; i++) {
+			Departure dep = f.createDeparture(Id.create(i, Departure.class), 6 * 3600 + i * 600);
+			Vehicle vehicle = VehicleUtils.createVehicle(Id.createVehicleId("bus_" + i), type);
+			scenario.getTransitVehicles().addVehicle(vehicle);
+			dep.setVehicleId(vehicle.getId());
+			route.addDeparture(dep);
+		}
+
+		TransitLine line = f.createTransitLine(Id.create("line", TransitLine.class));
+		line.addRoute(route);
+		schedule.addTransitLine(line);
+
+		new NetworkWriter(network).write(config.network().getInputFile());
+		new TransitScheduleWriter(schedule).writeFile(config.transit().getTransitScheduleFile());
+		new MatsimVehicleWriter(scenario.getTransitVehicles()).writeFile(config.transit().getVehiclesFile());
+
+		return scenario;
+	}
+
+	/**
+	 * Routes between the ends of the line at different times, as comparable strings.
+	 */
+	private static List<String> route(SwissRailRaptorData data, Scenario scenario) {
+
+		SwissRailRaptor raptor = new SwissRailRaptor.Builder(data, scenario.getConfig()).build();
+		Person person = PopulationUtils.getFactory().createPerson(Id.createPersonId("p"));
+
+		List<String> result = new ArrayList<>();
+		for (double time = 5.5 * 3600; time < 8 * 3600; time += 420) {
+			List<? extends PlanElement> trip = raptor.calcRoute(DefaultRoutingRequest.withoutAttributes(
+				FacilitiesUtils.wrapLinkAndCoord(Id.createLinkId("l0"), new Coord(1900, 50)),
+				FacilitiesUtils.wrapLinkAndCoord(Id.createLinkId("l2"), new Coord(6100, 50)),
+				time, person));
+
+			if (trip == null) {
+				result.add("none");
+				continue;
+			}
+
+			for (PlanElement el : trip) {
+				if (el instanceof Leg leg) {
+					String line = leg.getRoute() instanceof TransitPassengerRoute r ? r.getLineId() + " " + r.getRouteId() + " " + r.getBoardingTime() : "";
+					result.add(leg.getMode() + " " + leg.getDepartureTime() + " " + leg.getTravelTime() + " " + line);
+				} else if (el instanceof Activity act)
+					result.add(act.getType() + " " + act.getLinkId());
+			}
+		}
+
+		return result;
+	}
+
+	@Test
+	void routesAreEqual() throws IOException {
+
+		Scenario scenario = createScenario(dir);
+		RaptorStaticConfig staticConfig = RaptorUtils.createStaticConfig(scenario.getConfig());
+
+		SwissRailRaptorData created = RaptorDataCache.getOrCreate(scenario, staticConfig, new OccupancyData());
+		try (Stream<Path> files = Files.list(dir)) {
+			assertThat(files).anyMatch(p -> p.toString().endsWith(".raptor"));
+		}
+
+		SwissRailRaptorData loaded = RaptorDataCache.getOrCreate(scenario, staticConfig, new OccupancyData());
+		assertThat(loaded).isNotSameAs(created);
+
+		List<String> expected = route(created, scenario);
+
+		assertThat(expected).anyMatch(s -> s.startsWith(TransportMode.pt));
+		assertThat(route(loaded, scenario)).isEqualTo(expected);
+	}
+
+}
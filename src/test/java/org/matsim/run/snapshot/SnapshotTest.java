@@ -0,0 +1,231 @@
+package org.matsim.run.snapshot;
+
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.NetworkFactory;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.*;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.population.routes.RouteUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.facilities.*;
+import org.matsim.vehicles.Vehicle;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SnapshotTest {
+
+	private static Scenario createScenario() {
+
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+
+		Network network = scenario.getNetwork();
+		NetworkFactory nf = network.getFactory();
+		Node a = nf.createNode(Id.createNodeId("a"), new Coord(0, 0));
+		Node b = nf.createNode(Id.createNodeId("b"), new Coord(100, 0, 5));
+		network.addNode(a);
+		network.addNode(b);
+
+		Link ab = nf.createLink(Id.createLinkId("ab"), a, b);
+		ab.setLength(100);
+		ab.setFreespeed(13.9);
+		ab.setCapacity(1800);
+		ab.setNumberOfLanes(2);
+		ab.setAllowedModes(Set.of(TransportMode.car, TransportMode.truck));
+		ab.getAttributes().putAttribute("type", "primary");
+		network.addLink(ab);
+
+		Link ba = nf.createLink(Id.createLinkId("ba"), b, a);
+		ba.setLength(120);
+		ba.setAllowedModes(Set.of(TransportMode.car));
+		network.addLink(ba);
+
+		ActivityFacilitiesFactory ff = scenario.getActivityFacilities().getFactory();
+		ActivityFacility facility = ff.createActivityFacility(Id.create("f1", ActivityFacility.class), new Coord(90, 10), ab.getId());
+		ActivityOption option = ff.createActivityOption("work");
+		option.setCapacity(10);
+		option.addOpeningTime(new OpeningTimeImpl(8 * 3600, 17 * 3600));
+		facility.addActivityOption(option);
+		facility.getAttributes().putAttribute("zone", 42);
+		scenario.getActivityFacilities().addActivityFacility(facility);
+
+		PopulationFactory pf = scenario.getPopulation().getFactory();
+		Person person = pf.createPerson(Id.createPersonId("p1"));
+		person.getAttributes().putAttribute("age", 30);
+		person.getAttributes().putAttribute("income", 2500.5);
+		person.getAttributes().putAttribute("employed", true);
+		person.getAttributes().putAttribute("household", 7L);
+		person.getAttributes().putAttribute("subpopulation", "person");
+
+		Plan car = pf.createPlan();
+		Activity home = pf.createActivityFromCoord("home", new Coord(0, 0));
+		home.setLinkId(ba.getId());
+		home.setEndTime(8 * 3600);
+		car.addActivity(home);
+
+		Leg leg = pf.createLeg(TransportMode.car);
+		leg.setRoutingMode(TransportMode.car);
+		leg.setDepartureTime(8 * 3600);
+		leg.setTravelTime(600);
+		NetworkRoute route = RouteUtils.createLinkNetworkRouteImpl(ba.getId(), List.of(), ab.getId());
+		route.setDistance(100);
+		route.setTravelTime(600);
+		route.setVehicleId(Id.create("p1_car", Vehicle.class));
+		leg.setRoute(route);
+		car.addLeg(leg);
+
+		Activity work = pf.createActivityFromActivityFacilityId("work", facility.getId());
+		work.setStartTime(8 * 3600 + 600);
+		work.setMaximumDuration(8 * 3600);
+		car.addActivity(work);
+		car.setScore(12.5);
+		person.addPlan(car);
+
+		Plan walk = pf.createPlan();
+		walk.setType("walk");
+		walk.addActivity(pf.createActivityFromCoord("home", new Coord(0, 0)));
+		Leg walkLeg = pf.createLeg(TransportMode.walk);
+		walkLeg.setRoute(RouteUtils.createGenericRouteImpl(ba.getId(), ab.getId()));
+		walkLeg.getRoute().setDistance(130);
+		walk.addLeg(walkLeg);
+		walk.addActivity(pf.createActivityFromCoord("work", new Coord(90, 10)));
+		person.addPlan(walk);
+		person.setSelectedPlan(walk);
+
+		scenario.getPopulation().addPerson(person);
+
+		return scenario;
+	}
+
+	private static Scenario roundTrip(Scenario scenario) throws IOException {
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (SnapshotWriter writer = new SnapshotWriter(bytes)) {
+			writer.writeNetwork(scenario.getNetwork());
+			writer.writeFacilities(scenario.getActivityFacilities());
+			writer.writePopulation(scenario.getPopulation());
+		}
+
+		Scenario read = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		try (SnapshotReader reader = new SnapshotReader(new ByteArrayInputStream(bytes.toByteArray()))) {
+			reader.readNetwork(read.getNetwork());
+			reader.readFacilities(read.getActivityFacilities());
+			reader.readPopulation(read.getPopulation());
+		}
+
+		return read;
+	}
+
+	@Test
+	void network() throws IOException {
+
+		Network network = roundTrip(createScenario()).getNetwork();
+
+		assertThat(network.getNodes()).hasSize(2);
+		assertThat(network.getNodes().get(Id.createNodeId("b")).getCoord()).isEqualTo(new Coord(100, 0, 5));
+
+		Link ab = network.getLinks().get(Id.createLinkId("ab"));
+		assertThat(ab.getFromNode().getId()).isEqualTo(Id.createNodeId("a"));
+		assertThat(ab.getToNode().getId()).isEqualTo(Id.createNodeId("b"));
+		assertThat(ab.getLength()).isEqualTo(100);
+		assertThat(ab.getFreespeed()).isEqualTo(13.9);
+		assertThat(ab.getCapacity()).isEqualTo(1800);
+		assertThat(ab.getNumberOfLanes()).isEqualTo(2);
+		assertThat(ab.getAllowedModes()).containsExactlyInAnyOrder(TransportMode.car, TransportMode.truck);
+		assertThat(ab.getAttributes().getAttribute("type")).isEqualTo("primary");
+	}
+
+	@Test
+	void facilities() throws IOException {
+
+		ActivityFacility facility = roundTrip(createScenario()).getActivityFacilities().getFacilities().get(Id.create("f1", ActivityFacility.class));
+
+		assertThat(facility.getCoord()).isEqualTo(new Coord(90, 10));
+		assertThat(facility.getLinkId()).isEqualTo(Id.createLinkId("ab"));
+		assertThat(facility.getAttributes().getAttribute("zone")).isEqualTo(42);
+
+		ActivityOption option = facility.getActivityOptions().get("work");
+		assertThat(option.getCapacity()).isEqualTo(10);
+		assertThat(option.getOpeningTimes()).singleElement()
+			.satisfies(t -> assertThat(t.getStartTime()).isEqualTo(8 * 3600))
+			.satisfies(t -> assertThat(t.getEndTime()).isEqualTo(17 * 3600));
+	}
+
+	@Test
+	void population() throws IOException {
+
+		Person person = roundTrip(createScenario()).getPopulation().getPersons().get(Id.createPersonId("p1"));
+
+		assertThat(person.getAttributes().getAsMap())
+			.containsEntry("age", 30)
+			.containsEntry("income", 2500.5)
+			.containsEntry("employed", true)
+			.containsEntry("household", 7L)
+			.containsEntry("subpopulation", "person");
+
+		assertThat(person.getPlans()).hasSize(2);
+		assertThat(person.getSelectedPlan()).isSameAs(person.getPlans().get(1));
+
+		Plan car = person.getPlans().get(0);
+		assertThat(car.getScore()).isEqualTo(12.5);
+		assertThat(car.getPlanElements()).hasSize(3);
+
+		Activity home = (Activity) car.getPlanElements().get(0);
+		assertThat(home.getType()).isEqualTo("home");
+		assertThat(home.getLinkId()).isEqualTo(Id.createLinkId("ba"));
+		assertThat(home.getEndTime().seconds()).isEqualTo(8 * 3600);
+		assertThat(home.getStartTime().isDefined()).isFalse();
+
+		Leg leg = (Leg) car.getPlanElements().get(1);
+		assertThat(leg.getMode()).isEqualTo(TransportMode.car);
+		assertThat(leg.getRoutingMode()).isEqualTo(TransportMode.car);
+		assertThat(leg.getDepartureTime().seconds()).isEqualTo(8 * 3600);
+		assertThat(leg.getTravelTime().seconds()).isEqualTo(600);
+		assertThat(leg.getRoute()).isInstanceOf(NetworkRoute.class);
+
+		NetworkRoute route = (NetworkRoute) leg.getRoute();
+		assertThat(route.getStartLinkId()).isEqualTo(Id.createLinkId("ba"));
+		assertThat(route.getEndLinkId()).isEqualTo(Id.createLinkId("ab"));
+		assertThat(route.getLinkIds()).isEmpty();
+		assertThat(route.getDistance()).isEqualTo(100);
+		assertThat(route.getVehicleId()).isEqualTo(Id.create("p1_car", Vehicle.class));
+
+		Activity work = (Activity) car.getPlanElements().get(2);
+		assertThat(work.getFacilityId()).isEqualTo(Id.create("f1", ActivityFacility.class));
+		assertThat(work.getStartTime().seconds()).isEqualTo(8 * 3600 + 600);
+		assertThat(work.getMaximumDuration().seconds()).isEqualTo(8 * 3600);
+
+		Plan walk = person.getPlans().get(1);
+		assertThat(walk.getType()).isEqualTo("walk");
+		assertThat(walk.getScore()).isNull();
+		assertThat(((Leg) walk.getPlanElements().get(1)).getRoute().getDistance()).isEqualTo(130);
+	}
+
+	@Test
+	void unsupportedAttribute() {
+
+		Scenario scenario = createScenario();
+		scenario.getNetwork().getLinks().get(Id.createLinkId("ab")).getAttributes().putAttribute("custom", new Custom(1));
+
+		assertThatThrownBy(() -> roundTrip(scenario))
+			.isInstanceOf(IOException.class)
+			.hasMessageContaining("custom");
+	}
+
+	private record Custom(int value) {
+	}
+
+}